@@ -0,0 +1,150 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.benchmarks;
+
+import com.github.signalr4j.client.Connection;
+import com.github.signalr4j.client.ConnectionBase;
+import com.github.signalr4j.client.SignalRFuture;
+import com.github.signalr4j.client.transport.ClientTransport;
+import com.github.signalr4j.client.transport.ConnectionType;
+import com.github.signalr4j.client.transport.DataResultCallback;
+import com.github.signalr4j.client.transport.NegotiationResponse;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * No-op transport that stands in for the network in the benchmarks. It
+ * connects immediately, hands the received data callback to the benchmark
+ * and keeps the last sent data so the work cannot be optimized away
+ */
+public class BenchmarkTransport implements ClientTransport {
+
+    private final LongAdder sentCount = new LongAdder();
+
+    private volatile String lastSent;
+
+    private volatile DataResultCallback callback;
+
+    @Override
+    public String getName() {
+        return "benchmark";
+    }
+
+    @Override
+    public boolean supportKeepAlive() {
+        return false;
+    }
+
+    @Override
+    public SignalRFuture<NegotiationResponse> negotiate(ConnectionBase connection) {
+        NegotiationResponse negotiation = new NegotiationResponse(null, new JsonParser());
+        negotiation.setConnectionToken("benchmark-token");
+        negotiation.setConnectionId("benchmark-id");
+        negotiation.setProtocolVersion(Connection.PROTOCOL_VERSION.toString());
+        negotiation.setUrl("/signalr");
+        negotiation.setDisconnectTimeout(30);
+        // long enough for the heartbeat monitor never to interfere
+        negotiation.setKeepAliveTimeout(3600);
+
+        SignalRFuture<NegotiationResponse> future = new SignalRFuture<>();
+        future.setResult(negotiation);
+        return future;
+    }
+
+    @Override
+    public SignalRFuture<Void> start(ConnectionBase connection, ConnectionType connectionType, DataResultCallback callback) {
+        this.callback = callback;
+
+        SignalRFuture<Void> future = new SignalRFuture<>();
+        future.setResult(null);
+        return future;
+    }
+
+    @Override
+    public SignalRFuture<Void> send(ConnectionBase connection, String data, DataResultCallback callback) {
+        lastSent = data;
+        sentCount.increment();
+
+        // a new future each time, since the connection adds its error
+        // handler to the returned one
+        return completed();
+    }
+
+    @Override
+    public SignalRFuture<Void> abort(ConnectionBase connection) {
+        return completed();
+    }
+
+    /**
+     * Delivers data as if it was received from the server
+     */
+    public void receive(String data) {
+        callback.onData(data);
+    }
+
+    /**
+     * Returns the last data sent through the transport
+     */
+    public String getLastSent() {
+        return lastSent;
+    }
+
+    /**
+     * Returns the number of sends
+     */
+    public long getSentCount() {
+        return sentCount.sum();
+    }
+
+    /**
+     * Starts a connection on a new benchmark transport
+     *
+     * @param connection
+     *            The connection to start, created with a NullLogger
+     * @return The transport
+     */
+    public static BenchmarkTransport start(Connection connection) throws Exception {
+        BenchmarkTransport transport = new BenchmarkTransport();
+        connection.start(transport).get(10, TimeUnit.SECONDS);
+        return transport;
+    }
+
+    /**
+     * Reads a recorded payload from the benchmark resources
+     *
+     * @param name
+     *            The payload file name, without extension
+     */
+    public static String loadPayload(String name) throws IOException {
+        try (InputStream stream = BenchmarkTransport.class.getResourceAsStream("/payloads/" + name + ".json")) {
+            if (stream == null) {
+                throw new IOException("Unknown payload: " + name);
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            int read;
+            while ((read = stream.read(chunk)) != -1) {
+                buffer.write(chunk, 0, read);
+            }
+
+            return new String(buffer.toByteArray(), StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    private static SignalRFuture<Void> completed() {
+        SignalRFuture<Void> future = new SignalRFuture<>();
+        future.setResult(null);
+        return future;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.benchmarks;
+
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubProxy;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the dispatch of an already parsed hub event, through
+ * HubConnection.onReceived and the HubProxy subscriptions. The typed
+ * handler pays for the conversion of the arguments, the raw one only gets
+ * the JSON elements. Run with -prof gc to get the allocation rate
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventDispatchBenchmark {
+
+    @Param({ "typed", "raw" })
+    public String handler;
+
+    private HubConnection connection;
+
+    private JsonElement message;
+
+    private Object lastArgument;
+
+    @Setup
+    public void setup() throws Exception {
+        connection = new HubConnection("http://localhost/", "", true, new NullLogger());
+
+        HubProxy proxy = connection.createHubProxy("TelemetryHub");
+        if ("typed".equals(handler)) {
+            proxy.on("update", telemetry -> lastArgument = telemetry, ReceiveBenchmark.CarTelemetry.class);
+        } else {
+            proxy.subscribe("update").addReceivedHandler(args -> lastArgument = args[0]);
+        }
+
+        BenchmarkTransport.start(connection);
+
+        String data = BenchmarkTransport.loadPayload("event");
+        message = new JsonParser().parse(data).getAsJsonObject().getAsJsonArray("M").get(0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.stop();
+    }
+
+    @Benchmark
+    public Object onReceived() {
+        connection.onReceived(message);
+        return lastArgument;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.benchmarks;
+
+import com.github.signalr4j.client.hubs.HubInvocation;
+import com.github.signalr4j.client.hubs.HubInvocationEncoder;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the tree based invocation serialization (toJsonTree on every
+ * argument, then toJson on the HubInvocation) against HubInvocationEncoder
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InvocationEncodingBenchmark {
+
+    public static class Quote {
+        public String symbol;
+        public double bid;
+        public double ask;
+        public long timestamp;
+        public int[] depth;
+    }
+
+    @Param({ "scalar", "object" })
+    public String payload;
+
+    @Param({ "false", "true" })
+    public boolean withState;
+
+    private Gson gson;
+
+    private HubInvocationEncoder encoder;
+
+    private Object[] args;
+
+    private Map<String, JsonElement> state;
+
+    @Setup
+    public void setup() {
+        gson = new GsonBuilder().create();
+        encoder = new HubInvocationEncoder("telemetryHub");
+
+        if ("scalar".equals(payload)) {
+            args = new Object[] { "car-44", 12, 301.25 };
+        } else {
+            Quote quote = new Quote();
+            quote.symbol = "car-44";
+            quote.bid = 301.25;
+            quote.ask = 301.5;
+            quote.timestamp = 1500000000000L;
+            quote.depth = new int[] { 1, 2, 3, 5, 8, 13, 21, 34 };
+            args = new Object[] { quote, "lap", 57 };
+        }
+
+        state = withState ? Collections.singletonMap("session", new JsonPrimitive("race-1")) : null;
+    }
+
+    @Benchmark
+    public String tree() {
+        JsonElement[] jsonArguments = new JsonElement[args.length];
+        for (int i = 0; i < args.length; i++) {
+            jsonArguments[i] = gson.toJsonTree(args[i]);
+        }
+
+        HubInvocation invocation = new HubInvocation();
+        invocation.setCallbackId("42");
+        invocation.setHub("telemetryHub");
+        invocation.setMethod("sendQuote");
+        invocation.setArgs(jsonArguments);
+        invocation.setState(state);
+
+        return gson.toJson(invocation);
+    }
+
+    @Benchmark
+    public String encoder() {
+        String encodedArguments = encoder.encodeArguments(gson, args);
+        return encoder.encodeInvocation(gson, "42", "sendQuote", encodedArguments, state);
+    }
+}
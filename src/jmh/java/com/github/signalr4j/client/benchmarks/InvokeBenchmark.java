@@ -0,0 +1,149 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.benchmarks;
+
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.SignalRFuture;
+import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubProxy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures HubProxy.invoke up to the transport boundary: callback
+ * registration, argument serialization, invocation encoding and
+ * Connection.send, with a no-op transport standing in for the network.
+ * The result future is cancelled right away so that the pending table
+ * stays small, which is part of the measured cost. Run with -prof gc to get
+ * the allocation rate
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvokeBenchmark {
+
+    public static class CarSetup {
+        public String car;
+        public double frontWing;
+        public double rearWing;
+        public int[] gearRatios;
+        public String tyreCompound;
+    }
+
+    public static class Lap {
+        public int lap;
+        public double time;
+        public double[] sectors;
+
+        Lap(int lap) {
+            this.lap = lap;
+            this.time = 88.412 + lap * 0.01;
+            this.sectors = new double[] { 28.1, 31.7, 28.6 };
+        }
+    }
+
+    @Param({ "none", "scalars", "object", "list" })
+    public String arguments;
+
+    private HubConnection connection;
+
+    private HubProxy proxy;
+
+    private BenchmarkTransport transport;
+
+    private Object[] args;
+
+    @Setup
+    public void setup() throws Exception {
+        connection = new HubConnection("http://localhost/", "", true, new NullLogger());
+        proxy = connection.createHubProxy("TelemetryHub");
+        transport = BenchmarkTransport.start(connection);
+
+        switch (arguments) {
+        case "none":
+            args = new Object[0];
+            break;
+        case "scalars":
+            args = new Object[] { "car-44", 57, 301.25, true };
+            break;
+        case "object":
+            CarSetup setup = new CarSetup();
+            setup.car = "car-44";
+            setup.frontWing = 12.5;
+            setup.rearWing = 9.75;
+            setup.gearRatios = new int[] { 13, 17, 20, 23, 26, 28, 30, 32 };
+            setup.tyreCompound = "soft";
+            args = new Object[] { setup };
+            break;
+        case "list":
+            List<Lap> laps = new ArrayList<>();
+            for (int i = 1; i <= 50; i++) {
+                laps.add(new Lap(i));
+            }
+            args = new Object[] { "car-44", laps };
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown arguments: " + arguments);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String invoke() {
+        return invokeAndCancel();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String invokeConcurrent4() {
+        return invokeAndCancel();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String invokeConcurrent16() {
+        return invokeAndCancel();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String send() {
+        // raw connection send, with the Gson encoding of the arguments
+        connection.send((Object) args);
+        return transport.getLastSent();
+    }
+
+    private String invokeAndCancel() {
+        SignalRFuture<Void> future = proxy.invoke("updateSetup", args);
+        future.cancel();
+        return transport.getLastSent();
+    }
+}
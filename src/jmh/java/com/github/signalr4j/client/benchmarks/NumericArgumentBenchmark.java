@@ -0,0 +1,116 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.benchmarks;
+
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubProxy;
+import com.github.signalr4j.client.numeric.DoubleColumn;
+import com.github.signalr4j.client.numeric.PrimitiveArrayAdapters;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the binding of a hub event carrying an array of numbers: to a
+ * list of boxed numbers, to a double[] through the primitive array adapter,
+ * and to a reused DoubleColumn, for decimal and for integer numbers. The
+ * stream case reads the array text with the adapter. Run with -prof gc to get
+ * the allocation rate
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NumericArgumentBenchmark {
+
+    @Param({ "boxed", "array", "column", "stream" })
+    public String binding;
+
+    @Param({ "decimal", "integer" })
+    public String values;
+
+    @Param({ "256" })
+    public int length;
+
+    private HubConnection connection;
+
+    private JsonElement message;
+
+    private String samplesText;
+
+    private final DoubleColumn column = new DoubleColumn("samples");
+
+    private Object lastArgument;
+
+    @Setup
+    public void setup() throws Exception {
+        connection = new HubConnection("http://localhost/", "", true, new NullLogger());
+
+        HubProxy proxy = connection.createHubProxy("TelemetryHub");
+        if ("boxed".equals(binding)) {
+            proxy.on("samples", samples -> lastArgument = samples, List.class);
+        } else if ("array".equals(binding)) {
+            proxy.on("samples", samples -> lastArgument = samples, double[].class);
+        } else if ("column".equals(binding)) {
+            proxy.subscribe("samples").addReceivedHandler(args -> {
+                column.read(args[0]);
+                lastArgument = column;
+            });
+        }
+
+        BenchmarkTransport.start(connection);
+
+        StringBuilder samples = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            samples.append(i == 0 ? "" : ",");
+            if ("integer".equals(values)) {
+                samples.append(280 + i);
+            } else {
+                samples.append(280 + i * 0.125);
+            }
+        }
+
+        samplesText = "[" + samples + "]";
+        message = new JsonParser().parse("{\"H\":\"TelemetryHub\",\"M\":\"samples\",\"A\":[" + samplesText + "]}");
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.stop();
+    }
+
+    @Benchmark
+    public Object onReceived() throws IOException {
+        if ("stream".equals(binding)) {
+            return PrimitiveArrayAdapters.DOUBLE_ARRAY.read(new JsonReader(new StringReader(samplesText)));
+        }
+
+        connection.onReceived(message);
+        return lastArgument;
+    }
+}
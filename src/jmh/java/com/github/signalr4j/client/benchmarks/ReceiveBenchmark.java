@@ -0,0 +1,104 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.benchmarks;
+
+import com.github.signalr4j.client.MessageResult;
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubProxy;
+import com.github.signalr4j.client.transport.TransportHelper;
+
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.util.Charsetfunctions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures TransportHelper.processReceivedData, from the raw payload to the
+ * subscription handlers, with recorded payloads: keep-alives, single
+ * events, 100 event batches and invocation results. The bytes variants
+ * compare the WebSocket text frames decoded to a String, as the library does,
+ * with the frames parsed from their UTF-8 bytes. Run with -prof gc to get the
+ * allocation rate
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReceiveBenchmark {
+
+    public static class CarTelemetry {
+        public String car;
+        public int lap;
+        public double speed;
+        public double rpm;
+        public int gear;
+        public double throttle;
+        public double brake;
+        public long timestamp;
+        public double[] tyreTemps;
+    }
+
+    @Param({ "keepalive", "event", "batch", "result" })
+    public String payload;
+
+    private HubConnection connection;
+
+    private String data;
+
+    private ByteBuffer bytes;
+
+    private CarTelemetry lastTelemetry;
+
+    @Setup
+    public void setup() throws Exception {
+        connection = new HubConnection("http://localhost/", "", true, new NullLogger());
+
+        HubProxy proxy = connection.createHubProxy("TelemetryHub");
+        proxy.on("update", telemetry -> lastTelemetry = telemetry, CarTelemetry.class);
+
+        BenchmarkTransport.start(connection);
+        data = BenchmarkTransport.loadPayload(payload);
+        bytes = ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() {
+        connection.stop();
+    }
+
+    @Benchmark
+    public MessageResult processReceivedData() {
+        return TransportHelper.processReceivedData(data, connection);
+    }
+
+    @Benchmark
+    public MessageResult processDecodedBytes() throws InvalidDataException {
+        return TransportHelper.processReceivedData(Charsetfunctions.stringUtf8(bytes), connection);
+    }
+
+    @Benchmark
+    public MessageResult processReceivedBytes() {
+        return TransportHelper.processReceivedData(bytes, connection);
+    }
+}
@@ -7,6 +7,10 @@ See License.txt in the project root for license information.
 package com.github.signalr4j.client;
 
 import com.github.signalr4j.client.http.Request;
+import com.github.signalr4j.client.metrics.Metrics;
+import com.github.signalr4j.client.metrics.NullMetrics;
+import com.github.signalr4j.client.numeric.PrimitiveArrayAdapters;
+import com.github.signalr4j.client.recording.WireRecorder;
 import com.github.signalr4j.client.transport.*;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -15,9 +19,18 @@ import com.google.gson.JsonParser;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * Represents a basic SingalR connection
@@ -28,7 +41,7 @@ public class Connection implements ConnectionBase {
 
     private final Logger logger;
 
-    private final String url;
+    private volatile String url;
 
     private String connectionToken;
 
@@ -66,6 +79,10 @@ public class Connection implements ConnectionBase {
 
     private StateChangedCallback onStateChanged;
 
+    private final List<StateChangedCallback> stateListeners = new CopyOnWriteArrayList<>();
+
+    private volatile Predicate<JsonElement> receiveFilter;
+
     private ClientTransport transport;
 
     private HeartbeatMonitor heartbeatMonitor;
@@ -84,6 +101,38 @@ public class Connection implements ConnectionBase {
 
     private boolean reconnectOnError = true;
 
+    private ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+
+    private long disconnectTimeout = 0;
+
+    private int reconnectAttempts = 0;
+
+    private boolean reconnectStarting = false;
+
+    private long reconnectStartTime = 0;
+
+    private ScheduledFuture<?> reconnectTask;
+
+    private SignalRFuture<NegotiationResponse> failoverNegotiation;
+
+    private SignalRFuture<Void> reconnectAbort;
+
+    private boolean failingOver = false;
+
+    private final AtomicLong reconnectCount = new AtomicLong(0);
+
+    private volatile long lastReconnectDuration = -1;
+
+    private String reconnectCursor;
+
+    private volatile MessageGap lastReconnectGap;
+
+    private EndpointSelector endpointSelector;
+
+    private volatile Metrics metrics = NullMetrics.INSTANCE;
+
+    private volatile WireRecorder wireRecorder;
+
     /**
      * Initializes the connection with an URL
      * 
@@ -151,6 +200,7 @@ public class Connection implements ConnectionBase {
 
         GsonBuilder gsonBuilder = new GsonBuilder();
         gsonBuilder.registerTypeAdapter(Date.class, new DateSerializer());
+        PrimitiveArrayAdapters.register(gsonBuilder);
         gson = gsonBuilder.create();
         state = ConnectionState.DISCONNECTED;
     }
@@ -160,6 +210,43 @@ public class Connection implements ConnectionBase {
         return logger;
     }
 
+    @Override
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the Metrics that receive the connection performance events
+     * 
+     * @param metrics
+     *            The metrics, e.g. a DefaultMetrics instance
+     */
+    public void setMetrics(Metrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics cannot be null");
+        }
+
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the recorder of the raw payloads, or null
+     */
+    public WireRecorder getWireRecorder() {
+        return wireRecorder;
+    }
+
+    /**
+     * Sets the recorder that logs every raw payload received and sent by the
+     * connection
+     * 
+     * @param wireRecorder
+     *            The recorder, or null to stop recording
+     */
+    public void setWireRecorder(WireRecorder wireRecorder) {
+        this.wireRecorder = wireRecorder;
+    }
+
     @Override
     public ConnectionState getState() {
         return state;
@@ -200,6 +287,93 @@ public class Connection implements ConnectionBase {
         this.reconnectOnError = reconnectOnError;
     }
 
+    /**
+     * Returns the selector that chooses the endpoint, or null if the
+     * connection always uses its URL
+     */
+    public EndpointSelector getEndpointSelector() {
+        return endpointSelector;
+    }
+
+    /**
+     * Sets a selector that chooses the endpoint each time the connection
+     * starts. When a negotiation fails, the next best endpoint is tried, and
+     * when the connection gives up reconnecting it starts again on another
+     * endpoint
+     * 
+     * @param endpointSelector
+     *            The selector, or null to always use the connection URL
+     * @throws InvalidStateException
+     *             If the connection is not disconnected
+     */
+    public void setEndpointSelector(EndpointSelector endpointSelector) {
+        if (state != ConnectionState.DISCONNECTED) {
+            throw new InvalidStateException(state);
+        }
+
+        this.endpointSelector = endpointSelector;
+    }
+
+    /**
+     * Returns the policy that spaces reconnect attempts
+     */
+    public ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    /**
+     * Sets the policy that spaces reconnect attempts
+     * 
+     * @param reconnectPolicy
+     *            The policy
+     */
+    public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+        if (reconnectPolicy == null) {
+            throw new IllegalArgumentException("reconnectPolicy cannot be null");
+        }
+
+        this.reconnectPolicy = reconnectPolicy;
+    }
+
+    /**
+     * Returns the number of times the connection was successfully
+     * re-established
+     */
+    public long getReconnectCount() {
+        return reconnectCount.get();
+    }
+
+    /**
+     * Returns how long the last successful reconnection took, from the
+     * moment the connection was lost, in milliseconds. Returns -1 if the
+     * connection never reconnected
+     */
+    public long getLastReconnectDuration() {
+        return lastReconnectDuration;
+    }
+
+    /**
+     * Returns the number of attempts made in the current reconnection, or 0
+     * if the connection is not reconnecting
+     */
+    public int getReconnectAttempts() {
+        synchronized (startLock) {
+            return reconnectAttempts;
+        }
+    }
+
+    /**
+     * Indicates whether messages could have been lost during the last
+     * reconnection. When it returns NONE the server resumed the stream from
+     * the last received message, so any state built from the messages is
+     * still up to date
+     * 
+     * @return The gap, or null if the connection never reconnected
+     */
+    public MessageGap getLastReconnectGap() {
+        return lastReconnectGap;
+    }
+
     @Override
     public String getGroupsToken() {
         return groupsToken;
@@ -296,14 +470,26 @@ public class Connection implements ConnectionBase {
         log("Sending: " + data, LogLevel.INFORMATION);
 
         if (state == ConnectionState.DISCONNECTED || state == ConnectionState.CONNECTING) {
-            onError(new InvalidStateException(state), false);
-            return new SignalRFuture<>();
+            InvalidStateException error = new InvalidStateException(state);
+            onError(error, false);
+
+            SignalRFuture<Void> future = new SignalRFuture<>();
+            future.triggerError(error);
+            return future;
         }
 
         final Connection that = this;
 
+        WireRecorder recorder = wireRecorder;
+        if (recorder != null) {
+            recorder.recordSent(data);
+        }
+
         log("Invoking send on transport", LogLevel.VERBOSE);
         SignalRFuture<Void> future = transport.send(this, data, that::processReceivedData);
+        if (NullMetrics.isEnabled(metrics)) {
+            metrics.sent(TransportHelper.utf8Length(data));
+        }
 
         handleFutureError(future, false);
         return future;
@@ -339,7 +525,11 @@ public class Connection implements ConnectionBase {
             handleFutureError(connectionFuture, true);
 
             log("Start negotiation", LogLevel.VERBOSE);
-            SignalRFuture<NegotiationResponse> negotiationFuture = transport.negotiate(this);
+            SignalRFuture<NegotiationResponse> negotiationFuture = negotiate(transport);
+
+            // linked before the handlers run, so a negotiation that completes
+            // at once does not replace the transport future started by them
+            connectionFuture.setFuture(negotiationFuture);
 
             try {
                 negotiationFuture.done(negotiationResponse -> {
@@ -351,18 +541,7 @@ public class Connection implements ConnectionBase {
                         return;
                     }
 
-                    connectionId = negotiationResponse.getConnectionId();
-                    connectionToken = negotiationResponse.getConnectionToken();
-                    log("ConnectionId: " + connectionId, LogLevel.VERBOSE);
-                    log("ConnectionToken: " + connectionToken, LogLevel.VERBOSE);
-
-                    KeepAliveData keepAliveData = null;
-                    if (negotiationResponse.getKeepAliveTimeout() > 0) {
-                        log("Keep alive timeout: " + negotiationResponse.getKeepAliveTimeout(), LogLevel.VERBOSE);
-                        keepAliveData = new KeepAliveData((long) (negotiationResponse.getKeepAliveTimeout() * 1000));
-                    }
-
-                    startTransport(keepAliveData, false);
+                    startTransport(onNegotiated(negotiationResponse), false);
                 });
 
                 negotiationFuture.onError(error -> connectionFuture.triggerError(error));
@@ -372,12 +551,79 @@ public class Connection implements ConnectionBase {
             }
 
             handleFutureError(negotiationFuture, true);
-            connectionFuture.setFuture(negotiationFuture);
 
             return connectionFuture;
         }
     }
 
+    /**
+     * Reads the server connection from the negotiation response
+     * 
+     * @return The keep alive data, or null if the server does not send keep
+     *         alive messages
+     */
+    private KeepAliveData onNegotiated(NegotiationResponse negotiationResponse) {
+        connectionId = negotiationResponse.getConnectionId();
+        connectionToken = negotiationResponse.getConnectionToken();
+        log("ConnectionId: " + connectionId, LogLevel.VERBOSE);
+        log("ConnectionToken: " + connectionToken, LogLevel.VERBOSE);
+
+        disconnectTimeout = (long) (negotiationResponse.getDisconnectTimeout() * 1000);
+
+        KeepAliveData keepAliveData = null;
+        if (negotiationResponse.getKeepAliveTimeout() > 0) {
+            log("Keep alive timeout: " + negotiationResponse.getKeepAliveTimeout(), LogLevel.VERBOSE);
+            keepAliveData = new KeepAliveData((long) (negotiationResponse.getKeepAliveTimeout() * 1000));
+        }
+
+        return keepAliveData;
+    }
+
+    /**
+     * Negotiates with the best endpoint, failing over to the next ones when
+     * the negotiation fails
+     */
+    private SignalRFuture<NegotiationResponse> negotiate(ClientTransport transport) {
+        EndpointSelector selector = endpointSelector;
+        if (selector == null) {
+            return transport.negotiate(this);
+        }
+
+        SignalRFuture<NegotiationResponse> result = new SignalRFuture<>();
+        negotiate(transport, selector, new HashSet<>(), result);
+
+        return result;
+    }
+
+    private void negotiate(final ClientTransport transport, final EndpointSelector selector, final Set<String> tried,
+            final SignalRFuture<NegotiationResponse> result) {
+        final String endpoint = selector.select(tried);
+        url = endpoint;
+        log("Negotiating with endpoint: " + endpoint, LogLevel.INFORMATION);
+
+        final long start = System.nanoTime();
+        SignalRFuture<NegotiationResponse> negotiation = transport.negotiate(this);
+        result.onCancelled(negotiation::cancel);
+
+        negotiation.done(response -> {
+            selector.recordSuccess(endpoint, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            result.setResult(response);
+        });
+
+        negotiation.onError(error -> {
+            selector.recordFailure(endpoint);
+            tried.add(endpoint);
+
+            boolean starting = state == ConnectionState.CONNECTING || state == ConnectionState.RECONNECTING;
+            if (!result.isCancelled() && starting && tried.size() < selector.getEndpoints().size()) {
+                log("Negotiation with " + endpoint + " failed, trying the next endpoint", LogLevel.INFORMATION);
+                negotiate(transport, selector, tried, result);
+            } else {
+                result.triggerError(error);
+            }
+        });
+    }
+
     /**
      * Changes the connection state
      * 
@@ -391,13 +637,7 @@ public class Connection implements ConnectionBase {
         synchronized (stateLock) {
             if (state == oldState) {
                 state = newState;
-                if (onStateChanged != null) {
-                    try {
-                        onStateChanged.stateChanged(oldState, newState);
-                    } catch (Throwable e) {
-                        onError(e, false);
-                    }
-                }
+                notifyStateChanged(oldState, newState);
                 return true;
             }
 
@@ -405,6 +645,44 @@ public class Connection implements ConnectionBase {
         }
     }
 
+    private void notifyStateChanged(ConnectionState oldState, ConnectionState newState) {
+        for (StateChangedCallback listener : stateListeners) {
+            try {
+                listener.stateChanged(oldState, newState);
+            } catch (Throwable e) {
+                onError(e, false);
+            }
+        }
+
+        if (onStateChanged != null) {
+            try {
+                onStateChanged.stateChanged(oldState, newState);
+            } catch (Throwable e) {
+                onError(e, false);
+            }
+        }
+    }
+
+    /**
+     * Adds a state listener that does not replace the StateChanged handler.
+     * Listeners are invoked while the state lock is held, so they must not
+     * block
+     */
+    void addStateListener(StateChangedCallback listener) {
+        stateListeners.add(listener);
+    }
+
+    void removeStateListener(StateChangedCallback listener) {
+        stateListeners.remove(listener);
+    }
+
+    /**
+     * Sets a filter that decides which received messages are dispatched
+     */
+    void setReceiveFilter(Predicate<JsonElement> receiveFilter) {
+        this.receiveFilter = receiveFilter;
+    }
+
     @Override
     public Credentials getCredentials() {
         return credentials;
@@ -445,6 +723,9 @@ public class Connection implements ConnectionBase {
             log("Stopping the connection", LogLevel.INFORMATION);
             aborting = true;
 
+            // a reconnect waiting for the same abort must not start again
+            reconnectAbort = null;
+
             log("Starting abort operation", LogLevel.VERBOSE);
             abortFuture = transport.abort(this);
 
@@ -486,13 +767,7 @@ public class Connection implements ConnectionBase {
             log("Disconnecting", LogLevel.INFORMATION);
             ConnectionState oldState = state;
             state = ConnectionState.DISCONNECTED;
-            if (onStateChanged != null) {
-                try {
-                    onStateChanged.stateChanged(oldState, ConnectionState.DISCONNECTED);
-                } catch (Throwable e) {
-                    onError(e, false);
-                }
-            }
+            notifyStateChanged(oldState, ConnectionState.DISCONNECTED);
 
             if (heartbeatMonitor != null) {
                 log("Stopping Heartbeat monitor", LogLevel.VERBOSE);
@@ -521,6 +796,7 @@ public class Connection implements ConnectionBase {
             transport = null;
 
         }
+        cancelReconnect();
         onClosed();
     }
 
@@ -543,8 +819,6 @@ public class Connection implements ConnectionBase {
      * Triggers the Reconnecting event
      */
     protected void onReconnecting() {
-        changeState(ConnectionState.CONNECTED, ConnectionState.RECONNECTING);
-
         if (onReconnecting != null) {
             onReconnecting.run();
         }
@@ -613,10 +887,6 @@ public class Connection implements ConnectionBase {
                     log("Stopping heartbeat monitor", LogLevel.VERBOSE);
                     heartbeatMonitor.stop();
                 }
-
-                transport.abort(this);
-
-                onReconnecting();
             }
 
             heartbeatMonitor = new HeartbeatMonitor();
@@ -641,15 +911,30 @@ public class Connection implements ConnectionBase {
             ConnectionType connectionType = isReconnecting ? ConnectionType.RECONNECTION : ConnectionType.INITIAL_CONNECTION;
 
             log("Starting transport for " + connectionType, LogLevel.VERBOSE);
-            SignalRFuture<Void> future = transport.start(this, connectionType, data -> {
-                log("Received data: ", LogLevel.VERBOSE);
-                processReceivedData(data);
+            SignalRFuture<Void> future = transport.start(this, connectionType, new DataResultCallback() {
+
+                @Override
+                public void onData(String data) {
+                    log("Received data: ", LogLevel.VERBOSE);
+                    processReceivedData(data);
+                }
+
+                @Override
+                public void onData(ByteBuffer data) {
+                    log("Received data: ", LogLevel.VERBOSE);
+                    processReceivedData(data);
+                }
             });
 
             handleFutureError(future, true);
 
             connectionFuture.setFuture(future);
-            future.onError(error -> connectionFuture.triggerError(error));
+            future.onError(error -> {
+                if (endpointSelector != null) {
+                    endpointSelector.recordFailure(url);
+                }
+                connectionFuture.triggerError(error);
+            });
 
             this.keepAliveData = keepAliveData;
 
@@ -660,16 +945,30 @@ public class Connection implements ConnectionBase {
                         log("Current state: " + state, LogLevel.VERBOSE);
                         if (changeState(ConnectionState.RECONNECTING, ConnectionState.CONNECTED)) {
 
-                            log("Starting Heartbeat monitor", LogLevel.VERBOSE);
-                            heartbeatMonitor.start(this.keepAliveData, that);
+                            lastReconnectDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - reconnectStartTime);
+                            reconnectCount.incrementAndGet();
+                            lastReconnectGap = reconnectCursor != null ? MessageGap.NONE : MessageGap.POSSIBLE;
+                            log("Reconnected after " + reconnectAttempts + " attempts in " + lastReconnectDuration + " ms", LogLevel.VERBOSE);
+                            reconnectAttempts = 0;
+                            failingOver = false;
+                            metrics.reconnected(lastReconnectDuration);
+                            metrics.transportSelected(transport.getName());
+
+                            if (this.keepAliveData != null) {
+                                log("Starting Heartbeat monitor", LogLevel.VERBOSE);
+                                heartbeatMonitor.start(this.keepAliveData, that);
+                            }
 
                             log("Reconnected", LogLevel.INFORMATION);
                             onReconnected();
 
                         } else if (changeState(ConnectionState.CONNECTING, ConnectionState.CONNECTED)) {
+                            metrics.transportSelected(transport.getName());
 
-                            log("Starting Heartbeat monitor", LogLevel.VERBOSE);
-                            heartbeatMonitor.start(this.keepAliveData, that);
+                            if (this.keepAliveData != null) {
+                                log("Starting Heartbeat monitor", LogLevel.VERBOSE);
+                                heartbeatMonitor.start(this.keepAliveData, that);
+                            }
 
                             log("Connected", LogLevel.INFORMATION);
                             onConnected();
@@ -690,12 +989,43 @@ public class Connection implements ConnectionBase {
      *            The received data
      */
     private void processReceivedData(String data) {
+        WireRecorder recorder = wireRecorder;
+        if (recorder != null) {
+            recorder.recordReceived(data);
+        }
+
+        beat();
+        onMessageResult(TransportHelper.processReceivedData(data, this));
+    }
+
+    /**
+     * Parses the received UTF-8 data and triggers the OnReceived event
+     * 
+     * @param data
+     *            The received data
+     */
+    private void processReceivedData(ByteBuffer data) {
+        WireRecorder recorder = wireRecorder;
+        if (recorder != null) {
+            recorder.recordReceived(data);
+        }
+
+        beat();
+        onMessageResult(TransportHelper.processReceivedData(data, this));
+    }
+
+    private void beat() {
         if (heartbeatMonitor != null) {
+            KeepAliveData monitoredKeepAlive = heartbeatMonitor.getKeepAliveData();
+            if (monitoredKeepAlive != null && monitoredKeepAlive.getLastKeepAlive() > 0 && NullMetrics.isEnabled(metrics)) {
+                metrics.keepAliveGap(System.currentTimeMillis() - monitoredKeepAlive.getLastKeepAlive());
+            }
+
             heartbeatMonitor.beat();
         }
+    }
 
-        MessageResult result = TransportHelper.processReceivedData(data, this);
-
+    private void onMessageResult(MessageResult result) {
         if (result.disconnect()) {
             disconnect();
             return;
@@ -754,21 +1084,227 @@ public class Connection implements ConnectionBase {
     }
 
     /**
-     * Stops the heartbeat monitor and re-starts the transport
+     * Stops the heartbeat monitor and schedules a transport restart, as
+     * defined by the reconnect policy
      */
     private void reconnect() {
-        if (state == ConnectionState.CONNECTED || state == ConnectionState.RECONNECTING) {
+        synchronized (startLock) {
+            if (state != ConnectionState.CONNECTED && state != ConnectionState.RECONNECTING) {
+                return;
+            }
+
+            if (reconnectTask != null || reconnectStarting || failoverNegotiation != null || reconnectAbort != null) {
+                // errors and timeouts from the lost transport must not
+                // trigger more attempts than the policy allows
+                log("Reconnect attempt already scheduled", LogLevel.VERBOSE);
+                return;
+            }
+
             log("Stopping Heartbeat monitor", LogLevel.VERBOSE);
             heartbeatMonitor.stop();
-            log("Restarting the transport", LogLevel.INFORMATION);
 
-            // if it is reconnecting and the connection cannot yet be established
-            // therefore the mHeartbeatMonitor instance wouldn't be initialized with the KeepAliveData value
-            KeepAliveData keepAliveData = heartbeatMonitor.getKeepAliveData();
-            if (keepAliveData == null && this.keepAliveData != null)
-                keepAliveData = this.keepAliveData;
+            if (!changeState(ConnectionState.CONNECTED, ConnectionState.RECONNECTING)) {
+                scheduleReconnectAttempt();
+                return;
+            }
+
+            reconnectStartTime = System.nanoTime();
+            reconnectAttempts = 0;
+            reconnectStarting = true;
+        }
+
+        // the handlers run outside the lock, like the closed event, and before
+        // the first attempt so they can hold the pending invocations
+        try {
+            onReconnecting();
+        } finally {
+            synchronized (startLock) {
+                reconnectStarting = false;
+
+                // a reconnecting handler might have stopped the connection
+                if (state == ConnectionState.RECONNECTING) {
+                    scheduleReconnectAttempt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Restarts the transport now or later, as defined by the reconnect
+     * policy, or gives up. Must be invoked holding the startLock
+     */
+    private void scheduleReconnectAttempt() {
+        long now = System.nanoTime();
+        reconnectAttempts++;
+
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(now - reconnectStartTime);
+        long delay = reconnectPolicy.getDelay(reconnectAttempts);
+
+        // once the disconnect timeout is over, the server has discarded the
+        // connection, so there is no point in trying again
+        long reconnectWindow = disconnectTimeout > 0 && keepAliveData != null ? disconnectTimeout + keepAliveData.getTimeout() : disconnectTimeout;
+
+        if (delay == ReconnectPolicy.NO_MORE_ATTEMPTS || (reconnectWindow > 0 && elapsed + delay > reconnectWindow)) {
+            log("Giving up reconnecting after " + (reconnectAttempts - 1) + " attempts", LogLevel.INFORMATION);
+            ReconnectFailedException error = new ReconnectFailedException(reconnectAttempts - 1, elapsed);
+            reconnectAttempts = 0;
+
+            if (onError != null) {
+                onError.onError(error);
+            }
+
+            if (endpointSelector != null && endpointSelector.getEndpoints().size() > 1 && !failingOver) {
+                failover();
+            } else {
+                disconnect();
+            }
+            return;
+        }
+
+        if (delay == 0) {
+            restartTransport();
+        } else {
+            log("Reconnect attempt " + reconnectAttempts + " in " + delay + " ms", LogLevel.INFORMATION);
+            reconnectTask = SharedTimer.schedule(() -> {
+                synchronized (startLock) {
+                    if (reconnectTask == null) {
+                        // cancelled
+                        return;
+                    }
+
+                    reconnectTask = null;
 
+                    if (state == ConnectionState.RECONNECTING) {
+                        restartTransport();
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Starts a new server connection on the best endpoint. The connection
+     * stays in the reconnecting state, so a stop() during the failover is
+     * not overridden. Must be invoked holding the startLock
+     */
+    private void failover() {
+        endpointSelector.recordFailure(url);
+
+        if (transport == null) {
+            disconnect();
+            return;
+        }
+
+        log("Failing over to another endpoint", LogLevel.INFORMATION);
+        failingOver = true;
+
+        if (heartbeatMonitor != null) {
+            heartbeatMonitor.stop();
+        }
+
+        // the former server connection cannot be resumed
+        transport.abort(this);
+        connectionId = null;
+        connectionToken = null;
+        groupsToken = null;
+        messageId = null;
+        reconnectCursor = null;
+
+        final SignalRFuture<NegotiationResponse> negotiation = negotiate(transport);
+        failoverNegotiation = negotiation;
+
+        negotiation.done(negotiationResponse -> {
+            synchronized (startLock) {
+                if (failoverNegotiation != negotiation || state != ConnectionState.RECONNECTING) {
+                    // stopped or restarted meanwhile
+                    return;
+                }
+
+                failoverNegotiation = null;
+
+                if (!verifyProtocolVersion(negotiationResponse.getProtocolVersion())) {
+                    onError(new InvalidProtocolVersionException(negotiationResponse.getProtocolVersion()), false);
+                    disconnect();
+                    return;
+                }
+
+                log("Negotiation completed", LogLevel.INFORMATION);
+                startTransport(onNegotiated(negotiationResponse), false);
+            }
+        });
+
+        negotiation.onError(error -> {
+            synchronized (startLock) {
+                if (failoverNegotiation != negotiation) {
+                    return;
+                }
+
+                failoverNegotiation = null;
+                onError(error, false);
+                disconnect();
+            }
+        });
+    }
+
+    private void restartTransport() {
+        log("Restarting the transport", LogLevel.INFORMATION);
+
+        // if it is reconnecting and the connection cannot yet be established
+        // therefore the mHeartbeatMonitor instance wouldn't be initialized with the KeepAliveData value
+        KeepAliveData keepAliveData = heartbeatMonitor.getKeepAliveData();
+        if (keepAliveData == null && this.keepAliveData != null)
+            keepAliveData = this.keepAliveData;
+
+        // the transport sends the cursor so the server can resume from it
+        reconnectCursor = getMessageId();
+
+        // the server closes the transport it finds when the abort reaches it,
+        // so the new transport is started once the abort was answered
+        final SignalRFuture<Void> abort = transport.abort(this);
+        if (abort == null || abort.isDone() || abort.isCancelled() || abort.errorWasTriggered()) {
             startTransport(keepAliveData, true);
+            return;
+        }
+
+        reconnectAbort = abort;
+
+        final KeepAliveData restartKeepAliveData = keepAliveData;
+        Runnable restart = () -> {
+            synchronized (startLock) {
+                if (reconnectAbort != abort) {
+                    // stopped meanwhile
+                    return;
+                }
+
+                reconnectAbort = null;
+
+                if (state == ConnectionState.RECONNECTING) {
+                    startTransport(restartKeepAliveData, true);
+                }
+            }
+        };
+
+        abort.done(obj -> restart.run());
+        abort.onError(error -> restart.run());
+    }
+
+    private void cancelReconnect() {
+        synchronized (startLock) {
+            if (reconnectTask != null) {
+                reconnectTask.cancel(false);
+                reconnectTask = null;
+            }
+
+            if (failoverNegotiation != null) {
+                failoverNegotiation.cancel();
+                failoverNegotiation = null;
+            }
+
+            reconnectAbort = null;
+
+            failingOver = false;
+
+            reconnectAttempts = 0;
         }
     }
 
@@ -791,13 +1327,36 @@ public class Connection implements ConnectionBase {
 
     @Override
     public void onReceived(JsonElement message) {
+        Predicate<JsonElement> filter = receiveFilter;
+        if (filter != null && !filter.test(message)) {
+            log("Message filtered: " + message, LogLevel.VERBOSE);
+            return;
+        }
+
+        dispatchReceived(message);
+    }
+
+    /**
+     * Dispatches a received message to the handlers
+     * 
+     * @param message
+     *            The message
+     */
+    protected void dispatchReceived(JsonElement message) {
         if (onReceived != null && getState() == ConnectionState.CONNECTED) {
             log("Invoking messageReceived with: " + message, LogLevel.VERBOSE);
+            Metrics metrics = this.metrics;
+            boolean measured = NullMetrics.isEnabled(metrics);
+            long handlerStart = measured ? System.nanoTime() : 0;
             try {
                 onReceived.onMessageReceived(message);
             } catch (Throwable error) {
                 onError(error, false);
             }
+
+            if (measured) {
+                metrics.handled(System.nanoTime() - handlerStart);
+            }
         }
     }
 }
@@ -13,6 +13,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 
 import com.github.signalr4j.client.http.Request;
+import com.github.signalr4j.client.metrics.Metrics;
 import com.github.signalr4j.client.transport.ClientTransport;
 
 public interface ConnectionBase {
@@ -200,4 +201,9 @@ public interface ConnectionBase {
      * Returns the Logger used by the connection
      */
     Logger getLogger();
+
+    /**
+     * Returns the Metrics that receive the connection performance events
+     */
+    Metrics getMetrics();
 }
\ No newline at end of file
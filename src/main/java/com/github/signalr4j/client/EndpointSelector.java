@@ -0,0 +1,202 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses the endpoint a connection uses among a list of equivalent ones,
+ * based on the negotiate latency and the error rate measured for each of
+ * them. Endpoints that were never measured are tried first, endpoints that
+ * failed every time they were tried come last, and endpoints that failed
+ * recently are only used when all the others failed too. A selector can be
+ * shared by several connections
+ */
+public class EndpointSelector {
+
+    /**
+     * Weight of the last sample in the moving averages
+     */
+    private static final double SMOOTHING = 0.3;
+
+    /**
+     * How much a 100% error rate multiplies the latency score
+     */
+    private static final double ERROR_PENALTY = 10;
+
+    private final Map<String, EndpointStats> endpoints = new LinkedHashMap<>();
+
+    private long failureCooldown = 30000;
+
+    /**
+     * Initializes the selector
+     *
+     * @param urls
+     *            The connection URLs of the endpoints, in order of preference
+     */
+    public EndpointSelector(List<String> urls) {
+        if (urls == null || urls.isEmpty()) {
+            throw new IllegalArgumentException("urls cannot be empty");
+        }
+
+        for (String url : urls) {
+            if (url == null) {
+                throw new IllegalArgumentException("urls cannot contain null");
+            }
+
+            endpoints.put(normalize(url), new EndpointStats());
+        }
+    }
+
+    /**
+     * Returns the endpoint URLs
+     */
+    public synchronized List<String> getEndpoints() {
+        return Collections.unmodifiableList(new ArrayList<>(endpoints.keySet()));
+    }
+
+    /**
+     * Returns how long an endpoint that failed is avoided, in milliseconds
+     */
+    public synchronized long getFailureCooldown() {
+        return failureCooldown;
+    }
+
+    /**
+     * Sets how long an endpoint that failed is avoided
+     *
+     * @param failureCooldown
+     *            The time in milliseconds
+     */
+    public synchronized void setFailureCooldown(long failureCooldown) {
+        if (failureCooldown < 0) {
+            throw new IllegalArgumentException("failureCooldown cannot be negative");
+        }
+
+        this.failureCooldown = failureCooldown;
+    }
+
+    /**
+     * Returns the best endpoint
+     */
+    public String select() {
+        return select(Collections.<String> emptyList());
+    }
+
+    /**
+     * Returns the best endpoint that is not excluded
+     *
+     * @param excluded
+     *            URLs that must not be returned
+     * @return The endpoint URL, or null if all the endpoints are excluded
+     */
+    public synchronized String select(Collection<String> excluded) {
+        long now = System.currentTimeMillis();
+
+        String best = null;
+        double bestScore = Double.MAX_VALUE;
+        boolean bestCoolingDown = true;
+
+        for (Map.Entry<String, EndpointStats> entry : endpoints.entrySet()) {
+            if (excluded.contains(entry.getKey())) {
+                continue;
+            }
+
+            EndpointStats stats = entry.getValue();
+            boolean coolingDown = stats.lastFailure > 0 && now - stats.lastFailure < failureCooldown;
+            double score = score(stats);
+
+            // an endpoint out of cooldown always beats one in cooldown
+            if (best == null || (bestCoolingDown && !coolingDown) || (bestCoolingDown == coolingDown && score < bestScore)) {
+                best = entry.getKey();
+                bestScore = score;
+                bestCoolingDown = coolingDown;
+            }
+        }
+
+        return best;
+    }
+
+    private static double score(EndpointStats stats) {
+        if (stats.samples == 0) {
+            // never measured, or failed every time it was tried
+            return stats.failures == 0 ? 0 : Double.POSITIVE_INFINITY;
+        }
+
+        return stats.latency * (1 + ERROR_PENALTY * stats.errorRate);
+    }
+
+    /**
+     * Records a successful negotiation
+     *
+     * @param url
+     *            The endpoint URL
+     * @param latency
+     *            The negotiate latency in milliseconds
+     */
+    public synchronized void recordSuccess(String url, long latency) {
+        EndpointStats stats = endpoints.get(normalize(url));
+        if (stats == null) {
+            return;
+        }
+
+        stats.latency = stats.samples == 0 ? latency : stats.latency + SMOOTHING * (latency - stats.latency);
+        stats.errorRate -= SMOOTHING * stats.errorRate;
+        stats.samples++;
+    }
+
+    /**
+     * Records a failure to negotiate, connect or reconnect
+     *
+     * @param url
+     *            The endpoint URL
+     */
+    public synchronized void recordFailure(String url) {
+        EndpointStats stats = endpoints.get(normalize(url));
+        if (stats == null) {
+            return;
+        }
+
+        stats.errorRate += SMOOTHING * (1 - stats.errorRate);
+        stats.failures++;
+        stats.lastFailure = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the average negotiate latency of an endpoint in milliseconds,
+     * or -1 if it was never measured
+     */
+    public synchronized double getLatency(String url) {
+        EndpointStats stats = endpoints.get(normalize(url));
+        return stats == null || stats.samples == 0 ? -1 : stats.latency;
+    }
+
+    /**
+     * Returns the recent error rate of an endpoint, between 0 and 1
+     */
+    public synchronized double getErrorRate(String url) {
+        EndpointStats stats = endpoints.get(normalize(url));
+        return stats == null ? 0 : stats.errorRate;
+    }
+
+    static String normalize(String url) {
+        return url.endsWith("/") ? url : url + "/";
+    }
+
+    private static class EndpointStats {
+        private double latency = 0;
+        private double errorRate = 0;
+        private int samples = 0;
+        private int failures = 0;
+        private long lastFailure = 0;
+    }
+}
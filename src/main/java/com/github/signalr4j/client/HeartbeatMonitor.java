@@ -7,11 +7,13 @@ See License.txt in the project root for license information.
 package com.github.signalr4j.client;
 
 import java.util.Calendar;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Heartbeat Monitor to detect slow or timed out connections
+ * Heartbeat Monitor to detect slow or timed out connections. The checks run
+ * on the SharedTimer, so monitors do not hold a thread each, and the
+ * handlers run on its callback threads
  */
 public class HeartbeatMonitor {
     private Runnable onWarning;
@@ -20,7 +22,7 @@ public class HeartbeatMonitor {
 
     private KeepAliveData keepAliveData;
 
-    private ScheduledThreadPoolExecutor executor;
+    private ScheduledFuture<?> checkTask;
 
     private boolean timedOut = false;
 
@@ -56,38 +58,53 @@ public class HeartbeatMonitor {
 
             long interval = this.keepAliveData.getCheckInterval();
 
-            executor = new ScheduledThreadPoolExecutor(1);
-            executor.scheduleAtFixedRate(() -> {
-                synchronized (sync) {
-                    if (!stopped) {
-                        if (connection.getState() == ConnectionState.CONNECTED) {
-                            long lastKeepAlive = HeartbeatMonitor.this.keepAliveData.getLastKeepAlive();
-                            long timeElapsed = Calendar.getInstance().getTimeInMillis() - lastKeepAlive;
-
-                            if (timeElapsed >= HeartbeatMonitor.this.keepAliveData.getTimeout()) {
-                                if (!timedOut) {
-                                    // Connection has been lost
-                                    timedOut = true;
-                                    onTimeout.run();
-                                }
-                            } else if (timeElapsed >= HeartbeatMonitor.this.keepAliveData.getTimeoutWarning()) {
-                                if (!hasBeenWarned) {
-                                    // Inform user and set HasBeenWarned to
-                                    // true
-                                    hasBeenWarned = true;
-                                    onWarning.run();
-                                }
-                            } else {
-                                hasBeenWarned = false;
-                                timedOut = false;
-                            }
-                        }
-                    }
+            checkTask = SharedTimer.scheduleAtFixedRate(() -> {
+                Runnable handler = check(connection);
+                if (handler != null) {
+                    // the handlers reconnect the connection or run
+                    // application code, which must not hold up the timer
+                    // thread shared by every connection
+                    SharedTimer.execute(handler);
                 }
             }, interval, interval, TimeUnit.MILLISECONDS);
         }
     }
 
+    /**
+     * Checks the time since the last keep-alive
+     * 
+     * @return The handler to invoke, or null
+     */
+    private Runnable check(ConnectionBase connection) {
+        synchronized (sync) {
+            if (stopped || connection.getState() != ConnectionState.CONNECTED) {
+                return null;
+            }
+
+            long lastKeepAlive = keepAliveData.getLastKeepAlive();
+            long timeElapsed = Calendar.getInstance().getTimeInMillis() - lastKeepAlive;
+
+            if (timeElapsed >= keepAliveData.getTimeout()) {
+                if (!timedOut) {
+                    // Connection has been lost
+                    timedOut = true;
+                    return onTimeout;
+                }
+            } else if (timeElapsed >= keepAliveData.getTimeoutWarning()) {
+                if (!hasBeenWarned) {
+                    // Inform user and set HasBeenWarned to true
+                    hasBeenWarned = true;
+                    return onWarning;
+                }
+            } else {
+                hasBeenWarned = false;
+                timedOut = false;
+            }
+
+            return null;
+        }
+    }
+
     /**
      * Stops the heartbeat monitor
      */
@@ -95,9 +112,9 @@ public class HeartbeatMonitor {
         if (!stopped) {
             synchronized (sync) {
                 stopped = true;
-                if (executor != null) {
-                    executor.shutdown();
-                    executor = null;
+                if (checkTask != null) {
+                    checkTask.cancel(false);
+                    checkTask = null;
                 }
             }
         }
@@ -0,0 +1,26 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client;
+
+/**
+ * Indicates whether messages could have been lost while a connection was
+ * reconnecting
+ */
+public enum MessageGap {
+    /**
+     * The transport reconnected with the cursor of the last received message,
+     * so the server sent everything that was published in the meantime (as
+     * long as it still had those messages in its buffers)
+     */
+    NONE,
+
+    /**
+     * The transport reconnected without a cursor, so messages published while
+     * the connection was down may have been lost
+     */
+    POSSIBLE
+}
@@ -0,0 +1,18 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client;
+
+/**
+ * Exception to indicate that the connection gave up reconnecting
+ */
+public class ReconnectFailedException extends Exception {
+    private static final long serialVersionUID = -3106522957353418520L;
+
+    public ReconnectFailedException(int attempts, long duration) {
+        super("Could not reconnect after " + attempts + " attempts in " + duration + " ms");
+    }
+}
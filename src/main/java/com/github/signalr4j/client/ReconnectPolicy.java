@@ -0,0 +1,194 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Defines how long a connection waits before each reconnect attempt. The
+ * delay grows exponentially from the initial delay up to the max delay, and
+ * is randomly shortened by up to the jitter fraction so that many clients
+ * losing the same server do not reconnect in lockstep
+ */
+public class ReconnectPolicy {
+
+    /**
+     * Value returned by getDelay when no more attempts must be made
+     */
+    public static final long NO_MORE_ATTEMPTS = -1;
+
+    private long initialDelay = 1000;
+
+    private long maxDelay = 30000;
+
+    private double multiplier = 2;
+
+    private double jitter = 0.5;
+
+    private int maxAttempts = 0;
+
+    private boolean immediateFirstAttempt = true;
+
+    /**
+     * Returns the delay before the second attempt, in milliseconds
+     */
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    /**
+     * Sets the delay before the second attempt (or the first one, if it is
+     * not immediate)
+     * 
+     * @param initialDelay
+     *            The delay in milliseconds
+     */
+    public void setInitialDelay(long initialDelay) {
+        if (initialDelay < 0) {
+            throw new IllegalArgumentException("initialDelay cannot be negative");
+        }
+
+        this.initialDelay = initialDelay;
+    }
+
+    /**
+     * Returns the maximum delay between attempts, in milliseconds
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Sets the maximum delay between attempts
+     * 
+     * @param maxDelay
+     *            The delay in milliseconds
+     */
+    public void setMaxDelay(long maxDelay) {
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("maxDelay cannot be negative");
+        }
+
+        this.maxDelay = maxDelay;
+    }
+
+    /**
+     * Returns the factor applied to the delay after each attempt
+     */
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Sets the factor applied to the delay after each attempt
+     * 
+     * @param multiplier
+     *            The factor. Must be at least 1
+     */
+    public void setMultiplier(double multiplier) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("multiplier must be at least 1");
+        }
+
+        this.multiplier = multiplier;
+    }
+
+    /**
+     * Returns the fraction of the delay that is randomized
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * Sets the fraction of the delay that is randomized. With a jitter of
+     * 0.5 a delay of 1000 milliseconds becomes a random value between 500
+     * and 1000 milliseconds
+     * 
+     * @param jitter
+     *            Fraction between 0 (no jitter) and 1
+     */
+    public void setJitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("jitter must be between 0 and 1");
+        }
+
+        this.jitter = jitter;
+    }
+
+    /**
+     * Returns the maximum number of attempts, or 0 if unlimited
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the maximum number of consecutive attempts. Even when unlimited,
+     * the connection gives up once the server disconnect timeout is over, as
+     * the server has discarded the connection by then
+     * 
+     * @param maxAttempts
+     *            The number of attempts, or 0 for unlimited
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 0) {
+            throw new IllegalArgumentException("maxAttempts cannot be negative");
+        }
+
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Indicates if the first attempt is made right after the connection is
+     * lost
+     */
+    public boolean isImmediateFirstAttempt() {
+        return immediateFirstAttempt;
+    }
+
+    /**
+     * Sets whether the first attempt is made right after the connection is
+     * lost, or after the initial delay
+     * 
+     * @param immediateFirstAttempt
+     *            True to make the first attempt without delay
+     */
+    public void setImmediateFirstAttempt(boolean immediateFirstAttempt) {
+        this.immediateFirstAttempt = immediateFirstAttempt;
+    }
+
+    /**
+     * Returns the delay before an attempt
+     * 
+     * @param attempt
+     *            The attempt number, starting at 1
+     * @return The delay in milliseconds, or NO_MORE_ATTEMPTS
+     */
+    public long getDelay(int attempt) {
+        if (attempt < 1) {
+            throw new IllegalArgumentException("attempt must be at least 1");
+        }
+
+        if (maxAttempts > 0 && attempt > maxAttempts) {
+            return NO_MORE_ATTEMPTS;
+        }
+
+        int exponent = immediateFirstAttempt ? attempt - 2 : attempt - 1;
+        if (exponent < 0) {
+            return 0;
+        }
+
+        double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, exponent));
+
+        if (jitter > 0) {
+            delay -= delay * jitter * ThreadLocalRandom.current().nextDouble();
+        }
+
+        return (long) delay;
+    }
+}
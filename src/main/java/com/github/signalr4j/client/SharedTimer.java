@@ -0,0 +1,112 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process wide timer used to schedule short, non-blocking tasks (timeouts,
+ * delayed retries) without creating a thread per operation. The work that
+ * can block or call user code is handed off with execute, so that it cannot
+ * delay the other timers
+ */
+public class SharedTimer {
+
+    private static final Object sync = new Object();
+
+    private static ScheduledThreadPoolExecutor executor;
+
+    private static ExecutorService callbackExecutor;
+
+    private SharedTimer() {
+    }
+
+    /**
+     * Schedules a task to run once after the given delay
+     *
+     * @param task
+     *            The task to run. It must not block, as all the tasks share a
+     *            single thread
+     * @param delay
+     *            The delay
+     * @param unit
+     *            The delay unit
+     * @return A Future that can be used to cancel the task
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return getExecutor().schedule(task, delay, unit);
+    }
+
+    /**
+     * Schedules a task to run periodically
+     *
+     * @param task
+     *            The task to run. It must not block, as all the tasks share a
+     *            single thread
+     * @param initialDelay
+     *            The delay before the first execution
+     * @param period
+     *            The period between executions
+     * @param unit
+     *            The delay and period unit
+     * @return A Future that can be used to cancel the task
+     */
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        return getExecutor().scheduleAtFixedRate(task, initialDelay, period, unit);
+    }
+
+    /**
+     * Runs a task on a pooled thread other than the timer one. Timer tasks use
+     * it for the work that may block, such as invoking user callbacks or
+     * aborting a transport
+     *
+     * @param task
+     *            The task to run
+     */
+    public static void execute(Runnable task) {
+        getCallbackExecutor().execute(task);
+    }
+
+    private static ExecutorService getCallbackExecutor() {
+        synchronized (sync) {
+            if (callbackExecutor == null) {
+                // the threads are created on demand and end when idle, like a
+                // cached thread pool
+                callbackExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "signalr4j-callback");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+
+            return callbackExecutor;
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor getExecutor() {
+        synchronized (sync) {
+            if (executor == null) {
+                executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                    Thread thread = new Thread(runnable, "signalr4j-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+                // cancelled timeouts are the common case, so they must not stay
+                // in the queue until their delay expires
+                executor.setRemoveOnCancelPolicy(true);
+            }
+
+            return executor;
+        }
+    }
+}
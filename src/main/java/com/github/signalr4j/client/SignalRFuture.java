@@ -100,6 +100,10 @@ public class SignalRFuture<V> implements Future<V> {
     @Override
     public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
         if (resultSemaphore.tryAcquire(timeout, unit)) {
+            // the permit is given back, so the result can be read again, e.g.
+            // by a done handler added after the completion
+            resultSemaphore.release();
+
             if (errorWasTriggered()) {
                 throw new ExecutionException(lastError);
             } else if (isCancelled()) {
@@ -0,0 +1,243 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client;
+
+import com.google.gson.JsonElement;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches the messages received by a primary connection and its standby, so
+ * that a promoted standby delivers what the primary missed and nothing it
+ * already delivered. The two connections get different cursors from the
+ * server and their batches are split differently, so a message is identified
+ * by its content. Messages with the same content are matched in the order
+ * they were received, so identical messages received within the switchover
+ * window can be taken for one another, and one of them skipped or delivered
+ * twice around a promotion. Not thread safe
+ */
+class SwitchoverBuffer {
+
+    private final long window;
+
+    /**
+     * Received by the standby, not yet delivered by the primary
+     */
+    private final MessageLog standbyMessages;
+
+    /**
+     * Delivered by the primary, not yet received by the standby
+     */
+    private final MessageLog primaryMessages;
+
+    /**
+     * Delivered by a former primary, not yet received by the current one
+     */
+    private final MessageLog switchoverMessages;
+
+    /**
+     * Initializes the buffer
+     *
+     * @param maxSize
+     *            Maximum number of messages tracked on each side
+     * @param window
+     *            Time in milliseconds after which a message received by one
+     *            connection is not expected from the other anymore
+     */
+    SwitchoverBuffer(int maxSize, long window) {
+        this.window = TimeUnit.MILLISECONDS.toNanos(window);
+
+        standbyMessages = new MessageLog(maxSize);
+        primaryMessages = new MessageLog(maxSize);
+        switchoverMessages = new MessageLog(maxSize);
+    }
+
+    /**
+     * Processes a message received by the primary
+     *
+     * @param message
+     *            The message
+     * @param track
+     *            True if the standby is connected and will receive the
+     *            message too
+     * @return True if the message must be dispatched
+     */
+    boolean onPrimaryMessage(JsonElement message, boolean track) {
+        long now = System.nanoTime();
+
+        // the primary is past the standby messages it did not deliver in
+        // time, they are not missed messages anymore
+        standbyMessages.expire(now - window);
+        primaryMessages.expire(now - window);
+        switchoverMessages.expire(now - window);
+
+        if (switchoverMessages.remove(message)) {
+            // already delivered by the former primary
+            return false;
+        }
+
+        if (track && !standbyMessages.remove(message)) {
+            primaryMessages.add(message, now);
+        }
+
+        return true;
+    }
+
+    /**
+     * Processes a message received by the standby. The standby never
+     * dispatches messages, the ones the primary did not deliver are kept
+     * until the standby is promoted
+     *
+     * @param message
+     *            The message
+     * @param track
+     *            True if the standby is connected and the message must be
+     *            matched
+     */
+    void onStandbyMessage(JsonElement message, boolean track) {
+        if (!track) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        // the standby messages are kept while the primary does not deliver
+        // anything, since they may be the only copy
+        primaryMessages.expire(now - window);
+
+        if (!primaryMessages.remove(message)) {
+            standbyMessages.add(message, now);
+        }
+    }
+
+    /**
+     * Forgets the messages of the standby, once it is replaced by a new
+     * connection
+     */
+    void resetStandby() {
+        standbyMessages.clear();
+        primaryMessages.clear();
+    }
+
+    /**
+     * Switches the roles once the standby is promoted
+     *
+     * @return The messages received by the standby that the former primary
+     *         did not deliver, in order
+     */
+    List<JsonElement> promote() {
+        List<JsonElement> missed = standbyMessages.messages();
+        standbyMessages.clear();
+
+        primaryMessages.moveTo(switchoverMessages);
+
+        return missed;
+    }
+
+    /**
+     * Messages in the order they were received, indexed by content
+     */
+    private static class MessageLog {
+        private final int maxSize;
+        private final LinkedHashSet<Entry> entries = new LinkedHashSet<>();
+        private final Map<JsonElement, ArrayDeque<Entry>> index = new HashMap<>();
+
+        MessageLog(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        void add(JsonElement message, long time) {
+            if (entries.size() >= maxSize) {
+                removeOldest();
+            }
+
+            Entry entry = new Entry(message, time);
+            entries.add(entry);
+            index.computeIfAbsent(message, key -> new ArrayDeque<>()).addLast(entry);
+        }
+
+        /**
+         * Removes the oldest message with the same content
+         *
+         * @return True if there was one
+         */
+        boolean remove(JsonElement message) {
+            ArrayDeque<Entry> sameContent = index.get(message);
+            if (sameContent == null) {
+                return false;
+            }
+
+            entries.remove(sameContent.pollFirst());
+            if (sameContent.isEmpty()) {
+                index.remove(message);
+            }
+
+            return true;
+        }
+
+        /**
+         * Removes the messages received before the given time
+         */
+        void expire(long time) {
+            while (!entries.isEmpty() && entries.iterator().next().time < time) {
+                removeOldest();
+            }
+        }
+
+        List<JsonElement> messages() {
+            List<JsonElement> messages = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                messages.add(entry.message);
+            }
+
+            return messages;
+        }
+
+        void moveTo(MessageLog log) {
+            for (Entry entry : entries) {
+                log.add(entry.message, entry.time);
+            }
+
+            clear();
+        }
+
+        void clear() {
+            entries.clear();
+            index.clear();
+        }
+
+        private void removeOldest() {
+            Iterator<Entry> iterator = entries.iterator();
+            Entry oldest = iterator.next();
+            iterator.remove();
+
+            // the oldest message is the first one with its content
+            ArrayDeque<Entry> sameContent = index.get(oldest.message);
+            sameContent.pollFirst();
+            if (sameContent.isEmpty()) {
+                index.remove(oldest.message);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final JsonElement message;
+        private final long time;
+
+        Entry(JsonElement message, long time) {
+            this.message = message;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,452 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client;
+
+import com.github.signalr4j.client.transport.ClientTransport;
+import com.google.gson.JsonElement;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a second, already negotiated connection to the same endpoint and
+ * promotes it as soon as the primary connection is lost, instead of waiting
+ * for the primary to reconnect. The standby receives the same messages as
+ * the primary but does not dispatch them, and once promoted it dispatches
+ * the messages the primary missed and skips the ones it already dispatched.
+ * The messages of the two connections are matched by content, so the
+ * messages should not repeat within the switchover window, e.g. by carrying
+ * a sequence number or a timestamp. Otherwise a repeated message can be
+ * skipped or dispatched twice around a promotion.
+ *
+ * Both connections are created by the connection factory, which must set up
+ * the handlers and hub proxies. After a promotion, the application must use
+ * the new primary connection (see the promoted event) to send data.
+ *
+ * @param <T>
+ *            Type of the connections
+ */
+public class WarmStandby<T extends Connection> {
+
+    private final Supplier<T> connectionFactory;
+
+    private final Supplier<ClientTransport> transportFactory;
+
+    private final Object sync = new Object();
+
+    /**
+     * Held while the messages missed by a former primary are dispatched, so
+     * that the new primary does not dispatch a new message before them
+     */
+    private final Object dispatchSync = new Object();
+
+    private final Queue<Runnable> missedMessages = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pendingMissedMessages = new AtomicInteger(0);
+
+    private T primary;
+
+    private T standby;
+
+    private boolean started = false;
+
+    private SwitchoverBuffer buffer;
+
+    private ExecutorService executor;
+
+    private SignalRFuture<Void> startFuture;
+
+    private Action<T> onPromoted;
+
+    private int switchoverBufferSize = 1000;
+
+    private long switchoverWindow = 5000;
+
+    private long standbyRestartDelay = 1000;
+
+    private final AtomicLong failoverCount = new AtomicLong(0);
+
+    /**
+     * Initializes the standby manager
+     *
+     * @param connectionFactory
+     *            Creates a new, configured connection
+     * @param transportFactory
+     *            Creates a new transport for each connection
+     */
+    public WarmStandby(Supplier<T> connectionFactory, Supplier<ClientTransport> transportFactory) {
+        if (connectionFactory == null) {
+            throw new IllegalArgumentException("connectionFactory cannot be null");
+        }
+
+        if (transportFactory == null) {
+            throw new IllegalArgumentException("transportFactory cannot be null");
+        }
+
+        this.connectionFactory = connectionFactory;
+        this.transportFactory = transportFactory;
+    }
+
+    /**
+     * Sets the handler invoked with the new primary connection after a
+     * failover
+     */
+    public void promoted(Action<T> handler) {
+        onPromoted = handler;
+    }
+
+    /**
+     * Returns the current primary connection
+     */
+    public T getPrimary() {
+        synchronized (sync) {
+            return primary;
+        }
+    }
+
+    /**
+     * Returns the current standby connection, or null if there is none
+     */
+    public T getStandby() {
+        synchronized (sync) {
+            return standby;
+        }
+    }
+
+    /**
+     * Returns the number of times a standby was promoted
+     */
+    public long getFailoverCount() {
+        return failoverCount.get();
+    }
+
+    /**
+     * Sets the maximum number of messages tracked to reconcile the two
+     * connections
+     *
+     * @param switchoverBufferSize
+     *            The number of messages
+     */
+    public void setSwitchoverBufferSize(int switchoverBufferSize) {
+        if (switchoverBufferSize < 1) {
+            throw new IllegalArgumentException("switchoverBufferSize must be at least 1");
+        }
+
+        this.switchoverBufferSize = switchoverBufferSize;
+    }
+
+    /**
+     * Sets how long a message dispatched by the primary is expected to
+     * arrive on the standby
+     *
+     * @param switchoverWindow
+     *            The time in milliseconds
+     */
+    public void setSwitchoverWindow(long switchoverWindow) {
+        if (switchoverWindow < 0) {
+            throw new IllegalArgumentException("switchoverWindow cannot be negative");
+        }
+
+        this.switchoverWindow = switchoverWindow;
+    }
+
+    /**
+     * Sets the delay before a new standby is started when the previous one
+     * is closed
+     *
+     * @param standbyRestartDelay
+     *            The delay in milliseconds
+     */
+    public void setStandbyRestartDelay(long standbyRestartDelay) {
+        if (standbyRestartDelay < 0) {
+            throw new IllegalArgumentException("standbyRestartDelay cannot be negative");
+        }
+
+        this.standbyRestartDelay = standbyRestartDelay;
+    }
+
+    /**
+     * Starts the primary and the standby connections
+     *
+     * @return A Future that completes once a primary connection is connected
+     */
+    public SignalRFuture<Void> start() {
+        T connection;
+
+        synchronized (sync) {
+            if (started) {
+                return startFuture;
+            }
+
+            started = true;
+            startFuture = new SignalRFuture<>();
+            buffer = new SwitchoverBuffer(switchoverBufferSize, switchoverWindow);
+            executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "signalr4j-standby");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            connection = connectionFactory.get();
+            primary = connection;
+        }
+
+        manage(connection);
+        connection.start(transportFactory.get());
+
+        startStandby();
+
+        return startFuture;
+    }
+
+    /**
+     * Stops both connections
+     */
+    public void stop() {
+        T oldPrimary;
+        T oldStandby;
+
+        synchronized (sync) {
+            if (!started) {
+                return;
+            }
+
+            started = false;
+            oldPrimary = primary;
+            oldStandby = standby;
+            primary = null;
+            standby = null;
+            executor.shutdown();
+        }
+
+        if (oldPrimary != null) {
+            oldPrimary.stop();
+        }
+
+        if (oldStandby != null) {
+            oldStandby.stop();
+        }
+    }
+
+    private void manage(final T connection) {
+        connection.setReceiveFilter(message -> onMessage(connection, message));
+
+        connection.addStateListener((oldState, newState) -> {
+            // the listener runs under the connection state lock
+            if (newState == ConnectionState.CONNECTED) {
+                execute(() -> onConnected(connection));
+            } else if (newState == ConnectionState.RECONNECTING || newState == ConnectionState.DISCONNECTED) {
+                execute(() -> onConnectionLost(connection));
+            }
+        });
+    }
+
+    private boolean onMessage(T connection, JsonElement message) {
+        if (message.isJsonObject() && message.getAsJsonObject().has("I")) {
+            // invocation results belong to the connection that made the call
+            return true;
+        }
+
+        boolean dispatch;
+
+        synchronized (sync) {
+            if (connection == primary) {
+                boolean track = standby != null && standby.getState() == ConnectionState.CONNECTED;
+                dispatch = buffer.onPrimaryMessage(message, track);
+            } else if (connection == standby) {
+                buffer.onStandbyMessage(message, connection.getState() == ConnectionState.CONNECTED);
+                return false;
+            } else {
+                // a former primary that is being stopped
+                return false;
+            }
+        }
+
+        if (dispatch) {
+            dispatchMissedMessages();
+        }
+
+        return dispatch;
+    }
+
+    private void onConnected(T connection) {
+        updateConnected(connection);
+        dispatchMissedMessages();
+        completeStart();
+    }
+
+    private void updateConnected(T connection) {
+        synchronized (sync) {
+            if (!started) {
+                return;
+            }
+
+            if (connection == standby && (primary == null || primary.getState() != ConnectionState.CONNECTED)) {
+                // the primary was lost while the standby was connecting
+                promote();
+            }
+        }
+    }
+
+    private void onConnectionLost(T connection) {
+        boolean restartStandby = updateConnectionLost(connection);
+        dispatchMissedMessages();
+        completeStart();
+
+        if (restartStandby) {
+            SharedTimer.schedule(() -> execute(this::startStandby), standbyRestartDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Handles a lost connection
+     *
+     * @return True if a new standby must be started
+     */
+    private boolean updateConnectionLost(T connection) {
+        boolean restartStandby = false;
+
+        synchronized (sync) {
+            if (!started) {
+                return false;
+            }
+
+            if (connection == primary) {
+                if (standby != null && standby.getState() == ConnectionState.CONNECTED) {
+                    promote();
+                } else if (connection.getState() == ConnectionState.DISCONNECTED) {
+                    // the primary won't recover on its own, so the next
+                    // connection to connect becomes the primary
+                    primary = null;
+                    restartStandby = standby == null;
+                }
+            } else if (connection == standby && connection.getState() == ConnectionState.DISCONNECTED) {
+                standby = null;
+                restartStandby = true;
+            }
+        }
+
+        return restartStandby;
+    }
+
+    /**
+     * Promotes the standby. Must be called holding the lock. The missed
+     * messages are queued and dispatched once the lock is released, by
+     * dispatchMissedMessages, before any new message of the new primary
+     */
+    private void promote() {
+        T formerPrimary = primary;
+        T promoted = standby;
+
+        primary = promoted;
+        standby = null;
+
+        failoverCount.incrementAndGet();
+
+        List<JsonElement> missed = buffer.promote();
+        promoted.log("Promoted to primary, dispatching " + missed.size() + " missed messages", LogLevel.INFORMATION);
+
+        for (JsonElement message : missed) {
+            pendingMissedMessages.incrementAndGet();
+            missedMessages.add(() -> promoted.dispatchReceived(message));
+        }
+
+        if (formerPrimary != null) {
+            execute(formerPrimary::stop);
+        }
+
+        if (onPromoted != null) {
+            execute(() -> {
+                try {
+                    onPromoted.run(promoted);
+                } catch (Exception e) {
+                    promoted.onError(e, false);
+                }
+            });
+        }
+
+        execute(this::startStandby);
+    }
+
+    /**
+     * Dispatches the messages queued by a promotion. Must be called without
+     * holding the lock
+     */
+    private void dispatchMissedMessages() {
+        if (pendingMissedMessages.get() == 0) {
+            return;
+        }
+
+        // the count drops to zero only once the last message was handled, so
+        // a new message waits here for a concurrent dispatch to finish
+        synchronized (dispatchSync) {
+            Runnable dispatch;
+            while ((dispatch = missedMessages.poll()) != null) {
+                try {
+                    dispatch.run();
+                } finally {
+                    pendingMissedMessages.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void startStandby() {
+        T connection;
+
+        synchronized (sync) {
+            if (!started || standby != null) {
+                return;
+            }
+
+            connection = connectionFactory.get();
+            standby = connection;
+            buffer.resetStandby();
+        }
+
+        manage(connection);
+        connection.start(transportFactory.get());
+    }
+
+    /**
+     * Completes the start once a primary is connected. Must be called
+     * without holding the lock, as it runs the handlers of the start future
+     */
+    private void completeStart() {
+        SignalRFuture<Void> future;
+
+        synchronized (sync) {
+            if (!started || primary == null || primary.getState() != ConnectionState.CONNECTED) {
+                return;
+            }
+
+            future = startFuture;
+        }
+
+        // the state handlers run one at a time on the executor, so the
+        // future is only completed once
+        if (!future.isDone()) {
+            future.setResult(null);
+        }
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // stopped
+        }
+    }
+}
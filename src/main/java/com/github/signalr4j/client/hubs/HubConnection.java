@@ -7,23 +7,51 @@ See License.txt in the project root for license information.
 package com.github.signalr4j.client.hubs;
 
 import com.github.signalr4j.client.*;
+import com.github.signalr4j.client.metrics.Histogram;
+import com.github.signalr4j.client.metrics.HistogramSnapshot;
+import com.github.signalr4j.client.metrics.NullMetrics;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * Represents a SignalRConnection that implements the Hubs protocol
  */
 public class HubConnection extends Connection {
 
-    private final Map<String, Action<HubResult>> callbacks = Collections.synchronizedMap(new HashMap<>());
+    /**
+     * Maximum number of invocations queued by an in-flight limit, unless
+     * another maximum is given
+     */
+    public static final int DEFAULT_MAX_QUEUED_INVOCATIONS = 1000;
+
+    private final Map<String, PendingInvocation> callbacks = new ConcurrentHashMap<>();
+
+    private final Map<String, Map<String, Histogram>> invocationLatencies = new ConcurrentHashMap<>();
     private final Map<String, HubProxy> hubs = Collections.synchronizedMap(new HashMap<>());
-    private Integer callbackId = 0;
+    private final AtomicInteger callbackId = new AtomicInteger();
+    private final AtomicLong timedOutInvocations = new AtomicLong();
+    private volatile long invocationTimeout = InvocationOptions.NO_TIMEOUT;
+    private volatile InvocationWindow invocationWindow;
+    private final Deque<PendingInvocation> replayBuffer = new ArrayDeque<>();
+    private final Object replayLock = new Object();
+    private int replayBufferSize = 0;
+    private boolean replaying = false;
 
     /**
      * Initializes the connection
@@ -64,8 +92,8 @@ public class HubConnection extends Connection {
     }
 
     @Override
-    public void onReceived(JsonElement message) {
-        super.onReceived(message);
+    protected void dispatchReceived(JsonElement message) {
+        super.dispatchReceived(message);
 
         log("Processing message", LogLevel.INFORMATION);
         if (getState() == ConnectionState.CONNECTED) {
@@ -73,20 +101,34 @@ public class HubConnection extends Connection {
                 log("Getting HubResult from message", LogLevel.VERBOSE);
                 HubResult result = gson.fromJson(message, HubResult.class);
 
+                if (result.getProgressUpdate() != null) {
+                    onProgressReceived(result.getProgressUpdate());
+                    return;
+                }
+
                 String id = result.getId().toLowerCase(Locale.getDefault());
                 log("Result Id: " + id, LogLevel.VERBOSE);
                 log("Result Data: " + result.getResult(), LogLevel.VERBOSE);
 
-                if (callbacks.containsKey(id)) {
-                    log("Get and remove callback with id: " + id, LogLevel.VERBOSE);
-                    Action<HubResult> callback = callbacks.remove(id);
+                log("Get and remove callback with id: " + id, LogLevel.VERBOSE);
+                PendingInvocation invocation = removePending(id);
 
+                if (invocation != null) {
+                    invocation.recordLatency();
+                    boolean measured = NullMetrics.isEnabled(getMetrics());
+                    long handlerStart = measured ? System.nanoTime() : 0;
                     try {
                         log("Execute callback for message", LogLevel.VERBOSE);
-                        callback.run(result);
+                        invocation.complete(result);
                     } catch (Exception e) {
                         onError(e, false);
                     }
+
+                    if (measured) {
+                        getMetrics().handled(System.nanoTime() - handlerStart);
+                    }
+                } else {
+                    log("No pending invocation for id: " + id, LogLevel.VERBOSE);
                 }
             } else {
                 HubInvocation invocation = gson.fromJson(message, HubInvocation.class);
@@ -101,23 +143,58 @@ public class HubConnection extends Connection {
                         for (String key : invocation.getState().keySet()) {
                             JsonElement value = invocation.getState().get(key);
                             log("Setting state for hub: " + key + " -> " + value, LogLevel.VERBOSE);
-                            hubProxy.setState(key, value);
+                            hubProxy.setServerState(key, value);
                         }
                     }
 
                     String eventName = invocation.getMethod().toLowerCase(Locale.getDefault());
                     log("Invoking event: " + eventName + " with arguments " + arrayToString(invocation.getArgs()), LogLevel.VERBOSE);
     
+                    boolean measured = NullMetrics.isEnabled(getMetrics());
+                    long handlerStart = measured ? System.nanoTime() : 0;
                     try {
                         hubProxy.invokeEvent(eventName, invocation.getArgs());
                     } catch (Exception e) {
                         onError(e, false);
                     }
+
+                    if (measured) {
+                        getMetrics().handled(System.nanoTime() - handlerStart);
+                    }
                 }
             }
         }
     }
 
+    private void onProgressReceived(HubProgressUpdate update) {
+        String id = update.getId();
+        log("Progress for invocation: " + id, LogLevel.VERBOSE);
+
+        // progress messages leave the invocation pending
+        PendingInvocation invocation = id == null ? null : callbacks.get(id);
+
+        if (invocation != null) {
+            // the server is still working on it, so the timeout starts over
+            if (invocation.getTimeout() > 0) {
+                scheduleTimeout(invocation, invocation.getTimeout());
+            }
+
+            boolean measured = NullMetrics.isEnabled(getMetrics());
+            long handlerStart = measured ? System.nanoTime() : 0;
+            try {
+                invocation.progress(update.getData());
+            } catch (Exception e) {
+                onError(e, false);
+            }
+
+            if (measured) {
+                getMetrics().handled(System.nanoTime() - handlerStart);
+            }
+        } else {
+            log("No pending invocation for progress id: " + id, LogLevel.VERBOSE);
+        }
+    }
+
     private static String arrayToString(JsonElement[] args) {
         StringBuilder sb = new StringBuilder();
 
@@ -154,32 +231,249 @@ public class HubConnection extends Connection {
 
     @Override
     protected void onClosed() {
+        resetAcknowledgedState();
         clearInvocationCallbacks("Connection closed");
         super.onClosed();
     }
 
+    private void resetAcknowledgedState() {
+        synchronized (hubs) {
+            for (HubProxy proxy : hubs.values()) {
+                proxy.resetAcknowledgedState();
+            }
+        }
+    }
+
     private void clearInvocationCallbacks(String error) {
         log("Clearing invocation callbacks: " + error, LogLevel.VERBOSE);
         HubResult result = new HubResult();
         result.setError(error);
 
-        for (String key : callbacks.keySet()) {
-            try {
-                log("Invoking callback with empty result: " + key, LogLevel.VERBOSE);
-                callbacks.get(key).run(result);
-            } catch (Exception ignored) {
-            }
+        synchronized (replayLock) {
+            replayBuffer.clear();
+            replaying = false;
         }
 
-        callbacks.clear();
+        List<String> ids = new ArrayList<>(callbacks.keySet());
+        for (String id : ids) {
+            PendingInvocation invocation = removePending(id);
+            if (invocation != null) {
+                try {
+                    log("Invoking callback with empty result: " + id, LogLevel.VERBOSE);
+                    invocation.complete(result);
+                } catch (Exception ignored) {
+                }
+            }
+        }
     }
 
     @Override
     protected void onReconnecting() {
-        clearInvocationCallbacks("Reconnecting");
+        resetAcknowledgedState();
+
+        if (getReplayBufferSize() > 0) {
+            holdInvocationsForReplay();
+        } else {
+            clearInvocationCallbacks("Reconnecting");
+        }
         super.onReconnecting();
     }
 
+    @Override
+    protected void onReconnected() {
+        super.onReconnected();
+        replayInvocations();
+    }
+
+    /**
+     * Keeps the retryable invocations that were sent but not answered, so
+     * they are sent again once reconnected. The rest of the sent invocations
+     * fail, as it is unknown if the server executed them
+     */
+    private void holdInvocationsForReplay() {
+        log("Holding invocations for replay", LogLevel.VERBOSE);
+        HubResult result = new HubResult();
+        result.setError("Reconnecting");
+
+        List<PendingInvocation> pending = new ArrayList<>(callbacks.values());
+        pending.sort(Comparator.comparingInt(invocation -> Integer.parseInt(invocation.getId())));
+
+        List<PendingInvocation> failed = new ArrayList<>();
+        List<PendingInvocation> held = new ArrayList<>();
+
+        synchronized (replayLock) {
+            for (PendingInvocation invocation : pending) {
+                if (invocation.isBuffered()) {
+                    continue;
+                }
+
+                // the payload is only kept if replay was enabled when sent
+                if (invocation.isRetryable() && invocation.getReplayPayload() != null && held.size() + replayBuffer.size() < replayBufferSize) {
+                    invocation.setBuffered(true);
+                    held.add(invocation);
+                } else {
+                    failed.add(invocation);
+                }
+            }
+
+            // the invocations that were already sent go before the ones issued
+            // while reconnecting
+            for (int i = held.size() - 1; i >= 0; i--) {
+                replayBuffer.addFirst(held.get(i));
+            }
+        }
+
+        for (PendingInvocation invocation : failed) {
+            if (removePending(invocation.getId()) != null) {
+                try {
+                    log("Invoking callback with empty result: " + invocation.getId(), LogLevel.VERBOSE);
+                    invocation.complete(result);
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends, in order, the invocations held while reconnecting
+     */
+    private void replayInvocations() {
+        synchronized (replayLock) {
+            if (replayBuffer.isEmpty()) {
+                return;
+            }
+
+            log("Replaying " + replayBuffer.size() + " invocations", LogLevel.INFORMATION);
+            replaying = true;
+        }
+
+        while (true) {
+            PendingInvocation invocation;
+
+            synchronized (replayLock) {
+                invocation = replayBuffer.poll();
+
+                if (invocation == null) {
+                    replaying = false;
+                    return;
+                }
+
+                invocation.setBuffered(false);
+            }
+
+            String payload = invocation.getReplayPayload().get();
+            if (!invocation.isRetryable()) {
+                // it fails instead of being held again
+                invocation.setReplayPayload(null);
+            }
+
+            SignalRFuture<Void> heldFuture = invocation.takeHeldSendFuture();
+            if (callbacks.containsKey(invocation.getId())) {
+                SignalRFuture<Void> future = sendPendingInvocation(invocation, payload);
+
+                if (heldFuture != null) {
+                    FutureHelper.copyHandlers(future, heldFuture);
+                    future.done(result -> heldFuture.setResult(null));
+                }
+            } else if (heldFuture != null) {
+                heldFuture.cancel();
+            }
+        }
+    }
+
+    /**
+     * Returns the maximum number of invocations held while reconnecting
+     */
+    public int getReplayBufferSize() {
+        synchronized (replayLock) {
+            return replayBufferSize;
+        }
+    }
+
+    /**
+     * Sets the maximum number of invocations held while reconnecting. Held
+     * invocations are sent in order once the connection is reconnected. Sent
+     * invocations without a result are only held if they are retryable,
+     * otherwise they fail as the server might have executed them
+     * 
+     * @param replayBufferSize
+     *            The buffer size, or zero to fail every pending invocation
+     *            when the connection starts reconnecting
+     */
+    public void setReplayBufferSize(int replayBufferSize) {
+        if (replayBufferSize < 0) {
+            throw new IllegalArgumentException("replayBufferSize cannot be negative");
+        }
+
+        synchronized (replayLock) {
+            this.replayBufferSize = replayBufferSize;
+        }
+    }
+
+    /**
+     * Sends a registered invocation, or holds it if the connection is
+     * reconnecting
+     * 
+     * @param invocation
+     *            The invocation, as returned by registerCallback
+     * @param payload
+     *            The serialized invocation
+     * @param replayPayload
+     *            Serializes the invocation again when it is replayed, or null
+     *            to replay the payload as it is
+     * @return A Future for the send operation. For a held invocation, it
+     *         completes once the invocation is replayed
+     */
+    SignalRFuture<Void> sendInvocation(PendingInvocation invocation, String payload, Supplier<String> replayPayload) {
+        if (replayPayload == null) {
+            replayPayload = () -> payload;
+        }
+
+        synchronized (replayLock) {
+            if (replayBufferSize > 0 && (getState() == ConnectionState.RECONNECTING || replaying)) {
+                SignalRFuture<Void> future = new SignalRFuture<>();
+
+                if (replayBuffer.size() >= replayBufferSize) {
+                    log("Replay buffer is full, failing invocation: " + invocation.getId(), LogLevel.INFORMATION);
+                    InvalidStateException error = new InvalidStateException(ConnectionState.RECONNECTING);
+                    if (removeCallback(invocation.getId())) {
+                        invocation.fail(error);
+                    }
+
+                    future.triggerError(error);
+                } else {
+                    log("Holding invocation while reconnecting: " + invocation.getId(), LogLevel.VERBOSE);
+                    invocation.setReplayPayload(replayPayload);
+                    invocation.setHeldSendFuture(future);
+                    invocation.setBuffered(true);
+                    replayBuffer.add(invocation);
+                }
+
+                return future;
+            }
+
+            // a sent invocation is only held again if it is retryable
+            if (replayBufferSize > 0 && invocation.isRetryable()) {
+                invocation.setReplayPayload(replayPayload);
+            }
+        }
+
+        return sendPendingInvocation(invocation, payload);
+    }
+
+    private SignalRFuture<Void> sendPendingInvocation(final PendingInvocation invocation, String payload) {
+        SignalRFuture<Void> future = send(payload);
+
+        // if the invocation could not be sent, no result will ever arrive
+        future.onError(error -> {
+            if (removeCallback(invocation.getId())) {
+                invocation.fail(error);
+            }
+        });
+
+        return future;
+    }
+
     /**
      * Creates a proxy for a hub
      * 
@@ -187,46 +481,219 @@ public class HubConnection extends Connection {
      *            The hub name
      * @return The proxy for the hub
      * @throws InvalidStateException
-     *             If called when not disconnected, the method will throw an
-     *             exception
+     *             If a new proxy is requested when not disconnected, the
+     *             method will throw an exception
      */
     public HubProxy createHubProxy(String hubName) {
-        if (state != ConnectionState.DISCONNECTED) {
-            throw new InvalidStateException(state);
-        }
-
         if (hubName == null) {
             throw new IllegalArgumentException("hubName cannot be null");
         }
 
         String hubNameLower = hubName.toLowerCase(Locale.getDefault());
 
-        log("Creating hub proxy: " + hubNameLower, LogLevel.INFORMATION);
+        // existing proxies can be looked up in any state, e.g. after a
+        // standby connection was promoted
+        HubProxy proxy = hubs.get(hubNameLower);
+        if (proxy != null) {
+            return proxy;
+        }
 
-        HubProxy proxy;
-        if (hubs.containsKey(hubNameLower)) {
-            proxy = hubs.get(hubNameLower);
-        } else {
-            proxy = new HubProxy(this, hubName, getLogger());
-            hubs.put(hubNameLower, proxy);
+        if (state != ConnectionState.DISCONNECTED) {
+            throw new InvalidStateException(state);
         }
 
+        log("Creating hub proxy: " + hubNameLower, LogLevel.INFORMATION);
+
+        proxy = new HubProxy(this, hubName, getLogger());
+        hubs.put(hubNameLower, proxy);
+
         return proxy;
     }
 
+    /**
+     * Returns the default invocation timeout, in milliseconds
+     */
+    public long getInvocationTimeout() {
+        return invocationTimeout;
+    }
+
+    /**
+     * Sets the default timeout for hub invocations. Invocations that are not
+     * answered in time are removed from the pending table and fail with an
+     * InvocationTimeoutException. Each progress update of an invocation
+     * restarts its timeout. The error callbacks of the timed out invocations
+     * run on a library thread
+     * 
+     * @param invocationTimeout
+     *            The timeout in milliseconds, or InvocationOptions.NO_TIMEOUT
+     *            to wait forever
+     */
+    public void setInvocationTimeout(long invocationTimeout) {
+        if (invocationTimeout < 0) {
+            throw new IllegalArgumentException("invocationTimeout cannot be negative");
+        }
+
+        this.invocationTimeout = invocationTimeout;
+    }
+
+    /**
+     * Limits the number of invocations waiting for a result on this
+     * connection. Invocations that exceed the limit are handled according to
+     * the policy. With the QUEUE policy, at most
+     * DEFAULT_MAX_QUEUED_INVOCATIONS invocations are queued
+     * 
+     * @param maxInFlight
+     *            The maximum number of in-flight invocations, or zero to remove
+     *            the limit
+     * @param policy
+     *            What to do with the invocations that exceed the limit
+     */
+    public void setMaxInFlightInvocations(int maxInFlight, InvocationAdmissionPolicy policy) {
+        setMaxInFlightInvocations(maxInFlight, policy, DEFAULT_MAX_QUEUED_INVOCATIONS);
+    }
+
+    /**
+     * Limits the number of invocations waiting for a result on this
+     * connection. Invocations that exceed the limit are handled according to
+     * the policy
+     * 
+     * @param maxInFlight
+     *            The maximum number of in-flight invocations, or zero to remove
+     *            the limit
+     * @param policy
+     *            What to do with the invocations that exceed the limit
+     * @param maxQueued
+     *            The maximum number of invocations queued by the QUEUE policy.
+     *            The invocations that do not fit fail with an
+     *            InvocationRejectedException
+     */
+    public void setMaxInFlightInvocations(int maxInFlight, InvocationAdmissionPolicy policy, int maxQueued) {
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("maxInFlight cannot be negative");
+        }
+
+        invocationWindow = maxInFlight == 0 ? null : new InvocationWindow(maxInFlight, policy, maxQueued);
+    }
+
+    /**
+     * Returns the number of invocations waiting to be admitted by the
+     * connection in-flight limit
+     */
+    public int getQueuedInvocationCount() {
+        InvocationWindow window = invocationWindow;
+        return window == null ? 0 : window.getQueuedCount();
+    }
+
+    InvocationWindow getInvocationWindow() {
+        return invocationWindow;
+    }
+
+    /**
+     * Returns the number of invocations waiting for a server result
+     */
+    public int getPendingInvocationCount() {
+        return callbacks.size();
+    }
+
+    /**
+     * Returns the number of invocations that failed because they timed out
+     */
+    public long getTimedOutInvocationCount() {
+        return timedOutInvocations.get();
+    }
+
+    /**
+     * Returns the round trip times of the invocations of a hub method that
+     * got a server result, in nanoseconds
+     * 
+     * @param hub
+     *            The hub name, as passed to createHubProxy
+     * @param method
+     *            The method name, as passed to invoke
+     * @return The latencies, or null if the method was never invoked
+     */
+    public HistogramSnapshot getInvocationLatency(String hub, String method) {
+        Map<String, Histogram> methods = invocationLatencies.get(hub);
+        Histogram histogram = methods == null ? null : methods.get(method);
+
+        return histogram == null ? null : histogram.snapshot();
+    }
+
+    /**
+     * Returns the round trip times of all the invoked hub methods, in
+     * nanoseconds, keyed by "hub.method"
+     */
+    public Map<String, HistogramSnapshot> getInvocationLatencies() {
+        Map<String, HistogramSnapshot> latencies = new HashMap<>();
+        for (Map.Entry<String, Map<String, Histogram>> hub : invocationLatencies.entrySet()) {
+            for (Map.Entry<String, Histogram> method : hub.getValue().entrySet()) {
+                latencies.put(hub.getKey() + "." + method.getKey(), method.getValue().snapshot());
+            }
+        }
+
+        return latencies;
+    }
+
+    /**
+     * Clears the recorded invocation round trip times
+     */
+    public void resetInvocationLatencies() {
+        for (Map<String, Histogram> methods : invocationLatencies.values()) {
+            for (Histogram histogram : methods.values()) {
+                histogram.reset();
+            }
+        }
+    }
+
     /**
      * Registers a callback
      * 
+     * @param hub
+     *            The hub of the invoked method
+     * @param method
+     *            The invoked method, used for diagnostics
+     * @param timeout
+     *            The invocation timeout in milliseconds, or
+     *            InvocationOptions.DEFAULT_TIMEOUT to use the connection
+     *            default
+     * @param invokeTime
+     *            The System.nanoTime() of the invoke call, from which the
+     *            timeout runs
      * @param callback
-     *            The callback to register
-     * @return The callback Id
+     *            The callback to invoke with the server result
+     * @param errorCallback
+     *            The callback to invoke if the invocation times out
+     * @param onRemoved
+     *            Invoked once the callback leaves the pending table, for any
+     *            reason
+     * @return The registered invocation
      */
-    String registerCallback(Action<HubResult> callback) {
-        String id = callbackId.toString().toLowerCase(Locale.getDefault());
+    PendingInvocation registerCallback(String hub, String method, long timeout, long invokeTime, Action<HubResult> callback, ErrorCallback errorCallback,
+            Runnable onRemoved) {
+        final String id = Integer.toString(callbackId.getAndIncrement());
         log("Registering callback: " + id, LogLevel.VERBOSE);
-        callbacks.put(id, callback);
-        callbackId++;
-        return id;
+
+        Histogram latency = getLatencyHistogram(hub, method);
+        PendingInvocation invocation = new PendingInvocation(id, method, latency, callback, errorCallback, onRemoved);
+        callbacks.put(id, invocation);
+        getMetrics().pendingInvocations(callbacks.size());
+
+        long effectiveTimeout = resolveInvocationTimeout(timeout);
+        invocation.setTimeout(effectiveTimeout);
+        if (effectiveTimeout > 0) {
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - invokeTime);
+            scheduleTimeout(invocation, Math.max(1, effectiveTimeout - elapsed));
+        }
+
+        return invocation;
+    }
+
+    private void scheduleTimeout(PendingInvocation invocation, long delay) {
+        final String id = invocation.getId();
+        final long timeout = invocation.getTimeout();
+
+        // the error callbacks are user code, which must not run on the timer
+        invocation.setTimeoutTask(SharedTimer.schedule(() -> SharedTimer.execute(() -> onInvocationTimeout(id, timeout)), delay, TimeUnit.MILLISECONDS));
     }
 
     /**
@@ -234,10 +701,76 @@ public class HubConnection extends Connection {
      * 
      * @param callbackId
      *            Id for the callback to remove
+     * @return True if the callback was still pending
      */
-    void removeCallback(String callbackId) {
+    boolean removeCallback(String callbackId) {
         log("Removing callback: " + callbackId, LogLevel.VERBOSE);
-        callbacks.remove(callbackId.toLowerCase(Locale.getDefault()));
+        PendingInvocation invocation = removePending(callbackId.toLowerCase(Locale.getDefault()));
+
+        if (invocation != null) {
+            invocation.dispose();
+            return true;
+        }
+
+        return false;
+    }
+
+    private Histogram getLatencyHistogram(String hub, String method) {
+        // plain lookups first, computeIfAbsent locks even when the key exists
+        Map<String, Histogram> methods = invocationLatencies.get(hub);
+        if (methods == null) {
+            methods = invocationLatencies.computeIfAbsent(hub, key -> new ConcurrentHashMap<>());
+        }
+
+        Histogram histogram = methods.get(method);
+        if (histogram == null) {
+            histogram = methods.computeIfAbsent(method, key -> new Histogram());
+        }
+
+        return histogram;
+    }
+
+    private PendingInvocation removePending(String id) {
+        PendingInvocation invocation = callbacks.remove(id);
+        if (invocation != null) {
+            getMetrics().pendingInvocations(callbacks.size());
+        }
+
+        return invocation;
+    }
+
+    /**
+     * Returns the timeout of an invocation, in milliseconds
+     * 
+     * @param timeout
+     *            The timeout of the invocation options
+     * @return The timeout, or InvocationOptions.NO_TIMEOUT
+     */
+    long resolveInvocationTimeout(long timeout) {
+        return timeout == InvocationOptions.DEFAULT_TIMEOUT ? invocationTimeout : timeout;
+    }
+
+    /**
+     * Counts an invocation that timed out before being admitted by the
+     * in-flight limits
+     */
+    void onQueuedInvocationTimeout(String method) {
+        timedOutInvocations.incrementAndGet();
+        log("Queued invocation timed out: " + method, LogLevel.INFORMATION);
+    }
+
+    private void onInvocationTimeout(String id, long timeout) {
+        PendingInvocation invocation = removePending(id);
+
+        if (invocation != null) {
+            timedOutInvocations.incrementAndGet();
+            log("Invocation timed out: " + id, LogLevel.INFORMATION);
+            try {
+                invocation.fail(new InvocationTimeoutException(invocation.getMethod(), timeout));
+            } catch (Exception e) {
+                onError(e, false);
+            }
+        }
     }
 
     /**
@@ -0,0 +1,306 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.hubs;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes hub invocations straight to their wire representation, without
+ * building intermediate JSON trees. The output is the same as serializing a
+ * HubInvocation with the same Gson instance
+ */
+public class HubInvocationEncoder {
+
+    private static final Type STATE_TYPE = new TypeToken<Map<String, JsonElement>>() {
+    }.getType();
+
+    /**
+     * Buffers bigger than this are not kept for reuse, so that a single huge
+     * invocation does not pin its memory for the lifetime of the thread
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<BufferWriter> buffers = ThreadLocal.withInitial(BufferWriter::new);
+
+    private final String hub;
+
+    private volatile SegmentCache segments = new SegmentCache(null);
+
+    /**
+     * Initializes the encoder
+     *
+     * @param hub
+     *            Name of the hub the invocations target
+     */
+    public HubInvocationEncoder(String hub) {
+        if (hub == null) {
+            throw new IllegalArgumentException("hub cannot be null");
+        }
+
+        this.hub = hub;
+    }
+
+    /**
+     * Encodes the arguments of an invocation as a JSON array
+     *
+     * @param gson
+     *            Gson instance used to serialize the arguments
+     * @param args
+     *            Invocation arguments
+     * @return The JSON array
+     */
+    public String encodeArguments(Gson gson, Object[] args) {
+        if (gson == null) {
+            throw new IllegalArgumentException("gson cannot be null");
+        }
+
+        if (args == null) {
+            throw new IllegalArgumentException("args cannot be null");
+        }
+
+        BufferWriter buffer = acquireBuffer();
+        try {
+            JsonWriter writer = gson.newJsonWriter(buffer);
+            writer.beginArray();
+            for (Object arg : args) {
+                if (arg == null) {
+                    writer.nullValue();
+                } else {
+                    gson.toJson(arg, arg.getClass(), writer);
+                }
+            }
+            writer.endArray();
+            writer.flush();
+
+            return buffer.toString();
+        } catch (IOException e) {
+            // the buffer never throws
+            throw new IllegalStateException(e);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Encodes an invocation
+     *
+     * @param gson
+     *            Gson instance used to serialize the state
+     * @param callbackId
+     *            Invocation callback id
+     * @param method
+     *            Hub method name
+     * @param encodedArguments
+     *            Arguments, as returned by encodeArguments
+     * @param state
+     *            Hub state to send with the invocation, or null
+     * @return The serialized invocation
+     */
+    public String encodeInvocation(Gson gson, String callbackId, String method, String encodedArguments, Map<String, JsonElement> state) {
+        if (gson == null) {
+            throw new IllegalArgumentException("gson cannot be null");
+        }
+
+        if (callbackId == null) {
+            throw new IllegalArgumentException("callbackId cannot be null");
+        }
+
+        if (method == null) {
+            throw new IllegalArgumentException("method cannot be null");
+        }
+
+        if (encodedArguments == null) {
+            throw new IllegalArgumentException("encodedArguments cannot be null");
+        }
+
+        BufferWriter buffer = acquireBuffer();
+        try {
+            StringBuilder builder = buffer.getBuilder();
+            builder.append("{\"I\":");
+            appendString(gson, builder, callbackId);
+            builder.append(getSegment(gson, method));
+            builder.append(encodedArguments);
+
+            if (state != null) {
+                builder.append(",\"S\":");
+                JsonWriter writer = gson.newJsonWriter(buffer);
+                gson.toJson(state, STATE_TYPE, writer);
+                writer.flush();
+            } else if (gson.serializeNulls()) {
+                // the HubInvocation field is written as null
+                builder.append(",\"S\":null");
+            }
+
+            builder.append('}');
+
+            return builder.toString();
+        } catch (IOException e) {
+            // the buffer never throws
+            throw new IllegalStateException(e);
+        } finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Returns the pre-escaped part of the invocation that only depends on the
+     * hub and the method: ,"H":"hub","M":"method","A":
+     */
+    private String getSegment(Gson gson, String method) {
+        // escaping depends on the Gson configuration, so the cached segments
+        // are only valid for the instance that created them
+        SegmentCache cache = segments;
+        if (cache.gson != gson) {
+            cache = new SegmentCache(gson);
+            segments = cache;
+        }
+
+        String segment = cache.segments.get(method);
+        if (segment == null) {
+            StringBuilder builder = new StringBuilder();
+            builder.append(",\"H\":");
+            appendString(gson, builder, hub);
+            builder.append(",\"M\":");
+            appendString(gson, builder, method);
+            builder.append(",\"A\":");
+
+            segment = builder.toString();
+            cache.segments.put(method, segment);
+        }
+
+        return segment;
+    }
+
+    private static void appendString(Gson gson, StringBuilder builder, String value) {
+        if (isPlain(value)) {
+            builder.append('"').append(value).append('"');
+        } else {
+            builder.append(gson.toJson(value));
+        }
+    }
+
+    /**
+     * Checks whether a string can be written without escaping, whatever the
+     * Gson configuration is
+     */
+    private static boolean isPlain(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c >= 0x7f || c == '"' || c == '\\' || c == '<' || c == '>' || c == '&' || c == '=' || c == '\'') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static BufferWriter acquireBuffer() {
+        BufferWriter buffer = buffers.get();
+        if (buffer.inUse) {
+            // re-entrant call (e.g. from a custom serializer), use a
+            // throwaway buffer
+            return new BufferWriter();
+        }
+
+        buffer.inUse = true;
+        return buffer;
+    }
+
+    private static void releaseBuffer(BufferWriter buffer) {
+        if (!buffer.inUse) {
+            // throwaway buffer
+            return;
+        }
+
+        buffer.inUse = false;
+        if (buffer.getBuilder().capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            buffers.remove();
+        } else {
+            buffer.getBuilder().setLength(0);
+        }
+    }
+
+    private static class SegmentCache {
+
+        private final Gson gson;
+
+        private final Map<String, String> segments = new ConcurrentHashMap<>();
+
+        SegmentCache(Gson gson) {
+            this.gson = gson;
+        }
+    }
+
+    /**
+     * Unsynchronized Writer over a StringBuilder
+     */
+    private static class BufferWriter extends Writer {
+
+        private final StringBuilder builder = new StringBuilder(256);
+
+        private boolean inUse = false;
+
+        StringBuilder getBuilder() {
+            return builder;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            builder.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(int c) {
+            builder.append((char) c);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            builder.append(str, off, off + len);
+        }
+
+        @Override
+        public Writer append(CharSequence csq) {
+            builder.append(csq);
+            return this;
+        }
+
+        @Override
+        public Writer append(CharSequence csq, int start, int end) {
+            builder.append(csq, start, end);
+            return this;
+        }
+
+        @Override
+        public Writer append(char c) {
+            builder.append(c);
+            return this;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.hubs;
+
+import com.google.gson.JsonElement;
+import com.google.gson.annotations.SerializedName;
+
+import java.util.Locale;
+
+/**
+ * Represents a partial result sent by a hub method while it runs
+ */
+public class HubProgressUpdate {
+    @SerializedName("I")
+    private String id;
+
+    @SerializedName("D")
+    private JsonElement data;
+
+    public String getId() {
+        return id == null ? null : id.toLowerCase(Locale.getDefault());
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public JsonElement getData() {
+        return data;
+    }
+
+    public void setData(JsonElement data) {
+        this.data = data;
+    }
+}
@@ -6,14 +6,21 @@ See License.txt in the project root for license information.
 
 package com.github.signalr4j.client.hubs;
 
+import com.github.signalr4j.client.Action;
 import com.github.signalr4j.client.LogLevel;
 import com.github.signalr4j.client.Logger;
+import com.github.signalr4j.client.SharedTimer;
 import com.github.signalr4j.client.SignalRFuture;
 import com.google.gson.JsonElement;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 /**
  * Proxy for hub operations
@@ -28,6 +35,16 @@ public class HubProxy {
 
     private final Map<String, JsonElement> state = Collections.synchronizedMap(new HashMap<>());
 
+    private final Map<String, JsonElement> acknowledgedState = new HashMap<>();
+
+    private volatile boolean stateDeltaEnabled = false;
+
+    private final Map<String, InvocationWindow> invocationWindows = new ConcurrentHashMap<>();
+
+    private final Set<String> retryableMethods = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final HubInvocationEncoder encoder;
+
     private final Logger logger;
 
     private static final List<String> EXCLUDED_METHODS = Arrays.asList("equals", "getClass", "hashCode", "notify",
@@ -45,6 +62,7 @@ public class HubProxy {
         this.connection = connection;
         this.name = name;
         this.logger = logger;
+        this.encoder = new HubInvocationEncoder(name);
     }
 
     /**
@@ -59,6 +77,107 @@ public class HubProxy {
         this.state.put(key, state);
     }
 
+    /**
+     * Sets state received from the server, which the server already knows
+     * about
+     */
+    void setServerState(String key, JsonElement state) {
+        synchronized (this.state) {
+            this.state.put(key, state);
+            acknowledgedState.put(key, state);
+        }
+    }
+
+    /**
+     * Returns true if invocations only carry the state changed since the last
+     * acknowledged invocation
+     */
+    public boolean isStateDeltaEnabled() {
+        return stateDeltaEnabled;
+    }
+
+    /**
+     * Indicates if invocations only carry the state keys changed since the
+     * last invocation the server answered, instead of the whole state.
+     * Invocations are sent without state if nothing changed.
+     * <p>
+     * Stock SignalR hubs rebuild the caller state from every invocation, so
+     * this must only be enabled if the server keeps the state of each
+     * connection between invocations. The acknowledged state is forgotten
+     * whenever the connection reconnects or closes.
+     * 
+     * @param stateDeltaEnabled
+     *            True to only send the changed state
+     */
+    public void setStateDeltaEnabled(boolean stateDeltaEnabled) {
+        synchronized (state) {
+            this.stateDeltaEnabled = stateDeltaEnabled;
+            acknowledgedState.clear();
+        }
+    }
+
+    /**
+     * Forgets the state the server acknowledged
+     */
+    void resetAcknowledgedState() {
+        synchronized (state) {
+            acknowledgedState.clear();
+        }
+    }
+
+    /**
+     * Returns the state to attach to an invocation, or null if there is
+     * nothing to send
+     */
+    private Map<String, JsonElement> getStateToSend() {
+        synchronized (state) {
+            if (state.isEmpty()) {
+                return null;
+            }
+
+            if (!stateDeltaEnabled) {
+                return state;
+            }
+
+            Map<String, JsonElement> delta = null;
+            for (Map.Entry<String, JsonElement> entry : state.entrySet()) {
+                if (!Objects.equals(entry.getValue(), acknowledgedState.get(entry.getKey()))) {
+                    if (delta == null) {
+                        delta = new HashMap<>();
+                    }
+
+                    delta.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            return delta;
+        }
+    }
+
+    /**
+     * Returns a copy of the whole state, or null if there is no state
+     */
+    private Map<String, JsonElement> getFullState() {
+        synchronized (state) {
+            return state.isEmpty() ? null : new HashMap<>(state);
+        }
+    }
+
+    private void acknowledgeState(Map<String, JsonElement> sentState) {
+        if (sentState == null || !stateDeltaEnabled) {
+            return;
+        }
+
+        synchronized (state) {
+            for (Map.Entry<String, JsonElement> entry : sentState.entrySet()) {
+                // a newer value might have been set since the invocation was sent
+                if (Objects.equals(entry.getValue(), state.get(entry.getKey()))) {
+                    acknowledgedState.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
     /**
      * Gets the state for a key
      * 
@@ -177,6 +296,99 @@ public class HubProxy {
      * @return A Future for the operation, that will return the method result
      */
     public <E> SignalRFuture<E> invoke(final Class<E> resultClass, final String method, Object... args) {
+        return invoke(new InvocationOptions(), resultClass, method, args);
+    }
+
+    /**
+     * Invokes a hub method that returns a value, using specific invocation
+     * options
+     * 
+     * @param options
+     *            Invocation options
+     * @param resultClass
+     *            Class used to deserialize the result, or null to ignore it
+     * @param method
+     *            Method name
+     * @param args
+     *            Method arguments
+     * @return A Future for the operation, that will return the method result
+     */
+    public <E> SignalRFuture<E> invoke(InvocationOptions options, final Class<E> resultClass, final String method, Object... args) {
+        return invokeMethod(options, resultClass, null, null, method, args);
+    }
+
+    /**
+     * Invokes a hub method that reports progress while it runs. Each partial
+     * result is decoded and delivered as soon as it arrives, before the
+     * final result
+     * 
+     * @param resultClass
+     *            Class used to deserialize the result, or null to ignore it
+     * @param progressClass
+     *            Class used to deserialize each progress update
+     * @param onProgress
+     *            Action invoked with each progress update
+     * @param method
+     *            Method name
+     * @param args
+     *            Method arguments
+     * @return A Future for the operation, that will return the method result
+     */
+    public <E, P> SignalRFuture<E> invoke(final Class<E> resultClass, final Class<P> progressClass, final Action<P> onProgress, final String method,
+            Object... args) {
+        return invoke(new InvocationOptions(), resultClass, progressClass, onProgress, method, args);
+    }
+
+    /**
+     * Invokes a hub method that reports progress while it runs, using
+     * specific invocation options
+     * 
+     * @param options
+     *            Invocation options
+     * @param resultClass
+     *            Class used to deserialize the result, or null to ignore it
+     * @param progressClass
+     *            Class used to deserialize each progress update
+     * @param onProgress
+     *            Action invoked with each progress update
+     * @param method
+     *            Method name
+     * @param args
+     *            Method arguments
+     * @return A Future for the operation, that will return the method result
+     */
+    public <E, P> SignalRFuture<E> invoke(InvocationOptions options, final Class<E> resultClass, final Class<P> progressClass, final Action<P> onProgress,
+            final String method, Object... args) {
+        if (progressClass == null) {
+            throw new IllegalArgumentException("progressClass cannot be null");
+        }
+
+        if (onProgress == null) {
+            throw new IllegalArgumentException("onProgress cannot be null");
+        }
+
+        return invokeMethod(options, resultClass, progressClass, onProgress, method, args);
+    }
+
+    /**
+     * Overload of 'invoke' hub method that takes a type instead of class for GSON deserialisation
+     * 
+     * @param method
+     *            Method name
+     * @param args
+     *            Method arguments
+     * @return A Future for the operation, that will return the method result
+     */
+    public <E> SignalRFuture<E> invoke(final Class<E> resultClass, final Type resultType, final String method, Object... args) {
+        return invokeMethod(new InvocationOptions(), resultType, null, null, method, args);
+    }
+
+    private <E, P> SignalRFuture<E> invokeMethod(InvocationOptions options, final Type resultType, final Class<P> progressClass, final Action<P> onProgress,
+            final String method, Object... args) {
+        if (options == null) {
+            throw new IllegalArgumentException("options cannot be null");
+        }
+
         if (method == null) {
             throw new IllegalArgumentException("method cannot be null");
         }
@@ -187,101 +399,172 @@ public class HubProxy {
 
         log("Invoking method on hub: " + method, LogLevel.INFORMATION);
 
-        JsonElement[] jsonArguments = new JsonElement[args.length];
+        // the arguments are serialized right away, as the invocation may be
+        // queued and they could change before it is sent
+        final String encodedArguments = encoder.encodeArguments(connection.getGson(), args);
 
-        for (int i = 0; i < args.length; i++) {
-            jsonArguments[i] = connection.getGson().toJsonTree(args[i]);
+        final SignalRFuture<E> resultFuture = new SignalRFuture<>();
+
+        List<InvocationWindow> windows = new ArrayList<>(2);
+
+        InvocationWindow methodWindow = invocationWindows.get(method.toLowerCase(Locale.getDefault()));
+        if (methodWindow != null) {
+            windows.add(methodWindow);
         }
 
-        final SignalRFuture<E> resultFuture = new SignalRFuture<>();
+        InvocationWindow connectionWindow = connection.getInvocationWindow();
+        if (connectionWindow != null) {
+            windows.add(connectionWindow);
+        }
 
-        final String callbackId = connection.registerCallback(result -> {
-            log("Executing invocation callback for: " + method, LogLevel.INFORMATION);
-            if (result != null) {
-                if (result.getError() != null) {
-                    if (result.isHubException()) {
-                        resultFuture.triggerError(new HubException(result.getError(), result.getErrorData()));
-                    } else {
-                        resultFuture.triggerError(new Exception(result.getError()));
-                    }
-                } else {
-                    boolean errorHappened = false;
-                    E resultObject = null;
-                    try {
-                        if (result.getState() != null) {
-                            for (String key : result.getState().keySet()) {
-                                setState(key, result.getState().get(key));
-                            }
-                        }
+        if (windows.isEmpty()) {
+            try {
+                sendInvocation(options.getTimeout(), System.nanoTime(), options, resultType, progressClass, onProgress, method, encodedArguments, resultFuture, null);
+            } catch (Exception e) {
+                resultFuture.triggerError(e);
+            }
 
-                        if (result.getResult() != null && resultClass != null) {
-                            log("Found result invoking method on hub: " + result.getResult(), LogLevel.INFORMATION);
-                            resultObject = connection.getGson().fromJson(result.getResult(), resultClass);
-                        }
-                    } catch (Exception e) {
-                        errorHappened = true;
-                        resultFuture.triggerError(e);
-                    }
+            return resultFuture;
+        }
 
-                    if (!errorHappened) {
-                        try {
-                            resultFuture.setResult(resultObject);
-                        } catch (Exception e) {
-                            resultFuture.triggerError(e);
-                        }
-                    }
+        // the timeout covers the time spent waiting for the windows
+        final long timeout = connection.resolveInvocationTimeout(options.getTimeout());
+        final Admission admission = new Admission(System.nanoTime());
+
+        if (timeout > 0) {
+            admission.timeoutTask = SharedTimer.schedule(() -> SharedTimer.execute(() -> {
+                if (admission.settled.compareAndSet(false, true)) {
+                    admission.dequeue();
+                    connection.onQueuedInvocationTimeout(method);
+                    resultFuture.triggerError(new InvocationTimeoutException(method, timeout));
                 }
+            }), timeout, TimeUnit.MILLISECONDS);
+        }
+
+        admit(method, windows, 0, resultFuture, admission,
+                release -> sendInvocation(timeout, admission.startTime, options, resultType, progressClass, onProgress, method, encodedArguments, resultFuture,
+                        release));
+
+        return resultFuture;
+    }
+
+    /**
+     * Goes through the in-flight windows that apply to an invocation and sends
+     * it once all of them admitted it
+     */
+    private void admit(final String method, final List<InvocationWindow> windows, final int index, final SignalRFuture<?> resultFuture,
+            final Admission admission, final Action<Runnable> send) {
+        final Runnable release = () -> {
+            for (int i = index - 1; i >= 0; i--) {
+                windows.get(i).release();
+            }
+        };
+
+        if (resultFuture.isCancelled() || resultFuture.errorWasTriggered()) {
+            log("Invocation cancelled or failed before being sent: " + method, LogLevel.VERBOSE);
+            release.run();
+            return;
+        }
+
+        if (index == windows.size()) {
+            if (!admission.settled.compareAndSet(false, true)) {
+                // timed out while waiting
+                release.run();
+                return;
             }
-        });
 
-        HubInvocation hubData = new HubInvocation();
-        hubData.setHub(name);
-        hubData.setMethod(method);
-        hubData.setArgs(jsonArguments);
-        hubData.setCallbackId(callbackId);
+            if (admission.timeoutTask != null) {
+                admission.timeoutTask.cancel(false);
+            }
 
-        if (state.size() != 0) {
-            hubData.setState(state);
+            try {
+                send.run(release);
+            } catch (Exception e) {
+                release.run();
+                resultFuture.triggerError(e);
+            }
+            return;
         }
 
-        final SignalRFuture<Void> sendFuture = connection.send(hubData);
+        InvocationWindow window = windows.get(index);
+        Runnable next = () -> admit(method, windows, index + 1, resultFuture, admission, send);
+        admission.queued(window, next, release);
 
-        resultFuture.onCancelled(() -> connection.removeCallback(callbackId));
+        boolean admitted;
+        try {
+            admitted = window.admit(next);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            admitted = false;
+        }
 
-        resultFuture.onError(sendFuture::triggerError);
+        if (!admitted) {
+            release.run();
 
-        return resultFuture;
+            if (admission.settled.compareAndSet(false, true)) {
+                log("Invocation rejected: " + method, LogLevel.INFORMATION);
+                if (admission.timeoutTask != null) {
+                    admission.timeoutTask.cancel(false);
+                }
+
+                resultFuture.triggerError(new InvocationRejectedException(method));
+            }
+        }
     }
-    
+
     /**
-     * Overload of 'invoke' hub method that takes a type instead of class for GSON deserialisation
-     * 
-     * @param method
-     *            Method name
-     * @param args
-     *            Method arguments
-     * @return A Future for the operation, that will return the method result
+     * Tracks an invocation while it waits for the in-flight windows
      */
-    public <E> SignalRFuture<E> invoke(final Class<E> resultClass, final Type resultType, final String method, Object... args) {
-        if (method == null) {
-            throw new IllegalArgumentException("method cannot be null");
-        }
+    private static class Admission {
 
-        if (args == null) {
-            throw new IllegalArgumentException("args cannot be null");
+        final long startTime;
+
+        /**
+         * Set once the invocation is either sent, rejected or timed out
+         */
+        final AtomicBoolean settled = new AtomicBoolean(false);
+
+        volatile ScheduledFuture<?> timeoutTask;
+
+        private InvocationWindow window;
+
+        private Runnable entry;
+
+        private Runnable release;
+
+        Admission(long startTime) {
+            this.startTime = startTime;
         }
 
-        log("Invoking method on hub: " + method, LogLevel.INFORMATION);
+        synchronized void queued(InvocationWindow window, Runnable entry, Runnable release) {
+            this.window = window;
+            this.entry = entry;
+            this.release = release;
+        }
 
-        JsonElement[] jsonArguments = new JsonElement[args.length];
+        /**
+         * Removes the invocation from the window queue it waits in, releasing
+         * the slots it holds in the previous windows
+         */
+        void dequeue() {
+            Runnable removedRelease = null;
+            synchronized (this) {
+                if (window != null && window.remove(entry)) {
+                    removedRelease = release;
+                }
+            }
 
-        for (int i = 0; i < args.length; i++) {
-            jsonArguments[i] = connection.getGson().toJsonTree(args[i]);
+            if (removedRelease != null) {
+                removedRelease.run();
+            }
         }
+    }
 
-        final SignalRFuture<E> resultFuture = new SignalRFuture<>();
+    private <E, P> void sendInvocation(long timeout, long invokeTime, InvocationOptions options, final Type resultType, final Class<P> progressClass,
+            final Action<P> onProgress, final String method, String encodedArguments, final SignalRFuture<E> resultFuture, Runnable release) {
+        final Map<String, JsonElement> sentState = getStateToSend();
 
-        final String callbackId = connection.registerCallback(result -> {
+        PendingInvocation invocation = connection.registerCallback(name, method, timeout, invokeTime, result -> {
             log("Executing invocation callback for: " + method, LogLevel.INFORMATION);
             if (result != null) {
                 if (result.getError() != null) {
@@ -294,9 +577,11 @@ public class HubProxy {
                     boolean errorHappened = false;
                     E resultObject = null;
                     try {
+                        acknowledgeState(sentState);
+
                         if (result.getState() != null) {
                             for (String key : result.getState().keySet()) {
-                                setState(key, result.getState().get(key));
+                                setServerState(key, result.getState().get(key));
                             }
                         }
 
@@ -318,25 +603,112 @@ public class HubProxy {
                     }
                 }
             }
-        });
+        }, resultFuture::triggerError, release);
 
-        HubInvocation hubData = new HubInvocation();
-        hubData.setHub(name);
-        hubData.setMethod(method);
-        hubData.setArgs(jsonArguments);
-        hubData.setCallbackId(callbackId);
+        final String callbackId = invocation.getId();
 
-        if (state.size() != 0) {
-            hubData.setState(state);
+        if (onProgress != null) {
+            invocation.setProgressCallback(data -> {
+                log("Progress invoking method on hub: " + method, LogLevel.VERBOSE);
+                onProgress.run(connection.getGson().fromJson(data, progressClass));
+            });
         }
+        invocation.setRetryable(options.isRetryable() || retryableMethods.contains(method.toLowerCase(Locale.getDefault())));
 
-        final SignalRFuture<Void> sendFuture = connection.send(hubData);
+        String payload = encoder.encodeInvocation(connection.getGson(), callbackId, method, encodedArguments, sentState);
+
+        Supplier<String> replayPayload = null;
+        if (stateDeltaEnabled && connection.getReplayBufferSize() > 0) {
+            // the delta was computed against the state acknowledged before the
+            // connection dropped, which the server forgets on reconnection
+            final Map<String, JsonElement> fullState = getFullState();
+            replayPayload = () -> encoder.encodeInvocation(connection.getGson(), callbackId, method, encodedArguments, fullState);
+        }
+
+        final SignalRFuture<Void> sendFuture = connection.sendInvocation(invocation, payload, replayPayload);
 
         resultFuture.onCancelled(() -> connection.removeCallback(callbackId));
 
-        resultFuture.onError(sendFuture::triggerError);
+        resultFuture.onError(error -> {
+            if (!sendFuture.errorWasTriggered()) {
+                sendFuture.triggerError(error);
+            }
+        });
+    }
 
-        return resultFuture;
+    /**
+     * Marks a hub method as retryable. The invocations of retryable methods
+     * that were sent but not answered when the connection drops are sent
+     * again once reconnected, so the method must be idempotent. See
+     * HubConnection.setReplayBufferSize
+     * 
+     * @param method
+     *            Method name
+     * @param retryable
+     *            True if the method can safely be invoked more than once
+     */
+    public void setRetryable(String method, boolean retryable) {
+        if (method == null) {
+            throw new IllegalArgumentException("method cannot be null");
+        }
+
+        String key = method.toLowerCase(Locale.getDefault());
+        if (retryable) {
+            retryableMethods.add(key);
+        } else {
+            retryableMethods.remove(key);
+        }
+    }
+
+    /**
+     * Limits the number of invocations of a hub method waiting for a result.
+     * This limit applies on top of the connection limit. With the QUEUE
+     * policy, at most HubConnection.DEFAULT_MAX_QUEUED_INVOCATIONS invocations
+     * are queued
+     * 
+     * @param method
+     *            Method name
+     * @param maxInFlight
+     *            The maximum number of in-flight invocations, or zero to remove
+     *            the limit
+     * @param policy
+     *            What to do with the invocations that exceed the limit
+     */
+    public void setMaxInFlightInvocations(String method, int maxInFlight, InvocationAdmissionPolicy policy) {
+        setMaxInFlightInvocations(method, maxInFlight, policy, HubConnection.DEFAULT_MAX_QUEUED_INVOCATIONS);
+    }
+
+    /**
+     * Limits the number of invocations of a hub method waiting for a result.
+     * This limit applies on top of the connection limit
+     * 
+     * @param method
+     *            Method name
+     * @param maxInFlight
+     *            The maximum number of in-flight invocations, or zero to remove
+     *            the limit
+     * @param policy
+     *            What to do with the invocations that exceed the limit
+     * @param maxQueued
+     *            The maximum number of invocations queued by the QUEUE policy.
+     *            The invocations that do not fit fail with an
+     *            InvocationRejectedException
+     */
+    public void setMaxInFlightInvocations(String method, int maxInFlight, InvocationAdmissionPolicy policy, int maxQueued) {
+        if (method == null) {
+            throw new IllegalArgumentException("method cannot be null");
+        }
+
+        if (maxInFlight < 0) {
+            throw new IllegalArgumentException("maxInFlight cannot be negative");
+        }
+
+        String key = method.toLowerCase(Locale.getDefault());
+        if (maxInFlight == 0) {
+            invocationWindows.remove(key);
+        } else {
+            invocationWindows.put(key, new InvocationWindow(maxInFlight, policy, maxQueued));
+        }
     }
 
     /**
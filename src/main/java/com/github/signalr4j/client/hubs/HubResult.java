@@ -34,6 +34,9 @@ public class HubResult {
     @SerializedName("S")
     private Map<String, JsonElement> state;
 
+    @SerializedName("P")
+    private HubProgressUpdate progressUpdate;
+
     public String getId() {
         return id == null ? null : id.toLowerCase(Locale.getDefault());
     }
@@ -81,4 +84,12 @@ public class HubResult {
     public void setState(Map<String, JsonElement> state) {
         this.state = state;
     }
+
+    public HubProgressUpdate getProgressUpdate() {
+        return progressUpdate;
+    }
+
+    public void setProgressUpdate(HubProgressUpdate progressUpdate) {
+        this.progressUpdate = progressUpdate;
+    }
 }
@@ -0,0 +1,30 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.hubs;
+
+/**
+ * Indicates what happens to a hub invocation when the maximum number of
+ * in-flight invocations has been reached
+ */
+public enum InvocationAdmissionPolicy {
+    /**
+     * The invocation is queued and sent, in order, once a result arrives for
+     * one of the in-flight invocations
+     */
+    QUEUE,
+
+    /**
+     * The invocation fails right away with an InvocationRejectedException
+     */
+    REJECT,
+
+    /**
+     * The invoking thread blocks until an in-flight invocation completes. It
+     * must not be used from the threads that deliver the hub messages
+     */
+    BLOCK
+}
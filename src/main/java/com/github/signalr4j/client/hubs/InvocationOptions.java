@@ -0,0 +1,66 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.hubs;
+
+/**
+ * Per-invocation settings for hub method calls
+ */
+public class InvocationOptions {
+
+    /**
+     * Timeout value indicating that the connection default should be used
+     */
+    public static final long DEFAULT_TIMEOUT = -1;
+
+    /**
+     * Timeout value indicating that the invocation never times out
+     */
+    public static final long NO_TIMEOUT = 0;
+
+    private long timeout = DEFAULT_TIMEOUT;
+
+    private boolean retryable = false;
+
+    /**
+     * Returns the invocation timeout, in milliseconds
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Sets the invocation timeout
+     * 
+     * @param timeout
+     *            Time to wait for the result, in milliseconds. Use
+     *            NO_TIMEOUT to wait forever, or DEFAULT_TIMEOUT to use the
+     *            connection invocation timeout
+     */
+    public void setTimeout(long timeout) {
+        if (timeout < DEFAULT_TIMEOUT) {
+            throw new IllegalArgumentException("timeout cannot be negative");
+        }
+
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns true if the invocation can be sent again after a reconnect
+     */
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    /**
+     * Indicates if the invocation can be sent again if the connection drops
+     * before its result arrives. Only idempotent invocations should be
+     * retryable. See HubConnection.setReplayBufferSize
+     */
+    public void setRetryable(boolean retryable) {
+        this.retryable = retryable;
+    }
+}
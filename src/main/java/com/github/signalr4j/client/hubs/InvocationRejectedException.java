@@ -0,0 +1,26 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.hubs;
+
+/**
+ * Exception to indicate that a hub invocation was not sent because too many
+ * invocations are already waiting for a result
+ */
+public class InvocationRejectedException extends Exception {
+
+    private static final long serialVersionUID = 7270118336614744365L;
+
+    /**
+     * Creates a new invocation rejected exception
+     * 
+     * @param method
+     *            The invoked hub method
+     */
+    public InvocationRejectedException(String method) {
+        super("The invocation of '" + method + "' was rejected, too many invocations are in flight");
+    }
+}
@@ -0,0 +1,30 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.hubs;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Exception to indicate that the server did not answer a hub invocation in
+ * time
+ */
+public class InvocationTimeoutException extends TimeoutException {
+
+    private static final long serialVersionUID = -3049264011720361482L;
+
+    /**
+     * Creates a new invocation timeout exception
+     * 
+     * @param method
+     *            The invoked hub method
+     * @param timeout
+     *            The timeout that expired, in milliseconds
+     */
+    public InvocationTimeoutException(String method, long timeout) {
+        super("The invocation of '" + method + "' timed out after " + timeout + " ms");
+    }
+}
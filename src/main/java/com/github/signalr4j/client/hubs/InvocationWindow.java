@@ -0,0 +1,124 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.hubs;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Bounds the number of invocations waiting for a result
+ */
+class InvocationWindow {
+
+    private final int maxInFlight;
+
+    private final InvocationAdmissionPolicy policy;
+
+    private final int maxQueued;
+
+    private final Deque<Runnable> queue = new ArrayDeque<>();
+
+    private int inFlight = 0;
+
+    InvocationWindow(int maxInFlight, InvocationAdmissionPolicy policy, int maxQueued) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be greater than zero");
+        }
+
+        if (policy == null) {
+            throw new IllegalArgumentException("policy cannot be null");
+        }
+
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("maxQueued cannot be negative");
+        }
+
+        this.maxInFlight = maxInFlight;
+        this.policy = policy;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Admits an invocation. If there is room in the window, the invocation
+     * runs right away on the calling thread, otherwise it is queued, rejected
+     * or the calling thread blocks, depending on the policy. An invocation
+     * that does not fit in a full queue is rejected. Every admitted
+     * invocation must call release once it completes
+     * 
+     * @param invocation
+     *            The invocation to run
+     * @return False if the invocation was rejected
+     * @throws InterruptedException
+     *             If the thread is interrupted while blocked
+     */
+    boolean admit(Runnable invocation) throws InterruptedException {
+        synchronized (this) {
+            if (inFlight >= maxInFlight) {
+                switch (policy) {
+                    case REJECT:
+                        return false;
+                    case QUEUE:
+                        if (queue.size() >= maxQueued) {
+                            return false;
+                        }
+
+                        queue.add(invocation);
+                        return true;
+                    case BLOCK:
+                        while (inFlight >= maxInFlight) {
+                            wait();
+                        }
+                        break;
+                }
+            }
+
+            inFlight++;
+        }
+
+        invocation.run();
+        return true;
+    }
+
+    /**
+     * Releases a slot, handing it to the next queued invocation if any
+     */
+    void release() {
+        Runnable next;
+
+        synchronized (this) {
+            next = queue.poll();
+
+            if (next == null) {
+                inFlight--;
+                notify();
+            }
+        }
+
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    /**
+     * Removes a queued invocation, which will not run
+     * 
+     * @param invocation
+     *            The invocation, as passed to admit
+     * @return False if the invocation was not queued
+     */
+    synchronized boolean remove(Runnable invocation) {
+        return queue.remove(invocation);
+    }
+
+    synchronized int getInFlightCount() {
+        return inFlight;
+    }
+
+    synchronized int getQueuedCount() {
+        return queue.size();
+    }
+}
@@ -0,0 +1,212 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.hubs;
+
+import com.github.signalr4j.client.Action;
+import com.github.signalr4j.client.ErrorCallback;
+import com.github.signalr4j.client.SignalRFuture;
+import com.github.signalr4j.client.metrics.Histogram;
+import com.google.gson.JsonElement;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Entry of the pending invocations table kept by the HubConnection
+ */
+class PendingInvocation {
+
+    private final String id;
+
+    private final String method;
+
+    private final Action<HubResult> resultCallback;
+
+    private final ErrorCallback errorCallback;
+
+    private final Runnable onRemoved;
+
+    private final Histogram latency;
+
+    private final long startTime = System.nanoTime();
+
+    private final AtomicBoolean removed = new AtomicBoolean(false);
+
+    private volatile Action<JsonElement> progressCallback;
+
+    private ScheduledFuture<?> timeoutTask;
+
+    private boolean disposed = false;
+
+    private volatile long timeout;
+
+    private Supplier<String> replayPayload;
+
+    private boolean retryable = false;
+
+    private boolean buffered = false;
+
+    private SignalRFuture<Void> heldSendFuture;
+
+    PendingInvocation(String id, String method, Histogram latency, Action<HubResult> resultCallback, ErrorCallback errorCallback, Runnable onRemoved) {
+        this.id = id;
+        this.method = method;
+        this.latency = latency;
+        this.resultCallback = resultCallback;
+        this.errorCallback = errorCallback;
+        this.onRemoved = onRemoved;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the payload to send when the invocation is replayed, or null if
+     * it cannot be replayed
+     */
+    Supplier<String> getReplayPayload() {
+        return replayPayload;
+    }
+
+    void setReplayPayload(Supplier<String> replayPayload) {
+        this.replayPayload = replayPayload;
+    }
+
+    boolean isRetryable() {
+        return retryable;
+    }
+
+    void setRetryable(boolean retryable) {
+        this.retryable = retryable;
+    }
+
+    boolean isBuffered() {
+        return buffered;
+    }
+
+    void setBuffered(boolean buffered) {
+        this.buffered = buffered;
+    }
+
+    /**
+     * Sets the Future returned for an invocation held while reconnecting. It
+     * is completed once the invocation is replayed
+     */
+    synchronized void setHeldSendFuture(SignalRFuture<Void> heldSendFuture) {
+        this.heldSendFuture = heldSendFuture;
+    }
+
+    /**
+     * Returns the Future returned for the held invocation, if any, and clears
+     * it
+     */
+    synchronized SignalRFuture<Void> takeHeldSendFuture() {
+        SignalRFuture<Void> future = heldSendFuture;
+        heldSendFuture = null;
+        return future;
+    }
+
+    void setProgressCallback(Action<JsonElement> progressCallback) {
+        this.progressCallback = progressCallback;
+    }
+
+    /**
+     * Returns the invocation timeout in milliseconds, or zero if it never
+     * times out
+     */
+    long getTimeout() {
+        return timeout;
+    }
+
+    void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Sets the timeout task, cancelling the previous one
+     */
+    synchronized void setTimeoutTask(ScheduledFuture<?> timeoutTask) {
+        if (this.timeoutTask != null) {
+            this.timeoutTask.cancel(false);
+        }
+
+        if (disposed) {
+            timeoutTask.cancel(false);
+            this.timeoutTask = null;
+        } else {
+            this.timeoutTask = timeoutTask;
+        }
+    }
+
+    /**
+     * Cancels the timeout and the send of a held invocation, if any, and
+     * releases the in-flight slot held by the invocation. Must be invoked
+     * once the entry leaves the table
+     */
+    void dispose() {
+        SignalRFuture<Void> unsent;
+        synchronized (this) {
+            disposed = true;
+            if (timeoutTask != null) {
+                timeoutTask.cancel(false);
+                timeoutTask = null;
+            }
+
+            unsent = takeHeldSendFuture();
+        }
+
+        // the held invocation will never be sent
+        if (unsent != null) {
+            unsent.cancel();
+        }
+
+        if (removed.compareAndSet(false, true) && onRemoved != null) {
+            onRemoved.run();
+        }
+    }
+
+    /**
+     * Delivers a partial result. The invocation stays pending
+     */
+    void progress(JsonElement data) throws Exception {
+        Action<JsonElement> callback = progressCallback;
+        if (callback != null && !removed.get()) {
+            callback.run(data);
+        }
+    }
+
+    /**
+     * Records the round trip time, from the registration to now
+     */
+    void recordLatency() {
+        if (latency != null) {
+            latency.record(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Completes the invocation with a server result
+     */
+    void complete(HubResult result) throws Exception {
+        dispose();
+        resultCallback.run(result);
+    }
+
+    /**
+     * Completes the invocation with an error
+     */
+    void fail(Throwable error) {
+        dispose();
+        errorCallback.onError(error);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Forwards the events to several Metrics implementations, e.g. the
+ * DefaultMetrics and an adapter to a monitoring system
+ */
+public class CompositeMetrics implements Metrics {
+
+    private final Metrics[] targets;
+
+    /**
+     * Initializes the composite
+     *
+     * @param targets
+     *            The implementations that receive the events
+     */
+    public CompositeMetrics(Metrics... targets) {
+        if (targets == null) {
+            throw new IllegalArgumentException("targets cannot be null");
+        }
+
+        for (Metrics target : targets) {
+            if (target == null) {
+                throw new IllegalArgumentException("targets cannot contain null");
+            }
+        }
+
+        this.targets = Arrays.copyOf(targets, targets.length);
+    }
+
+    @Override
+    public void received(int messages, int bytes) {
+        for (Metrics target : targets) {
+            target.received(messages, bytes);
+        }
+    }
+
+    @Override
+    public void sent(int bytes) {
+        for (Metrics target : targets) {
+            target.sent(bytes);
+        }
+    }
+
+    @Override
+    public void parsed(long nanos) {
+        for (Metrics target : targets) {
+            target.parsed(nanos);
+        }
+    }
+
+    @Override
+    public void dispatched(long nanos) {
+        for (Metrics target : targets) {
+            target.dispatched(nanos);
+        }
+    }
+
+    @Override
+    public void handled(long nanos) {
+        for (Metrics target : targets) {
+            target.handled(nanos);
+        }
+    }
+
+    @Override
+    public void reconnected(long millis) {
+        for (Metrics target : targets) {
+            target.reconnected(millis);
+        }
+    }
+
+    @Override
+    public void pendingInvocations(int pending) {
+        for (Metrics target : targets) {
+            target.pendingInvocations(pending);
+        }
+    }
+
+    @Override
+    public void keepAliveGap(long millis) {
+        for (Metrics target : targets) {
+            target.keepAliveGap(millis);
+        }
+    }
+
+    @Override
+    public void transportSelected(String transport) {
+        for (Metrics target : targets) {
+            target.transportSelected(transport);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free Metrics implementation that keeps counters and histograms in
+ * memory. The values can be read at any time, e.g. by a monitoring system
+ * that polls them
+ */
+public class DefaultMetrics implements Metrics {
+
+    private final LongAdder messagesReceived = new LongAdder();
+
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private final LongAdder messagesSent = new LongAdder();
+
+    private final LongAdder bytesSent = new LongAdder();
+
+    private final LongAdder reconnects = new LongAdder();
+
+    private final Histogram parseTime = new Histogram();
+
+    private final Histogram dispatchTime = new Histogram();
+
+    private final Histogram handlerTime = new Histogram();
+
+    private final Histogram reconnectDuration = new Histogram();
+
+    private final Histogram keepAliveGap = new Histogram();
+
+    private volatile int pendingInvocations = 0;
+
+    private volatile String transport;
+
+    @Override
+    public void received(int messages, int bytes) {
+        messagesReceived.add(messages);
+        bytesReceived.add(bytes);
+    }
+
+    @Override
+    public void sent(int bytes) {
+        messagesSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    @Override
+    public void parsed(long nanos) {
+        parseTime.record(nanos);
+    }
+
+    @Override
+    public void dispatched(long nanos) {
+        dispatchTime.record(nanos);
+    }
+
+    @Override
+    public void handled(long nanos) {
+        handlerTime.record(nanos);
+    }
+
+    @Override
+    public void reconnected(long millis) {
+        reconnects.increment();
+        reconnectDuration.record(millis);
+    }
+
+    @Override
+    public void pendingInvocations(int pending) {
+        pendingInvocations = pending;
+    }
+
+    @Override
+    public void keepAliveGap(long millis) {
+        keepAliveGap.record(millis);
+    }
+
+    @Override
+    public void transportSelected(String transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Returns the number of messages received
+     */
+    public long getMessagesReceived() {
+        return messagesReceived.sum();
+    }
+
+    /**
+     * Returns the number of bytes received
+     */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * Returns the number of messages sent
+     */
+    public long getMessagesSent() {
+        return messagesSent.sum();
+    }
+
+    /**
+     * Returns the number of bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    /**
+     * Returns the number of reconnections
+     */
+    public long getReconnects() {
+        return reconnects.sum();
+    }
+
+    /**
+     * Returns the payload parse times, in nanoseconds
+     */
+    public HistogramSnapshot getParseTime() {
+        return parseTime.snapshot();
+    }
+
+    /**
+     * Returns the payload dispatch times, in nanoseconds
+     */
+    public HistogramSnapshot getDispatchTime() {
+        return dispatchTime.snapshot();
+    }
+
+    /**
+     * Returns the application handler times, in nanoseconds
+     */
+    public HistogramSnapshot getHandlerTime() {
+        return handlerTime.snapshot();
+    }
+
+    /**
+     * Returns the reconnection durations, in milliseconds
+     */
+    public HistogramSnapshot getReconnectDuration() {
+        return reconnectDuration.snapshot();
+    }
+
+    /**
+     * Returns the gaps between received data, in milliseconds
+     */
+    public HistogramSnapshot getKeepAliveGap() {
+        return keepAliveGap.snapshot();
+    }
+
+    /**
+     * Returns the last reported number of pending invocations
+     */
+    public int getPendingInvocations() {
+        return pendingInvocations;
+    }
+
+    /**
+     * Returns the name of the transport in use, or null if the connection
+     * was never established
+     */
+    public String getTransport() {
+        return transport;
+    }
+
+    /**
+     * Clears the counters and histograms
+     */
+    public void reset() {
+        messagesReceived.reset();
+        bytesReceived.reset();
+        messagesSent.reset();
+        bytesSent.reset();
+        reconnects.reset();
+        parseTime.reset();
+        dispatchTime.reset();
+        handlerTime.reset();
+        reconnectDuration.reset();
+        keepAliveGap.reset();
+    }
+}
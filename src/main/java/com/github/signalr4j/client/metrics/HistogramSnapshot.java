@@ -0,0 +1,106 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.metrics;
+
+/**
+ * Immutable copy of the data recorded by a Histogram
+ */
+public class HistogramSnapshot {
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long sum;
+
+    private final long min;
+
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long sum, long min, long max) {
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+
+        this.counts = counts;
+        this.count = total;
+        this.sum = sum;
+        this.min = total == 0 ? 0 : min;
+        this.max = max;
+    }
+
+    /**
+     * Returns the number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of the recorded values
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * Returns the smallest recorded value, or 0 if there is none
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest recorded value, or 0 if there is none
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the average of the recorded values, or 0 if there is none
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns an upper bound of the value below which a percentage of the
+     * recorded values fall
+     *
+     * @param percentile
+     *            The percentage, between 0 and 100
+     * @return The value, or 0 if there is none
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(Math.max(Histogram.upperBoundOf(i), min), max);
+            }
+        }
+
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + ", mean=" + String.format("%.1f", getMean()) + ", p50=" + getPercentile(50) + ", p99=" + getPercentile(99)
+                + ", max=" + max;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.metrics;
+
+/**
+ * Receives the performance events of a connection. Implementations are
+ * called from the transport and timer threads while messages are processed,
+ * so they must be thread safe and must not block
+ */
+public interface Metrics {
+
+    /**
+     * Invoked when the transport delivers a payload
+     *
+     * @param messages
+     *            Number of messages in the payload
+     * @param bytes
+     *            Size of the payload, UTF-8 encoded
+     */
+    void received(int messages, int bytes);
+
+    /**
+     * Invoked when data is handed to the transport
+     *
+     * @param bytes
+     *            Size of the data, UTF-8 encoded
+     */
+    void sent(int bytes);
+
+    /**
+     * Invoked after a payload is parsed
+     *
+     * @param nanos
+     *            Time spent parsing, in nanoseconds
+     */
+    void parsed(long nanos);
+
+    /**
+     * Invoked after the messages of a payload are dispatched
+     *
+     * @param nanos
+     *            Time spent dispatching, handlers included, in nanoseconds
+     */
+    void dispatched(long nanos);
+
+    /**
+     * Invoked after an application handler runs
+     *
+     * @param nanos
+     *            Time spent in the handler, in nanoseconds
+     */
+    void handled(long nanos);
+
+    /**
+     * Invoked when the connection is reconnected
+     *
+     * @param millis
+     *            Time since the connection was lost, in milliseconds
+     */
+    void reconnected(long millis);
+
+    /**
+     * Invoked when the number of invocations waiting for a server result
+     * changes
+     *
+     * @param pending
+     *            The number of pending invocations
+     */
+    void pendingInvocations(int pending);
+
+    /**
+     * Invoked each time data is received, once the first keep-alive was
+     * received, so that the distribution shows how long the connection
+     * stays silent
+     *
+     * @param millis
+     *            Time since the previous data or keep-alive, in milliseconds
+     */
+    void keepAliveGap(long millis);
+
+    /**
+     * Invoked when the connection is established on a transport
+     *
+     * @param transport
+     *            The transport name
+     */
+    void transportSelected(String transport);
+}
@@ -0,0 +1,68 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.metrics;
+
+/**
+ * Metrics implementation that ignores every event. Adapters that only
+ * need some of the events can extend it
+ */
+public class NullMetrics implements Metrics {
+
+    /**
+     * Shared instance used by the connections that have no metrics
+     */
+    public static final NullMetrics INSTANCE = new NullMetrics();
+
+    /**
+     * Indicates whether the events must be measured. Only the shared
+     * instance is disabled, adapters that extend this class still receive
+     * the events
+     *
+     * @param metrics
+     *            The metrics of a connection
+     * @return False if the timings and sizes need not be computed
+     */
+    public static boolean isEnabled(Metrics metrics) {
+        return metrics != INSTANCE;
+    }
+
+    @Override
+    public void received(int messages, int bytes) {
+    }
+
+    @Override
+    public void sent(int bytes) {
+    }
+
+    @Override
+    public void parsed(long nanos) {
+    }
+
+    @Override
+    public void dispatched(long nanos) {
+    }
+
+    @Override
+    public void handled(long nanos) {
+    }
+
+    @Override
+    public void reconnected(long millis) {
+    }
+
+    @Override
+    public void pendingInvocations(int pending) {
+    }
+
+    @Override
+    public void keepAliveGap(long millis) {
+    }
+
+    @Override
+    public void transportSelected(String transport) {
+    }
+}
@@ -0,0 +1,52 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.numeric;
+
+import com.google.gson.JsonElement;
+
+/**
+ * A field of decoded records, stored in a reusable primitive array
+ */
+public abstract class Column {
+
+    static final int DEFAULT_CAPACITY = 16;
+
+    private final String field;
+
+    Column(String field) {
+        if (field == null) {
+            throw new IllegalArgumentException("field cannot be null");
+        }
+
+        this.field = field;
+    }
+
+    /**
+     * Returns the name of the field in the records
+     */
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * Returns the number of values
+     */
+    public abstract int size();
+
+    /**
+     * Removes the values. The array is kept for the next values
+     */
+    public abstract void clear();
+
+    /**
+     * Appends the value of a JSON element
+     *
+     * @param element
+     *            The element, or null if the record has no value
+     */
+    abstract void addElement(JsonElement element);
+}
@@ -0,0 +1,146 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.numeric;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+/**
+ * Decodes a JSON array of records into one primitive array per field, so a
+ * batch of telemetry samples needs neither an object per record nor boxed
+ * numbers. The schema is the list of columns added to the decoder. A record
+ * is either an object, whose fields are found by name, or an array, whose
+ * values are in the order of the columns.
+ *
+ * The columns are reused by every decode, so a decoder belongs to a single
+ * thread, e.g. the one of a raw subscription:
+ *
+ * proxy.subscribe("samples").addReceivedHandler(args -> decoder.decode(args[0]));
+ */
+public class ColumnarDecoder {
+
+    private final List<Column> columns = new ArrayList<>();
+
+    private int rowCount = 0;
+
+    /**
+     * Adds a column of double values
+     *
+     * @param field
+     *            The name of the field in the records
+     * @return The column
+     */
+    public DoubleColumn addDoubleColumn(String field) {
+        return addColumn(new DoubleColumn(field));
+    }
+
+    /**
+     * Adds a column of float values
+     *
+     * @param field
+     *            The name of the field in the records
+     * @return The column
+     */
+    public FloatColumn addFloatColumn(String field) {
+        return addColumn(new FloatColumn(field));
+    }
+
+    /**
+     * Adds a column of long values
+     *
+     * @param field
+     *            The name of the field in the records
+     * @return The column
+     */
+    public LongColumn addLongColumn(String field) {
+        return addColumn(new LongColumn(field));
+    }
+
+    /**
+     * Returns the columns, in the order they were added
+     */
+    public List<Column> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Returns the number of records of the last decode
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Decodes the records, replacing the values of the columns
+     *
+     * @param records
+     *            A JSON array of records, e.g. a hub method argument
+     * @return The number of records
+     */
+    public int decode(JsonElement records) {
+        if (records == null || !records.isJsonArray()) {
+            throw new JsonParseException("The records must be a JSON array");
+        }
+
+        clear();
+
+        JsonArray array = records.getAsJsonArray();
+        try {
+            for (int row = 0; row < array.size(); row++) {
+                JsonElement record = array.get(row);
+
+                if (record.isJsonObject()) {
+                    JsonObject object = record.getAsJsonObject();
+                    for (int i = 0; i < columns.size(); i++) {
+                        Column column = columns.get(i);
+                        column.addElement(object.get(column.getField()));
+                    }
+                } else if (record.isJsonArray()) {
+                    JsonArray values = record.getAsJsonArray();
+                    for (int i = 0; i < columns.size(); i++) {
+                        columns.get(i).addElement(i < values.size() ? values.get(i) : null);
+                    }
+                } else {
+                    throw new JsonParseException("Record " + row + " is not an object or an array");
+                }
+
+                rowCount++;
+            }
+        } catch (RuntimeException e) {
+            // the columns never hold part of a record
+            clear();
+            throw e;
+        }
+
+        return rowCount;
+    }
+
+    private void clear() {
+        for (int i = 0; i < columns.size(); i++) {
+            columns.get(i).clear();
+        }
+
+        rowCount = 0;
+    }
+
+    private <T extends Column> T addColumn(T column) {
+        for (Column existing : columns) {
+            if (existing.getField().equals(column.getField())) {
+                throw new IllegalArgumentException("The field " + column.getField() + " already has a column");
+            }
+        }
+
+        columns.add(column);
+        return column;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.numeric;
+
+import java.util.Arrays;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+
+/**
+ * A column of long values. Missing and null values are rejected
+ */
+public class LongColumn extends Column {
+
+    private long[] values;
+
+    private int size = 0;
+
+    /**
+     * Initializes the column
+     *
+     * @param field
+     *            The name of the field in the records
+     */
+    public LongColumn(String field) {
+        this(field, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Initializes the column
+     *
+     * @param field
+     *            The name of the field in the records
+     * @param capacity
+     *            The initial length of the array
+     */
+    public LongColumn(String field, int capacity) {
+        super(field);
+
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity cannot be negative");
+        }
+
+        values = new long[capacity];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns a value
+     *
+     * @param index
+     *            The index of the value
+     */
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        return values[index];
+    }
+
+    /**
+     * Returns the array of the column. Only the first size() values are
+     * valid, and the array is reused by the next values
+     */
+    public long[] getValues() {
+        return values;
+    }
+
+    /**
+     * Returns a copy of the values
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Appends a value
+     *
+     * @param value
+     *            The value
+     */
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, Math.max(DEFAULT_CAPACITY, size * 2));
+        }
+
+        values[size++] = value;
+    }
+
+    /**
+     * Replaces the values with the numbers of a JSON array, e.g. a hub
+     * method argument
+     *
+     * @param array
+     *            The JSON array
+     */
+    public void read(JsonElement array) {
+        clear();
+
+        JsonArray elements = array.getAsJsonArray();
+        for (int i = 0; i < elements.size(); i++) {
+            addElement(elements.get(i));
+        }
+    }
+
+    @Override
+    void addElement(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            throw new JsonParseException("Missing value for " + getField());
+        }
+
+        add(element.getAsLong());
+    }
+}
@@ -0,0 +1,215 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.numeric;
+
+import java.io.IOException;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Parses the text of JSON numbers without allocating. Gson keeps the numbers
+ * of a parsed tree as text, and Double.parseDouble allocates its buffers on
+ * every call. A number with few enough digits and a small exponent is the
+ * exact product or quotient of two doubles, so a single, correctly rounded
+ * operation gives the same result as Double.parseDouble. The other numbers
+ * are parsed by Double.parseDouble.
+ *
+ * A streaming JsonReader keeps an integer that fits in a long as a long,
+ * which nextDouble returns without allocating, while nextString would
+ * allocate its text. It keeps the other numbers as text, which nextString
+ * copies to a String and nextDouble parses with Double.parseDouble. The
+ * reader does not tell which is the case, so the numbers of an array are
+ * read the way that suited the previous one
+ */
+final class NumberParser {
+
+    private static final int MAX_DOUBLE_DIGITS = 15;
+
+    private static final int MAX_DOUBLE_EXPONENT = 22;
+
+    private static final int MAX_FLOAT_DIGITS = 7;
+
+    private static final int MAX_FLOAT_EXPONENT = 10;
+
+    private static final double[] DOUBLE_POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17,
+            1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private static final float[] FLOAT_POWERS_OF_TEN = { 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+    private NumberParser() {
+    }
+
+    static double parseDouble(JsonElement element) {
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+        return primitive.isNumber() ? parseDouble(primitive.getAsString()) : primitive.getAsDouble();
+    }
+
+    static float parseFloat(JsonElement element) {
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+        return primitive.isNumber() ? parseFloat(primitive.getAsString()) : primitive.getAsFloat();
+    }
+
+    /**
+     * Reads the next number
+     *
+     * @param in
+     *            The reader
+     * @param integer
+     *            True if the previous number of the array was an integer
+     */
+    static double nextDouble(JsonReader in, boolean integer) throws IOException {
+        if (in.peek() != JsonToken.NUMBER || (integer && isStreaming(in))) {
+            return in.nextDouble();
+        }
+
+        return parseDouble(in.nextString());
+    }
+
+    /**
+     * Reads the next number
+     *
+     * @param in
+     *            The reader
+     * @param integer
+     *            True if the previous number of the array was an integer
+     */
+    static float nextFloat(JsonReader in, boolean integer) throws IOException {
+        if (in.peek() != JsonToken.NUMBER || (integer && isStreaming(in))) {
+            // rounded twice, as the Gson float adapter does, which only
+            // differs for integers over 2^53
+            return (float) in.nextDouble();
+        }
+
+        return parseFloat(in.nextString());
+    }
+
+    /**
+     * Returns true if the value is an integer that fits in a long
+     */
+    static boolean isInteger(double value) {
+        return value == (long) value;
+    }
+
+    /**
+     * Returns true for a reader of JSON text, false for the reader of a
+     * parsed tree, whose numbers are all kept as text
+     */
+    private static boolean isStreaming(JsonReader in) {
+        return in.getClass() == JsonReader.class;
+    }
+
+    static double parseDouble(String text) {
+        double value = parse(text, false);
+        return Double.isNaN(value) ? Double.parseDouble(text) : value;
+    }
+
+    static float parseFloat(String text) {
+        double value = parse(text, true);
+        return Double.isNaN(value) ? Float.parseFloat(text) : (float) value;
+    }
+
+    /**
+     * Returns the value of the text, or NaN if it does not fit the fast path
+     */
+    private static double parse(String text, boolean asFloat) {
+        int length = text.length();
+        int index = 0;
+
+        boolean negative = false;
+        if (index < length && text.charAt(index) == '-') {
+            negative = true;
+            index++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        boolean fraction = false;
+
+        for (; index < length; index++) {
+            char c = text.charAt(index);
+
+            if (c >= '0' && c <= '9') {
+                hasDigits = true;
+                mantissa = mantissa * 10 + (c - '0');
+
+                if (mantissa != 0) {
+                    digits++;
+                    if (digits > (asFloat ? MAX_FLOAT_DIGITS : MAX_DOUBLE_DIGITS)) {
+                        return Double.NaN;
+                    }
+                }
+
+                if (fraction) {
+                    exponent--;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+
+        if (!hasDigits) {
+            return Double.NaN;
+        }
+
+        if (index < length) {
+            char c = text.charAt(index);
+            if (c != 'e' && c != 'E') {
+                return Double.NaN;
+            }
+
+            index++;
+            boolean negativeExponent = false;
+            if (index < length && (text.charAt(index) == '-' || text.charAt(index) == '+')) {
+                negativeExponent = text.charAt(index) == '-';
+                index++;
+            }
+
+            int explicitExponent = 0;
+            int exponentDigits = 0;
+            for (; index < length; index++) {
+                c = text.charAt(index);
+                if (c < '0' || c > '9' || ++exponentDigits > 3) {
+                    return Double.NaN;
+                }
+
+                explicitExponent = explicitExponent * 10 + (c - '0');
+            }
+
+            if (exponentDigits == 0) {
+                return Double.NaN;
+            }
+
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+
+        int maxExponent = asFloat ? MAX_FLOAT_EXPONENT : MAX_DOUBLE_EXPONENT;
+        if (exponent > maxExponent || exponent < -maxExponent) {
+            return Double.NaN;
+        }
+
+        double value;
+        if (asFloat) {
+            float floatValue = mantissa;
+            value = exponent >= 0 ? floatValue * FLOAT_POWERS_OF_TEN[exponent] : floatValue / FLOAT_POWERS_OF_TEN[-exponent];
+        } else {
+            value = exponent >= 0 ? mantissa * DOUBLE_POWERS_OF_TEN[exponent] : mantissa / DOUBLE_POWERS_OF_TEN[-exponent];
+        }
+
+        return negative ? -value : value;
+    }
+}
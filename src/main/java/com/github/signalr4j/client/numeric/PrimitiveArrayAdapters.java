@@ -0,0 +1,184 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.numeric;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Gson adapters that read JSON number arrays straight into double[], long[]
+ * and float[]. The Gson default adapters collect the values in a list of
+ * boxed numbers before they copy them to the array. The connections register
+ * these adapters, so they must be registered again on a Gson set with
+ * setGson. For arrays of records, see ColumnarDecoder
+ */
+public class PrimitiveArrayAdapters {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Adapter for double[]
+     */
+    public static final TypeAdapter<double[]> DOUBLE_ARRAY = new TypeAdapter<double[]>() {
+
+        @Override
+        public void write(JsonWriter out, double[] values) throws IOException {
+            if (values == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginArray();
+            for (double value : values) {
+                out.value(value);
+            }
+            out.endArray();
+        }
+
+        @Override
+        public double[] read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            double[] values = new double[INITIAL_CAPACITY];
+            int size = 0;
+            boolean integer = true;
+
+            in.beginArray();
+            while (in.hasNext()) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+
+                double value = NumberParser.nextDouble(in, integer);
+                integer = NumberParser.isInteger(value);
+                values[size++] = value;
+            }
+            in.endArray();
+
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        }
+    };
+
+    /**
+     * Adapter for long[]
+     */
+    public static final TypeAdapter<long[]> LONG_ARRAY = new TypeAdapter<long[]>() {
+
+        @Override
+        public void write(JsonWriter out, long[] values) throws IOException {
+            if (values == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginArray();
+            for (long value : values) {
+                out.value(value);
+            }
+            out.endArray();
+        }
+
+        @Override
+        public long[] read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            long[] values = new long[INITIAL_CAPACITY];
+            int size = 0;
+
+            in.beginArray();
+            while (in.hasNext()) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+
+                values[size++] = in.nextLong();
+            }
+            in.endArray();
+
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        }
+    };
+
+    /**
+     * Adapter for float[]
+     */
+    public static final TypeAdapter<float[]> FLOAT_ARRAY = new TypeAdapter<float[]>() {
+
+        @Override
+        public void write(JsonWriter out, float[] values) throws IOException {
+            if (values == null) {
+                out.nullValue();
+                return;
+            }
+
+            out.beginArray();
+            for (float value : values) {
+                // written as a Float, so 0.1f is not widened to 0.10000000149011612
+                out.value(Float.valueOf(value));
+            }
+            out.endArray();
+        }
+
+        @Override
+        public float[] read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+
+            float[] values = new float[INITIAL_CAPACITY];
+            int size = 0;
+            boolean integer = true;
+
+            in.beginArray();
+            while (in.hasNext()) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+
+                float value = NumberParser.nextFloat(in, integer);
+                integer = NumberParser.isInteger(value);
+                values[size++] = value;
+            }
+            in.endArray();
+
+            return size == values.length ? values : Arrays.copyOf(values, size);
+        }
+    };
+
+    /**
+     * Registers the adapters
+     *
+     * @param gsonBuilder
+     *            The builder of the Gson
+     * @return The builder
+     */
+    public static GsonBuilder register(GsonBuilder gsonBuilder) {
+        if (gsonBuilder == null) {
+            throw new IllegalArgumentException("gsonBuilder cannot be null");
+        }
+
+        return gsonBuilder.registerTypeAdapter(double[].class, DOUBLE_ARRAY)
+                .registerTypeAdapter(long[].class, LONG_ARRAY)
+                .registerTypeAdapter(float[].class, FLOAT_ARRAY);
+    }
+
+    private PrimitiveArrayAdapters() {
+    }
+}
@@ -0,0 +1,138 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads the payloads of a wire log written by WireRecorder, in the order
+ * they were recorded. Records whose copy was not complete, e.g. because the
+ * process died while writing them, are skipped
+ */
+public class WireLogReader implements Closeable {
+
+    private final List<File> segments;
+
+    private int segmentIndex = 0;
+
+    private MappedByteBuffer segment;
+
+    /**
+     * Initializes the reader
+     *
+     * @param directory
+     *            The directory of the segment files
+     */
+    public WireLogReader(File directory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory cannot be null");
+        }
+
+        if (!directory.isDirectory()) {
+            throw new IOException(directory + " is not a directory");
+        }
+
+        segments = listSegments(directory);
+    }
+
+    /**
+     * Returns the next payload, or null at the end of the log
+     */
+    public WireRecord next() throws IOException {
+        while (true) {
+            if (segment == null) {
+                if (segmentIndex == segments.size()) {
+                    return null;
+                }
+
+                segment = openSegment(segments.get(segmentIndex++));
+            }
+
+            if (segment.remaining() >= WireRecorder.RECORD_HEADER_SIZE) {
+                int length = segment.getInt(segment.position());
+
+                // the unused end of a segment is zero
+                if (length > 0) {
+                    if (length < WireRecorder.RECORD_HEADER_SIZE || length > segment.remaining()) {
+                        throw new IOException("Invalid record length " + length + " in " + segments.get(segmentIndex - 1));
+                    }
+
+                    if (segment.get(segment.position() + 4) != WireRecorder.RECORD_COMMITTED) {
+                        segment.position(segment.position() + length);
+                        continue;
+                    }
+
+                    return readRecord(length);
+                }
+            }
+
+            segment = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        segment = null;
+        segmentIndex = segments.size();
+    }
+
+    private WireRecord readRecord(int length) throws IOException {
+        segment.getInt();
+        segment.get();
+
+        int direction = segment.get();
+        if (direction < 0 || direction >= WireRecord.Direction.values().length) {
+            throw new IOException("Invalid record direction " + direction);
+        }
+
+        long timestamp = segment.getLong();
+
+        byte[] data = new byte[length - WireRecorder.RECORD_HEADER_SIZE];
+        segment.get(data);
+
+        return new WireRecord(WireRecord.Direction.values()[direction], timestamp, new String(data, StandardCharsets.UTF_8));
+    }
+
+    private static MappedByteBuffer openSegment(File file) throws IOException {
+        MappedByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r"); FileChannel channel = randomAccessFile.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.remaining() < WireRecorder.SEGMENT_HEADER_SIZE || buffer.getInt() != WireRecorder.MAGIC) {
+            throw new IOException(file + " is not a wire log segment");
+        }
+
+        int version = buffer.getInt();
+        if (version != WireRecorder.VERSION) {
+            throw new IOException("Unsupported wire log version " + version + " in " + file);
+        }
+
+        return buffer;
+    }
+
+    static List<File> listSegments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(WireRecorder.SEGMENT_PREFIX) && name.endsWith(WireRecorder.SEGMENT_SUFFIX));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        List<File> segments = new ArrayList<>(Arrays.asList(files));
+        segments.sort((first, second) -> Integer.compare(WireRecorder.segmentNumber(first), WireRecorder.segmentNumber(second)));
+        return segments;
+    }
+}
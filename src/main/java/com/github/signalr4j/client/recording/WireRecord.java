@@ -0,0 +1,77 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.recording;
+
+/**
+ * A payload read from a wire log
+ */
+public class WireRecord {
+
+    /**
+     * Direction of a payload
+     */
+    public enum Direction {
+        /**
+         * Received from the server
+         */
+        RECEIVED,
+
+        /**
+         * Sent to the server
+         */
+        SENT
+    }
+
+    private final Direction direction;
+
+    private final long timestamp;
+
+    private final String data;
+
+    /**
+     * Initializes the record
+     *
+     * @param direction
+     *            Direction of the payload
+     * @param timestamp
+     *            Time of the payload in nanoseconds since the epoch
+     * @param data
+     *            The raw payload
+     */
+    public WireRecord(Direction direction, long timestamp, String data) {
+        this.direction = direction;
+        this.timestamp = timestamp;
+        this.data = data;
+    }
+
+    /**
+     * Returns the direction of the payload
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Returns the time the payload was received or sent, in nanoseconds since
+     * the epoch. The timestamps of a recorder are monotonic
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the raw payload
+     */
+    public String getData() {
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return direction + " " + timestamp + " " + data;
+    }
+}
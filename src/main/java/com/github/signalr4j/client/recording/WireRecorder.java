@@ -0,0 +1,364 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Appends the raw payloads a connection receives and sends to a binary log,
+ * so that real sessions can be replayed for debugging and benchmarking. The
+ * log is split in memory-mapped segment files, so appending a payload is a
+ * memory copy and the operating system writes the pages in the background.
+ * A new segment is started when the current one is full.
+ *
+ * Each segment starts with a magic number and a version, followed by the
+ * records: the record length, a commit marker, the direction, the timestamp
+ * in nanoseconds since the epoch and the UTF-8 payload. The marker is
+ * written last, so a reader never sees a partial record: it skips a record
+ * whose marker is not set, e.g. when the process died while copying it. Use
+ * WireLogReader to read the log.
+ *
+ * The recorder never fails the connection: after an I/O error it stops
+ * recording and the error is returned by getError.
+ *
+ * The lock is only held to reserve the space of a record and write its
+ * length, the payload is copied afterwards, so the threads that receive and
+ * send do not wait for each other's copies. flush and close wait for the
+ * copies in progress, and new records wait until they are done.
+ *
+ * The JVM offers no way to unmap a segment, so a segment stays mapped until
+ * its buffer is garbage collected. When old segments are deleted (see
+ * setMaxSegments), their disk space is only freed at that point, and on
+ * Windows, where a mapped file cannot be deleted, they are deleted when the
+ * JVM exits instead
+ */
+public class WireRecorder implements Closeable {
+
+    /**
+     * Default size of a segment file
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    static final int MAGIC = 0x5357524c;
+
+    static final int VERSION = 2;
+
+    static final int SEGMENT_HEADER_SIZE = 8;
+
+    static final int RECORD_HEADER_SIZE = 14;
+
+    static final byte RECORD_COMMITTED = 1;
+
+    static final String SEGMENT_PREFIX = "wire-";
+
+    static final String SEGMENT_SUFFIX = ".log";
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final long baseTimestamp;
+
+    private final long baseNanoTime;
+
+    private final Deque<File> segments = new ArrayDeque<>();
+
+    private MappedByteBuffer segment;
+
+    private int segmentIndex;
+
+    private int maxSegments = 0;
+
+    private long recordCount = 0;
+
+    private final AtomicInteger appendsInProgress = new AtomicInteger();
+
+    private volatile int drainers = 0;
+
+    private boolean closed = false;
+
+    private IOException error;
+
+    /**
+     * Initializes the recorder with the default segment size
+     *
+     * @param directory
+     *            The directory of the segment files
+     */
+    public WireRecorder(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Initializes the recorder. The segments of a previous recorder in the
+     * same directory are kept, and the new ones are numbered after them
+     *
+     * @param directory
+     *            The directory of the segment files
+     * @param segmentSize
+     *            The size of a segment file in bytes. A payload that does not
+     *            fit in a segment gets a larger one
+     */
+    public WireRecorder(File directory, int segmentSize) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory cannot be null");
+        }
+
+        if (segmentSize < SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be at least " + (SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE));
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        List<File> existing = WireLogReader.listSegments(directory);
+        segmentIndex = existing.isEmpty() ? 0 : segmentNumber(existing.get(existing.size() - 1));
+
+        baseTimestamp = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        baseNanoTime = System.nanoTime();
+    }
+
+    /**
+     * Sets the number of segment files kept. The oldest segments of this
+     * recorder are deleted when a new one is started. The disk space of a
+     * deleted segment is freed once its mapping is garbage collected
+     *
+     * @param maxSegments
+     *            The number of segments, or zero to keep them all
+     */
+    public synchronized void setMaxSegments(int maxSegments) {
+        if (maxSegments < 0) {
+            throw new IllegalArgumentException("maxSegments cannot be negative");
+        }
+
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * Returns the directory of the segment files
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the number of payloads recorded
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the error that stopped the recording, or null
+     */
+    public synchronized IOException getError() {
+        return error;
+    }
+
+    /**
+     * Records a payload received from the server
+     *
+     * @param data
+     *            The raw payload
+     */
+    public void recordReceived(String data) {
+        append(WireRecord.Direction.RECEIVED, data, null);
+    }
+
+    /**
+     * Records a UTF-8 payload received from the server. The bytes between
+     * the position and the limit of the buffer are copied, the buffer is not
+     * modified
+     *
+     * @param data
+     *            The raw UTF-8 payload
+     */
+    public void recordReceived(ByteBuffer data) {
+        append(WireRecord.Direction.RECEIVED, null, data);
+    }
+
+    /**
+     * Records a payload sent to the server
+     *
+     * @param data
+     *            The raw payload
+     */
+    public void recordSent(String data) {
+        append(WireRecord.Direction.SENT, data, null);
+    }
+
+    /**
+     * Writes the recorded payloads to the disk, once the payloads being
+     * copied are complete
+     */
+    public synchronized void flush() {
+        awaitAppends();
+
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Writes the recorded payloads to the disk and stops recording
+     */
+    @Override
+    public synchronized void close() {
+        flush();
+        segment = null;
+        closed = true;
+    }
+
+    private void append(WireRecord.Direction direction, String text, ByteBuffer bytes) {
+        if (text == null && bytes == null) {
+            return;
+        }
+
+        // encoded before taking the lock, the encoder of the String class
+        // needs no synchronization
+        ByteBuffer payload = bytes != null ? bytes.duplicate() : ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        int recordSize = RECORD_HEADER_SIZE + payload.remaining();
+
+        ByteBuffer record;
+        long timestamp;
+
+        synchronized (this) {
+            awaitDrainers();
+
+            if (closed || error != null) {
+                return;
+            }
+
+            timestamp = baseTimestamp + (System.nanoTime() - baseNanoTime);
+
+            try {
+                if (segment == null || segment.remaining() < recordSize) {
+                    openSegment(Math.max(segmentSize, SEGMENT_HEADER_SIZE + recordSize));
+                }
+            } catch (IOException e) {
+                error = e;
+                segment = null;
+                return;
+            }
+
+            int start = segment.position();
+            segment.putInt(start, recordSize);
+            segment.position(start + recordSize);
+
+            record = segment.duplicate();
+            record.position(start);
+            record.limit(start + recordSize);
+            record = record.slice();
+
+            recordCount++;
+            appendsInProgress.incrementAndGet();
+        }
+
+        try {
+            record.position(RECORD_HEADER_SIZE);
+            record.put(payload);
+            record.put(5, (byte) direction.ordinal());
+            record.putLong(6, timestamp);
+
+            // the marker is written last, so a reader never sees a partial
+            // record
+            record.put(4, RECORD_COMMITTED);
+        } finally {
+            if (appendsInProgress.decrementAndGet() == 0 && drainers > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits, holding the lock, until the records reserved so far are copied.
+     * New records are not reserved in the meantime
+     */
+    private void awaitAppends() {
+        drainers++;
+        boolean interrupted = false;
+        try {
+            while (appendsInProgress.get() > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            drainers--;
+            notifyAll();
+
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits, holding the lock, until no flush is waiting for the copies
+     */
+    private void awaitDrainers() {
+        boolean interrupted = false;
+        while (drainers > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void openSegment(int size) throws IOException {
+        segmentIndex++;
+        File file = new File(directory, String.format(Locale.US, "%s%06d%s", SEGMENT_PREFIX, segmentIndex, SEGMENT_SUFFIX));
+
+        // the mapping stays valid once the channel is closed
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"); FileChannel channel = randomAccessFile.getChannel()) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        segment.putInt(MAGIC);
+        segment.putInt(VERSION);
+
+        segments.addLast(file);
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            File oldest = segments.removeFirst();
+            if (!oldest.delete()) {
+                oldest.deleteOnExit();
+            }
+        }
+    }
+
+    static int segmentNumber(File file) {
+        String name = file.getName();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
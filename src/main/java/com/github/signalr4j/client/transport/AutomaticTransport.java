@@ -9,16 +9,32 @@ package com.github.signalr4j.client.transport;
 import com.github.signalr4j.client.*;
 import com.github.signalr4j.client.http.HttpConnection;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
- * ClientTransport implementation that selects the best available transport
+ * ClientTransport implementation that selects the best available transport.
+ * The transports are tried one at a time, in order. A transport that fails,
+ * or does not connect within the attempt delay, is stopped and the next one
+ * is tried. The transports are never raced, as they share the connection id
+ * and the server only keeps the last one that connected. The transport that
+ * connected is tried first on the following starts to the same URL, unless
+ * it only connected because a transport before it ran out of time
  */
 public class AutomaticTransport extends HttpClientTransport {
 
+    private static final Map<String, PreferredTransport> preferredTransports = new ConcurrentHashMap<>();
+
     private List<ClientTransport> transports;
-    private ClientTransport realTransport;
+    private volatile ClientTransport realTransport;
+    private volatile boolean tryWebSockets = true;
+    private long attemptDelay = 5000;
+    private long preferredTransportTtl = 10 * 60 * 1000;
 
     /**
      * Initializes the transport with a NullLogger
@@ -51,6 +67,24 @@ public class AutomaticTransport extends HttpClientTransport {
         initialize(logger);
     }
 
+    /**
+     * Initializes the transport with the transports to try
+     * 
+     * @param logger
+     *            the logger
+     * @param transports
+     *            the transports, in order of preference
+     */
+    public AutomaticTransport(Logger logger, List<ClientTransport> transports) {
+        super(logger);
+
+        if (transports == null || transports.isEmpty()) {
+            throw new IllegalArgumentException("transports cannot be empty");
+        }
+
+        this.transports = new ArrayList<>(transports);
+    }
+
     private void initialize(Logger logger) {
         transports = new ArrayList<>();
         transports.add(new WebsocketTransport(logger));
@@ -76,55 +110,286 @@ public class AutomaticTransport extends HttpClientTransport {
         return false;
     }
 
-    private void resolveTransport(final ConnectionBase connection, final ConnectionType connectionType, final DataResultCallback callback,
-            final int currentTransportIndex, final SignalRFuture<Void> startFuture) {
-        final ClientTransport currentTransport = transports.get(currentTransportIndex);
+    /**
+     * Returns how long a transport is given to connect before the next one is
+     * tried, in milliseconds
+     */
+    public long getAttemptDelay() {
+        return attemptDelay;
+    }
 
-        final SignalRFuture<Void> transportStart = currentTransport.start(connection, connectionType, callback);
+    /**
+     * Sets how long a transport is given to connect. A transport that did
+     * not connect in time is stopped and the next one is tried. The last
+     * transport is given as long as it needs. The default is 5 seconds, as
+     * a WebSocket connect over a slow or secure link can take more than a
+     * second
+     * 
+     * @param attemptDelay
+     *            The delay in milliseconds, or 0 to only try the next
+     *            transport once the previous one failed
+     */
+    public void setAttemptDelay(long attemptDelay) {
+        if (attemptDelay < 0) {
+            throw new IllegalArgumentException("attemptDelay cannot be negative");
+        }
 
-        transportStart.done(obj -> {
-            // set the real transport and trigger end the start future
-            realTransport = currentTransport;
-            startFuture.setResult(null);
-        });
+        this.attemptDelay = attemptDelay;
+    }
 
-        final ErrorCallback handleError = error -> {
+    /**
+     * Returns how long the transport that connected to an URL is tried first,
+     * in milliseconds
+     */
+    public long getPreferredTransportTtl() {
+        return preferredTransportTtl;
+    }
 
-            // if the transport is already started, forward the error
-            if (realTransport != null) {
-                startFuture.triggerError(error);
-                return;
+    /**
+     * Sets how long the transport that connected to an URL is tried first on
+     * the following starts
+     * 
+     * @param preferredTransportTtl
+     *            The time in milliseconds, or 0 to always use the default
+     *            order
+     */
+    public void setPreferredTransportTtl(long preferredTransportTtl) {
+        if (preferredTransportTtl < 0) {
+            throw new IllegalArgumentException("preferredTransportTtl cannot be negative");
+        }
+
+        this.preferredTransportTtl = preferredTransportTtl;
+    }
+
+    /**
+     * Forgets the transports that connected to every URL
+     */
+    public static void clearPreferredTransports() {
+        preferredTransports.clear();
+    }
+
+    @Override
+    public SignalRFuture<NegotiationResponse> negotiate(ConnectionBase connection) {
+        SignalRFuture<NegotiationResponse> negotiation = super.negotiate(connection);
+
+        negotiation.done(response -> tryWebSockets = response.shouldTryWebSockets());
+
+        return negotiation;
+    }
+
+    /**
+     * Returns the transports to try, the one that connected last time to the
+     * URL first
+     */
+    private List<ClientTransport> getCandidates(String url) {
+        List<ClientTransport> candidates = new ArrayList<>(transports.size());
+
+        for (ClientTransport transport : transports) {
+            if (tryWebSockets || !(transport instanceof WebsocketTransport)) {
+                candidates.add(transport);
             }
+        }
 
-            log(String.format("Auto: Faild to connect using transport %s. %s", currentTransport.getName(), error.toString()), LogLevel.INFORMATION);
-            int next = currentTransportIndex + 1;
-            if (next < transports.size()) {
-                resolveTransport(connection, connectionType, callback, next, startFuture);
+        PreferredTransport preferred = preferredTransports.get(url);
+        if (preferred != null) {
+            if (System.currentTimeMillis() - preferred.time > preferredTransportTtl) {
+                preferredTransports.remove(url, preferred);
             } else {
-                startFuture.triggerError(error);
+                for (int i = 0; i < candidates.size(); i++) {
+                    if (candidates.get(i).getName().equals(preferred.name)) {
+                        candidates.add(0, candidates.remove(i));
+                        break;
+                    }
+                }
             }
-        };
+        }
 
-        transportStart.onError(handleError);
+        return candidates;
+    }
 
-        startFuture.onCancelled(() -> {
-            // if the transport is already started, forward the cancellation
-            if (realTransport != null) {
-                transportStart.cancel();
+    private void startAttempt(final TransportSelection selection) {
+        final ClientTransport candidate;
+        final SignalRFuture<Void> pending;
+
+        synchronized (selection) {
+            if (selection.finished || selection.next >= selection.candidates.size()) {
                 return;
             }
 
-            handleError.onError(new Exception("Operation cancelled"));
+            if (selection.nextAttemptTask != null) {
+                selection.nextAttemptTask.cancel(false);
+                selection.nextAttemptTask = null;
+            }
+
+            pending = selection.attempt;
+            selection.attempt = null;
+            if (pending != null) {
+                selection.attemptTimedOut = true;
+            }
+
+            candidate = selection.candidates.get(selection.next++);
+            selection.current = candidate;
+        }
+
+        // the transports share the connection id, and the server only keeps
+        // the last one that connected, so the attempt that ran out of time is
+        // stopped before the next one starts
+        if (pending != null) {
+            log("Auto: Transport did not connect in time, stopping it", LogLevel.VERBOSE);
+            pending.cancel();
+        }
+
+        log("Auto: Trying transport " + candidate.getName(), LogLevel.VERBOSE);
+
+        // only the selected transport delivers data to the connection
+        final SignalRFuture<Void> attempt = candidate.start(selection.connection, selection.connectionType, new DataResultCallback() {
+
+            @Override
+            public void onData(String data) {
+                if (selection.winner == candidate) {
+                    selection.callback.onData(data);
+                }
+            }
+
+            @Override
+            public void onData(ByteBuffer data) {
+                if (selection.winner == candidate) {
+                    selection.callback.onData(data);
+                }
+            }
         });
+
+        boolean stopped;
+        synchronized (selection) {
+            stopped = selection.finished || selection.current != candidate;
+
+            if (!stopped) {
+                selection.attempt = attempt;
+
+                if (attemptDelay > 0 && selection.next < selection.candidates.size()) {
+                    // the transport start might block, so it does not run on
+                    // the timer
+                    selection.nextAttemptTask = SharedTimer.schedule(() -> SharedTimer.execute(() -> startAttempt(selection)), attemptDelay,
+                            TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        if (stopped) {
+            attempt.cancel();
+            return;
+        }
+
+        attempt.done(obj -> onAttemptSucceeded(selection, candidate, attempt));
+        attempt.onError(error -> onAttemptFailed(selection, candidate, error));
+    }
+
+    private void onAttemptSucceeded(TransportSelection selection, ClientTransport candidate, SignalRFuture<Void> attempt) {
+        synchronized (selection) {
+            if (selection.finished || selection.current != candidate) {
+                log("Auto: Transport " + candidate.getName() + " connected after being stopped", LogLevel.VERBOSE);
+                attempt.cancel();
+                return;
+            }
+
+            selection.finished = true;
+            selection.winner = candidate;
+            selection.attempt = null;
+
+            if (selection.nextAttemptTask != null) {
+                selection.nextAttemptTask.cancel(false);
+                selection.nextAttemptTask = null;
+            }
+        }
+
+        log("Auto: Connected using transport " + candidate.getName(), LogLevel.INFORMATION);
+
+        realTransport = candidate;
+
+        // a transport that only connected because the one before it ran out
+        // of time is not remembered, that one might connect next time
+        if (preferredTransportTtl > 0 && !selection.attemptTimedOut) {
+            preferredTransports.put(selection.connection.getUrl(), new PreferredTransport(candidate.getName()));
+        }
+
+        selection.startFuture.setResult(null);
+    }
+
+    private void onAttemptFailed(TransportSelection selection, ClientTransport candidate, Throwable error) {
+        boolean startNext = false;
+
+        synchronized (selection) {
+            if (selection.winner == candidate) {
+                // the transport is already started, forward the error
+                selection.startFuture.triggerError(error);
+                return;
+            }
+
+            if (selection.finished || selection.current != candidate) {
+                // an attempt that was stopped
+                return;
+            }
+
+            log(String.format("Auto: Faild to connect using transport %s. %s", candidate.getName(), error.toString()), LogLevel.INFORMATION);
+
+            PreferredTransport preferred = preferredTransports.get(selection.connection.getUrl());
+            if (preferred != null && preferred.name.equals(candidate.getName())) {
+                preferredTransports.remove(selection.connection.getUrl(), preferred);
+            }
+
+            selection.attempt = null;
+
+            if (selection.next < selection.candidates.size()) {
+                startNext = true;
+            } else {
+                selection.finished = true;
+            }
+        }
+
+        if (startNext) {
+            startAttempt(selection);
+        } else {
+            selection.startFuture.triggerError(error);
+        }
     }
 
     @Override
     public SignalRFuture<Void> start(final ConnectionBase connection, final ConnectionType connectionType, final DataResultCallback callback) {
-        SignalRFuture<Void> startFuture = new SignalRFuture<>();
+        if (connectionType == ConnectionType.RECONNECTION && realTransport != null) {
+            // reconnections keep the transport that was negotiated
+            return realTransport.start(connection, connectionType, callback);
+        }
+
+        realTransport = null;
+
+        final TransportSelection selection = new TransportSelection(connection, connectionType, callback, getCandidates(connection.getUrl()));
+
+        selection.startFuture.onCancelled(() -> {
+            SignalRFuture<Void> pending;
+            synchronized (selection) {
+                selection.finished = true;
+
+                if (selection.nextAttemptTask != null) {
+                    selection.nextAttemptTask.cancel(false);
+                    selection.nextAttemptTask = null;
+                }
+
+                pending = selection.attempt;
+                selection.attempt = null;
+            }
+
+            if (pending != null) {
+                pending.cancel();
+            }
+        });
 
-        resolveTransport(connection, connectionType, callback, 0, startFuture);
+        if (selection.candidates.isEmpty()) {
+            selection.startFuture.triggerError(new Exception("No transport available"));
+        } else {
+            startAttempt(selection);
+        }
 
-        return startFuture;
+        return selection.startFuture;
     }
 
     @Override
@@ -144,4 +409,42 @@ public class AutomaticTransport extends HttpClientTransport {
 
         return null;
     }
+
+    /**
+     * Transport that connected to an URL
+     */
+    private static class PreferredTransport {
+        private final String name;
+        private final long time = System.currentTimeMillis();
+
+        PreferredTransport(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * State of the attempts made to start the transport. Only one attempt is
+     * pending at a time
+     */
+    private static class TransportSelection {
+        private final ConnectionBase connection;
+        private final ConnectionType connectionType;
+        private final DataResultCallback callback;
+        private final List<ClientTransport> candidates;
+        private final SignalRFuture<Void> startFuture = new SignalRFuture<>();
+        private int next = 0;
+        private boolean finished = false;
+        private boolean attemptTimedOut = false;
+        private ClientTransport current;
+        private SignalRFuture<Void> attempt;
+        private volatile ClientTransport winner;
+        private ScheduledFuture<?> nextAttemptTask;
+
+        TransportSelection(ConnectionBase connection, ConnectionType connectionType, DataResultCallback callback, List<ClientTransport> candidates) {
+            this.connection = connection;
+            this.connectionType = connectionType;
+            this.callback = callback;
+            this.candidates = candidates;
+        }
+    }
 }
@@ -6,6 +6,8 @@ See License.txt in the project root for license information.
 
 package com.github.signalr4j.client.transport;
 
+import java.nio.ByteBuffer;
+
 /**
  * Callback for data result operations
  */
@@ -18,4 +20,18 @@ public interface DataResultCallback {
      *            data
      */
     public void onData(String data);
+
+    /**
+     * Callback invoked when there is new UTF-8 encoded data from the server.
+     * Transports that receive bytes call it so that the data can be parsed
+     * without being decoded to a String. The buffer is only valid during the
+     * call and must not be modified. By default the data is decoded and passed
+     * to onData(String)
+     * 
+     * @param data
+     *            UTF-8 data
+     */
+    public default void onData(ByteBuffer data) {
+        onData(Utf8Reader.decode(data));
+    }
 }
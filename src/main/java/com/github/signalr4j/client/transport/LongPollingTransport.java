@@ -49,6 +49,19 @@ public class LongPollingTransport extends HttpClientTransport {
         return false;
     }
 
+    @Override
+    public SignalRFuture<Void> abort(ConnectionBase connection) {
+        synchronized (pollSync) {
+            // the pending poll would otherwise keep the loop going
+            if (connectionFuture != null) {
+                connectionFuture.cancel();
+                connectionFuture = null;
+            }
+        }
+
+        return super.abort(connection);
+    }
+
     @Override
     public SignalRFuture<Void> start(ConnectionBase connection, ConnectionType connectionType, DataResultCallback callback) {
         return poll(connection, connectionType == ConnectionType.INITIAL_CONNECTION ? "connect" : "reconnect", callback);
@@ -78,7 +91,10 @@ public class LongPollingTransport extends HttpClientTransport {
             connection.prepareRequest(get);
 
             log("Execute the request", LogLevel.VERBOSE);
-            connectionFuture = new UpdateableCancellableFuture<>(null);
+            // the handlers use their own future, as a reconnect starts a new
+            // poll loop before this one ends
+            final UpdateableCancellableFuture<Void> pollFuture = new UpdateableCancellableFuture<>(null);
+            connectionFuture = pollFuture;
 
             final HttpConnectionFuture future = httpConnection.execute(get, response -> {
                 synchronized (pollSync) {
@@ -86,7 +102,7 @@ public class LongPollingTransport extends HttpClientTransport {
                         throwOnInvalidStatusCode(response);
 
                         if (!"poll".equals(connectionUrl)) {
-                            connectionFuture.setResult(null);
+                            pollFuture.setResult(null);
                         }
                         log("Response received", LogLevel.VERBOSE);
 
@@ -99,14 +115,18 @@ public class LongPollingTransport extends HttpClientTransport {
                         log("Trigger onData with data: " + responseData, LogLevel.VERBOSE);
                         callback.onData(responseData);
 
-                        if (!connectionFuture.isCancelled() && connection.getState() == ConnectionState.CONNECTED) {
+                        // the connect response can be handled before the
+                        // connection is marked as connected
+                        ConnectionState state = connection.getState();
+                        boolean active = state == ConnectionState.CONNECTED || (!"poll".equals(connectionUrl) && state != ConnectionState.DISCONNECTED);
+                        if (!pollFuture.isCancelled() && active) {
                             log("Continue polling", LogLevel.VERBOSE);
-                            connectionFuture.setFuture(poll(connection, "poll", callback));
+                            pollFuture.setFuture(poll(connection, "poll", callback));
                         }
                     } catch (Throwable e) {
-                        if (!connectionFuture.isCancelled()) {
+                        if (!pollFuture.isCancelled()) {
                             log(e);
-                            connectionFuture.triggerError(e);
+                            pollFuture.triggerError(e);
                         }
                     }
                 }
@@ -116,7 +136,7 @@ public class LongPollingTransport extends HttpClientTransport {
                 synchronized (pollSync) {
                     if (connectionUrl.equals("poll")) {
                         // if the poll request timed out, it should re-poll
-                        connectionFuture.setFuture(poll(connection, "poll", callback));
+                        pollFuture.setFuture(poll(connection, "poll", callback));
                     } else {
                         future.triggerError(error);
                     }
@@ -125,13 +145,15 @@ public class LongPollingTransport extends HttpClientTransport {
 
             future.onError(error -> {
                 synchronized (pollSync) {
-                    connectionFuture.triggerError(error);
+                    if (!pollFuture.isCancelled()) {
+                        pollFuture.triggerError(error);
+                    }
                 }
             });
 
-            connectionFuture.setFuture(future);
+            pollFuture.setFuture(future);
 
-            return connectionFuture;
+            return pollFuture;
         }
     }
 }
@@ -0,0 +1,247 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.transport;
+
+import java.io.File;
+import java.util.concurrent.locks.LockSupport;
+
+import com.github.signalr4j.client.Connection;
+import com.github.signalr4j.client.ConnectionBase;
+import com.github.signalr4j.client.LogLevel;
+import com.github.signalr4j.client.Logger;
+import com.github.signalr4j.client.SignalRFuture;
+import com.github.signalr4j.client.recording.WireLogReader;
+import com.github.signalr4j.client.recording.WireRecord;
+
+/**
+ * ClientTransport implementation that plays a wire log recorded by a
+ * WireRecorder, to run the handlers of a connection on a real session
+ * offline. The received payloads go through the same processing as the
+ * payloads of a network transport, and the sent payloads are discarded.
+ *
+ * The transport connects at once, and the payloads are played when replay
+ * is called, on a dedicated thread. The original timing is kept, scaled by
+ * the speed. The keep alive is disabled, so the pauses of the session never
+ * cause a reconnection
+ */
+public class ReplayTransport implements ClientTransport {
+
+    /**
+     * Speed that plays the payloads with their original timing
+     */
+    public static final double REAL_TIME = 1;
+
+    /**
+     * Speed that plays the payloads without waiting between them
+     */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private final File directory;
+
+    private final Logger logger;
+
+    private volatile double speed = REAL_TIME;
+
+    private volatile DataResultCallback callback;
+
+    private volatile SignalRFuture<Void> startFuture;
+
+    private SignalRFuture<Void> replayFuture;
+
+    private volatile long replayedCount = 0;
+
+    /**
+     * Initializes the transport
+     *
+     * @param directory
+     *            The directory of the wire log
+     * @param logger
+     *            The logger
+     */
+    public ReplayTransport(File directory, Logger logger) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory cannot be null");
+        }
+
+        if (logger == null) {
+            throw new IllegalArgumentException("logger cannot be null");
+        }
+
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    /**
+     * Sets the speed of the next replay
+     *
+     * @param speed
+     *            The speed relative to the recorded session, e.g. REAL_TIME,
+     *            10 to play ten times faster or AS_FAST_AS_POSSIBLE
+     */
+    public void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed must be positive");
+        }
+
+        this.speed = speed;
+    }
+
+    /**
+     * Returns the speed of the replay
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Returns the number of received payloads played
+     */
+    public long getReplayedCount() {
+        return replayedCount;
+    }
+
+    @Override
+    public String getName() {
+        return "replay";
+    }
+
+    @Override
+    public boolean supportKeepAlive() {
+        return false;
+    }
+
+    @Override
+    public SignalRFuture<NegotiationResponse> negotiate(ConnectionBase connection) {
+        NegotiationResponse negotiation = new NegotiationResponse(null, null);
+        negotiation.setConnectionId("replay");
+        negotiation.setConnectionToken("replay");
+        negotiation.setUrl(connection.getUrl());
+        negotiation.setProtocolVersion(Connection.PROTOCOL_VERSION.toString());
+        negotiation.setDisconnectTimeout(30);
+        negotiation.setTryWebSockets(false);
+        negotiation.setKeepAliveTimeout(NegotiationResponse.INVALID_KEEP_ALIVE_TIMEOUT);
+
+        SignalRFuture<NegotiationResponse> future = new SignalRFuture<>();
+        future.setResult(negotiation);
+        return future;
+    }
+
+    @Override
+    public SignalRFuture<Void> start(ConnectionBase connection, ConnectionType connectionType, DataResultCallback callback) {
+        final SignalRFuture<Void> future = new SignalRFuture<>();
+        this.callback = callback;
+        startFuture = future;
+
+        // the connection cancels the transport when it is stopped
+        future.onCancelled(() -> {
+            if (startFuture == future) {
+                stopReplay();
+            }
+        });
+
+        future.setResult(null);
+        return future;
+    }
+
+    @Override
+    public SignalRFuture<Void> send(ConnectionBase connection, String data, DataResultCallback callback) {
+        SignalRFuture<Void> future = new SignalRFuture<>();
+        future.setResult(null);
+        return future;
+    }
+
+    @Override
+    public SignalRFuture<Void> abort(ConnectionBase connection) {
+        SignalRFuture<Void> future = new SignalRFuture<>();
+        future.setResult(null);
+        return future;
+    }
+
+    /**
+     * Plays the received payloads of the wire log. The connection must be
+     * connected
+     *
+     * @return A Future that completes after the last payload was processed,
+     *         and that stops the replay when cancelled
+     */
+    public synchronized SignalRFuture<Void> replay() {
+        if (callback == null) {
+            throw new IllegalStateException("The transport is not started");
+        }
+
+        if (replayFuture != null && !replayFuture.isDone() && !replayFuture.isCancelled()) {
+            throw new IllegalStateException("The wire log is already being replayed");
+        }
+
+        final SignalRFuture<Void> future = new SignalRFuture<>();
+        replayFuture = future;
+
+        Thread thread = new Thread(() -> play(future), "signalr4j-replay");
+        thread.setDaemon(true);
+        future.onCancelled(() -> LockSupport.unpark(thread));
+        thread.start();
+
+        return future;
+    }
+
+    private synchronized void stopReplay() {
+        if (replayFuture != null) {
+            replayFuture.cancel();
+        }
+    }
+
+    private void play(SignalRFuture<Void> future) {
+        double speed = this.speed;
+        log("Replaying " + directory + " at speed " + speed, LogLevel.INFORMATION);
+
+        try (WireLogReader reader = new WireLogReader(directory)) {
+            long firstTimestamp = -1;
+            long startTime = System.nanoTime();
+
+            for (WireRecord record = reader.next(); record != null && !future.isCancelled(); record = reader.next()) {
+                if (record.getDirection() != WireRecord.Direction.RECEIVED) {
+                    continue;
+                }
+
+                if (firstTimestamp < 0) {
+                    firstTimestamp = record.getTimestamp();
+                }
+
+                if (speed != AS_FAST_AS_POSSIBLE) {
+                    long dueTime = startTime + (long) ((record.getTimestamp() - firstTimestamp) / speed);
+                    for (long wait = dueTime - System.nanoTime(); wait > 0 && !future.isCancelled(); wait = dueTime - System.nanoTime()) {
+                        LockSupport.parkNanos(wait);
+                    }
+
+                    if (future.isCancelled()) {
+                        break;
+                    }
+                }
+
+                callback.onData(record.getData());
+                replayedCount++;
+            }
+        } catch (Exception e) {
+            log(e);
+            future.triggerError(e);
+            return;
+        }
+
+        log("Replayed " + replayedCount + " payloads", LogLevel.INFORMATION);
+        if (!future.isCancelled()) {
+            future.setResult(null);
+        }
+    }
+
+    private void log(String message, LogLevel level) {
+        logger.log(getName() + " - " + message, level);
+    }
+
+    private void log(Throwable error) {
+        logger.log(getName() + " - Error: " + error.toString(), LogLevel.CRITICAL);
+    }
+}
@@ -8,6 +8,7 @@ package com.github.signalr4j.client.transport;
 
 import com.github.signalr4j.client.*;
 import com.github.signalr4j.client.http.HttpConnection;
+import com.github.signalr4j.client.http.HttpConnectionFuture;
 import com.github.signalr4j.client.http.Request;
 
 /**
@@ -19,8 +20,6 @@ public class ServerSentEventsTransport extends HttpClientTransport {
     private static final String DATA_INITIALIZED = "data: initialized";
     private static final String END_OF_SSE_MESSAGE = "\n\n";
 
-    private SignalRFuture<Void> connectionFuture;
-
     /**
      * Initializes the transport with a logger
      * 
@@ -68,7 +67,12 @@ public class ServerSentEventsTransport extends HttpClientTransport {
         connection.prepareRequest(get);
 
         log("Execute the request", LogLevel.VERBOSE);
-        connectionFuture = httpConnection.execute(get, response -> {
+
+        // the response can be handled before execute returns, so the future
+        // must exist before the request is sent
+        final UpdateableCancellableFuture<Void> connectionFuture = new UpdateableCancellableFuture<>(null);
+
+        HttpConnectionFuture requestFuture = httpConnection.execute(get, response -> {
             try {
                 log("Response received", LogLevel.VERBOSE);
                 throwOnInvalidStatusCode(response);
@@ -107,6 +111,14 @@ public class ServerSentEventsTransport extends HttpClientTransport {
             }
         });
 
+        requestFuture.onError(error -> {
+            if (!connectionFuture.isCancelled()) {
+                connectionFuture.triggerError(error);
+            }
+        });
+
+        connectionFuture.setFuture(requestFuture);
+
         return connectionFuture;
     }
 }
@@ -7,16 +7,18 @@ See License.txt in the project root for license information.
 package com.github.signalr4j.client.transport;
 
 import com.github.signalr4j.client.*;
+import com.github.signalr4j.client.metrics.Metrics;
+import com.github.signalr4j.client.metrics.NullMetrics;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 
 public class TransportHelper {
     public static MessageResult processReceivedData(String data, ConnectionBase connection) {
-        Logger logger = connection.getLogger();
         MessageResult result = new MessageResult();
         
         if (data == null) {
@@ -31,6 +33,8 @@ public class TransportHelper {
 
         JsonObject json;
 
+        boolean measured = NullMetrics.isEnabled(connection.getMetrics());
+        long parseStart = measured ? System.nanoTime() : 0;
         try {
             json = connection.getJsonParser().parse(data).getAsJsonObject();
         } catch (Exception e) {
@@ -38,15 +42,70 @@ public class TransportHelper {
             return result;
         }
 
+        return processReceivedJson(json, measured ? utf8Length(data) : 0, parseStart, connection, result);
+    }
+
+    /**
+     * Processes UTF-8 received data, parsing it straight from the bytes
+     * instead of decoding it to a String first
+     * 
+     * @param data
+     *            The received data, between the position and the limit of the
+     *            buffer, which is not modified
+     * @param connection
+     *            Current connection
+     * @return The result of the processing
+     */
+    public static MessageResult processReceivedData(ByteBuffer data, ConnectionBase connection) {
+        MessageResult result = new MessageResult();
+
+        if (data == null || Utf8Reader.isBlank(data)) {
+            return result;
+        }
+
+        JsonObject json;
+
+        long parseStart = NullMetrics.isEnabled(connection.getMetrics()) ? System.nanoTime() : 0;
+        try {
+            json = connection.getJsonParser().parse(new Utf8Reader(data)).getAsJsonObject();
+        } catch (Exception e) {
+            connection.onError(e, false);
+            return result;
+        }
+
+        return processReceivedJson(json, data.remaining(), parseStart, connection, result);
+    }
+
+    private static MessageResult processReceivedJson(JsonObject json, int length, long parseStart, ConnectionBase connection, MessageResult result) {
+        Logger logger = connection.getLogger();
+        Metrics metrics = connection.getMetrics();
+
+        // the clock is not read when nothing records the timings
+        boolean measured = NullMetrics.isEnabled(metrics);
+        long dispatchStart = 0;
+        if (measured) {
+            dispatchStart = System.nanoTime();
+            metrics.parsed(dispatchStart - parseStart);
+        }
+
         if (json.entrySet().size() == 0) {
+            metrics.received(0, length);
             return result;
         }
 
         if (json.get("I") != null) {
+            metrics.received(1, length);
             logger.log("Invoking message received with: " + json, LogLevel.VERBOSE);
             connection.onReceived(json);
+            if (measured) {
+                metrics.dispatched(System.nanoTime() - dispatchStart);
+            }
         } else {
 
+            JsonElement messages = json.get("M");
+            int messageCount = messages != null && messages.isJsonArray() ? messages.getAsJsonArray().size() : 0;
+            metrics.received(messageCount, length);
+
             // disconnected
             if (json.get("D") != null) {
                 if (json.get("D").getAsInt() == 1) {
@@ -70,7 +129,6 @@ public class TransportHelper {
                 connection.setGroupsToken(groupsToken);
             }
 
-            JsonElement messages = json.get("M");
             if (messages != null && messages.isJsonArray()) {
 
                 if (json.get("C") != null) {
@@ -89,6 +147,10 @@ public class TransportHelper {
                     logger.log("Invoking OnReceived with: " + processedMessage, LogLevel.VERBOSE);
                     connection.onReceived(message);
                 }
+
+                if (measured) {
+                    metrics.dispatched(System.nanoTime() - dispatchStart);
+                }
             }
 
             if (json.get("S") != null) {
@@ -191,6 +253,38 @@ public class TransportHelper {
         return qsBuilder.toString();
     }
 
+    /**
+     * Returns the size of a string once UTF-8 encoded, without encoding it
+     * 
+     * @param s
+     *            The string
+     * @return The number of bytes, 0 for null
+     */
+    public static int utf8Length(String s) {
+        if (s == null) {
+            return 0;
+        }
+
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes++;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    // 4 bytes for the pair
+                    bytes += 2;
+                    i++;
+                } else {
+                    bytes += 2;
+                }
+            }
+        }
+
+        return bytes;
+    }
+
     public static String urlEncode(String s) {
         if (s == null) {
             return "";
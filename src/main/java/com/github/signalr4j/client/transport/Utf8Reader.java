@@ -0,0 +1,239 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.transport;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the characters of UTF-8 encoded bytes, so that a JSON parser can read
+ * a received payload without decoding it to a String first. The bytes between
+ * the position and the limit of the buffer are read with absolute gets, the
+ * buffer itself is not modified. ASCII bytes, which make most of the SignalR
+ * messages, are copied as they are. Malformed sequences are read as the
+ * replacement character
+ */
+public class Utf8Reader extends Reader {
+
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+
+    private final ByteBuffer buffer;
+
+    private final byte[] array;
+
+    private final int arrayOffset;
+
+    private final int limit;
+
+    private int position;
+
+    private char pendingLowSurrogate;
+
+    /**
+     * Initializes the reader
+     *
+     * @param buffer
+     *            The UTF-8 bytes
+     */
+    public Utf8Reader(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("buffer cannot be null");
+        }
+
+        this.buffer = buffer;
+        array = buffer.hasArray() ? buffer.array() : null;
+        arrayOffset = buffer.hasArray() ? buffer.arrayOffset() : 0;
+        position = buffer.position();
+        limit = buffer.limit();
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        if (pendingLowSurrogate != 0) {
+            chars[offset + count++] = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+        }
+
+        while (count < length && position < limit) {
+            int b = byteAt(position);
+
+            if (b >= 0) {
+                chars[offset + count++] = (char) b;
+                position++;
+                continue;
+            }
+
+            int codePoint = decode(b);
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                chars[offset + count++] = (char) codePoint;
+            } else {
+                chars[offset + count++] = Character.highSurrogate(codePoint);
+                if (count < length) {
+                    chars[offset + count++] = Character.lowSurrogate(codePoint);
+                } else {
+                    pendingLowSurrogate = Character.lowSurrogate(codePoint);
+                }
+            }
+        }
+
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public int read() {
+        if (pendingLowSurrogate != 0) {
+            char c = pendingLowSurrogate;
+            pendingLowSurrogate = 0;
+            return c;
+        }
+
+        if (position >= limit) {
+            return -1;
+        }
+
+        int b = byteAt(position);
+        if (b >= 0) {
+            position++;
+            return b;
+        }
+
+        int codePoint = decode(b);
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            return codePoint;
+        }
+
+        pendingLowSurrogate = Character.lowSurrogate(codePoint);
+        return Character.highSurrogate(codePoint);
+    }
+
+    @Override
+    public boolean ready() {
+        return pendingLowSurrogate != 0 || position < limit;
+    }
+
+    @Override
+    public void close() {
+        position = limit;
+        pendingLowSurrogate = 0;
+    }
+
+    /**
+     * Decodes the multi-byte sequence starting with the given lead byte and
+     * moves past it
+     */
+    private int decode(int lead) {
+        int continuations;
+        int codePoint;
+        int minimum;
+
+        if ((lead & 0xE0) == 0xC0) {
+            continuations = 1;
+            codePoint = lead & 0x1F;
+            minimum = 0x80;
+        } else if ((lead & 0xF0) == 0xE0) {
+            continuations = 2;
+            codePoint = lead & 0x0F;
+            minimum = 0x800;
+        } else if ((lead & 0xF8) == 0xF0) {
+            continuations = 3;
+            codePoint = lead & 0x07;
+            minimum = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            // a continuation byte without a lead byte
+            position++;
+            return REPLACEMENT_CHARACTER;
+        }
+
+        position++;
+        for (int i = 0; i < continuations; i++) {
+            if (position >= limit) {
+                return REPLACEMENT_CHARACTER;
+            }
+
+            int b = byteAt(position);
+            if ((b & 0xC0) != 0x80) {
+                // the byte starts the next character
+                return REPLACEMENT_CHARACTER;
+            }
+
+            codePoint = (codePoint << 6) | (b & 0x3F);
+            position++;
+        }
+
+        if (codePoint < minimum || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return REPLACEMENT_CHARACTER;
+        }
+
+        return codePoint;
+    }
+
+    private int byteAt(int index) {
+        return array != null ? array[arrayOffset + index] : buffer.get(index);
+    }
+
+    /**
+     * Returns true if the bytes between the position and the limit of the
+     * buffer are all whitespace or control characters, like an empty String
+     * once trimmed
+     *
+     * @param buffer
+     *            The UTF-8 bytes
+     * @return True if there is nothing to parse
+     */
+    public static boolean isBlank(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b < 0 || b > ' ') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decodes UTF-8 bytes to a String, without modifying the buffer. ASCII
+     * bytes are copied without going through the UTF-8 decoder
+     *
+     * @param buffer
+     *            The UTF-8 bytes, or null
+     * @return The decoded String, or null
+     */
+    public static String decode(ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+
+        int length = buffer.remaining();
+        byte[] bytes;
+        int offset;
+        if (buffer.hasArray()) {
+            bytes = buffer.array();
+            offset = buffer.arrayOffset() + buffer.position();
+        } else {
+            bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            offset = 0;
+        }
+
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, offset, length, StandardCharsets.UTF_8);
+            }
+        }
+
+        // the first 128 ISO-8859-1 characters are the ASCII ones
+        return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+    }
+}
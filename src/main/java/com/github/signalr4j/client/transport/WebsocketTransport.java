@@ -9,18 +9,27 @@ package com.github.signalr4j.client.transport;
 import com.github.signalr4j.client.*;
 import com.github.signalr4j.client.http.HttpConnection;
 import com.google.gson.Gson;
+import org.java_websocket.WebSocket;
+import org.java_websocket.WebSocketImpl;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft;
 import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
 import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.framing.Framedata;
 import org.java_websocket.handshake.ServerHandshake;
 import org.java_websocket.util.Charsetfunctions;
 
-import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.StringJoiner;
@@ -43,10 +52,20 @@ public class WebsocketTransport extends HttpClientTransport {
 	private static final String WEBSOCKET_URL_START = WEBSCOCKET_SCHEME + "://";
 	private static final String SECURE_WEBSOCKET_URL_START = SECURE_WEBSOCKET_SCHEME + "://";
 
+	private static final int DEFAULT_HTTPS_PORT = 443;
+	private static final int DEFAULT_HTTP_PORT = 80;
+
+	private static volatile SSLContext defaultSslContext;
+
 	private String mPrefix;
 	private static final Gson gson = new Gson();
-	WebSocketClient mWebSocketClient;
+	volatile WebSocketClient mWebSocketClient;
 	private UpdateableCancellableFuture<Void> mConnectionFuture;
+	private SSLContext mSslContext;
+	private Proxy mProxy;
+	private volatile long mLastConnectTime = -1;
+	private volatile long mLastHandshakeTime = -1;
+	private volatile boolean mLastSessionResumed = false;
 
 	public WebsocketTransport(Logger logger) {
 		super(logger);
@@ -56,6 +75,76 @@ public class WebsocketTransport extends HttpClientTransport {
 		super(logger, httpConnection);
 	}
 
+	/**
+	 * Returns the SSLContext used by the transports that don't have their own.
+	 * Sharing a single context lets its session cache resume the TLS sessions
+	 * of previous connections, instead of doing a full handshake on every
+	 * connect and reconnect
+	 */
+	public static SSLContext getDefaultSslContext() throws NoSuchAlgorithmException {
+		SSLContext context = defaultSslContext;
+		if (context == null) {
+			context = SSLContext.getDefault();
+			defaultSslContext = context;
+		}
+
+		return context;
+	}
+
+	/**
+	 * Sets the SSLContext used by the transports that don't have their own
+	 *
+	 * @param sslContext
+	 *            The SSLContext, or null to use the JVM default
+	 */
+	public static void setDefaultSslContext(SSLContext sslContext) {
+		defaultSslContext = sslContext;
+	}
+
+	/**
+	 * Sets the SSLContext used by this transport for secure connections
+	 *
+	 * @param sslContext
+	 *            The SSLContext, or null to use the default one
+	 */
+	public void setSslContext(SSLContext sslContext) {
+		mSslContext = sslContext;
+	}
+
+	/**
+	 * Sets the proxy used to open the WebSocket connections
+	 *
+	 * @param proxy
+	 *            A SOCKS or HTTP proxy, Proxy.NO_PROXY to connect directly, or
+	 *            null to use the platform proxy settings
+	 */
+	public void setProxy(Proxy proxy) {
+		mProxy = proxy;
+	}
+
+	/**
+	 * Returns the time the last TCP connect took in milliseconds, or -1 if the
+	 * transport never connected
+	 */
+	public long getLastConnectTime() {
+		return mLastConnectTime;
+	}
+
+	/**
+	 * Returns the time the last TLS handshake took in milliseconds, or -1 if
+	 * the transport never made a secure connection
+	 */
+	public long getLastHandshakeTime() {
+		return mLastHandshakeTime;
+	}
+
+	/**
+	 * Returns true if the last TLS handshake resumed a cached session
+	 */
+	public boolean isLastSessionResumed() {
+		return mLastSessionResumed;
+	}
+
 	@Override
 	public String getName() {
 		return "webSockets";
@@ -81,13 +170,13 @@ public class WebsocketTransport extends HttpClientTransport {
 		requestParams.put("connectionToken", connection.getConnectionToken());
 		requestParams.put("connectionData", connection.getConnectionData());
 		requestParams.put("clientProtocol", Connection.PROTOCOL_VERSION.toString());
-//		requestParams.put("groupsToken", connection.getGroupsToken());
-//		requestParams.put("messageId", connection.getMessageId());
+		// the cursor lets the server resume the stream where the previous
+		// transport left it, instead of starting over
+		requestParams.put("groupsToken", connection.getGroupsToken());
+		requestParams.put("messageId", connection.getMessageId());
 		requestParams.put("transport", getName());
 		connection.getLogger().log("WebSocket request params: " + requestParams, LogLevel.VERBOSE);
 
-		boolean isSsl = false;
-
 		StringBuilder urlBuilder = new StringBuilder();
 		urlBuilder.append(connectionUrl);
 		urlBuilder.append(connectionString);
@@ -108,10 +197,6 @@ public class WebsocketTransport extends HttpClientTransport {
 
 		connection.getLogger().log("WebSocket Encoded URL: " + url, LogLevel.VERBOSE);
 
-		if (url.startsWith(SECURE_WEBSOCKET_SCHEME)) {
-			isSsl = true;
-		}
-
 		mConnectionFuture = new UpdateableCancellableFuture<>(null);
 
 		URI uri;
@@ -123,10 +208,36 @@ public class WebsocketTransport extends HttpClientTransport {
 			return mConnectionFuture;
 		}
 
-		mWebSocketClient = new WebSocketClient(uri, new Draft_6455(), connection.getHeaders(), 0) {
+		// a transport is reused across reconnects, so the previous socket
+		// (and its threads) must not outlive the new one
+		closeWebSocket();
+
+		final WebSocketClient webSocketClient = new WebSocketClient(uri, new Utf8TextDraft(callback), connection.getHeaders(), 0) {
 
 			Exception e;
 
+			@Override
+			public void run() {
+				// the socket is opened here rather than by the library, which
+				// would create a new SSLContext (and lose the session cache)
+				// on every connect and ignore the proxy settings
+				try {
+					setSocket(createConnectedSocket(getURI()));
+				} catch (IOException ex) {
+					onError(ex);
+					onClose(CloseFrame.NEVER_CONNECTED, ex.getMessage(), false);
+					return;
+				}
+
+				if (mWebSocketClient != this) {
+					// closed while the socket was connecting
+					closeSocket(this);
+					return;
+				}
+
+				super.run();
+			}
+
 			@Override
 			public void onOpen(ServerHandshake serverHandshake) {
 				mConnectionFuture.setResult(null);
@@ -139,7 +250,12 @@ public class WebsocketTransport extends HttpClientTransport {
 
 			@Override
 			public void onClose(int errorCode, String message, boolean remote) {
-				mWebSocketClient.close();
+				close();
+				if (mWebSocketClient != this) {
+					// closed by the transport, which reports on its own
+					return;
+				}
+
 				if (errorCode != CloseFrame.NORMAL || e != null) {
 					if (e == null) {
 						e = new IllegalStateException("Remote " + remote + ", " + errorCode + " - " + message);
@@ -152,7 +268,7 @@ public class WebsocketTransport extends HttpClientTransport {
 
 			@Override
 			public void onError(Exception e) {
-				mWebSocketClient.close();
+				close();
 				this.e = e;
 			}
 
@@ -192,20 +308,57 @@ public class WebsocketTransport extends HttpClientTransport {
 			}
 		};
 
-		if (isSsl) {
-			SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
-			try {
-				mWebSocketClient.setSocket(factory.createSocket());
-			} catch (IOException e1) {
-				e1.printStackTrace();
+		// a cancelled start (e.g. a losing AutomaticTransport attempt) closes
+		// the socket without aborting the connection on the server
+		mWebSocketClient = webSocketClient;
+		mConnectionFuture.onCancelled(() -> closeWebSocket(webSocketClient));
+
+		webSocketClient.connect();
+
+		return mConnectionFuture;
+	}
+
+	@Override
+	public SignalRFuture<Void> abort(ConnectionBase connection) {
+		closeWebSocket();
+		return super.abort(connection);
+	}
+
+	private void closeWebSocket() {
+		WebSocketClient webSocketClient = mWebSocketClient;
+		if (webSocketClient != null) {
+			closeWebSocket(webSocketClient);
+		}
+	}
+
+	private void closeWebSocket(WebSocketClient webSocketClient) {
+		// clearing the field first tells onClose the socket was not lost
+		synchronized (this) {
+			if (mWebSocketClient == webSocketClient) {
+				mWebSocketClient = null;
 			}
 		}
 
-		mWebSocketClient.connect();
+		boolean connecting = webSocketClient.getReadyState() == WebSocket.READYSTATE.NOT_YET_CONNECTED;
+		webSocketClient.close();
 
-		connection.closed(() -> mWebSocketClient.close());
+		// before the handshake, close() leaves the socket open until the
+		// server answers, and the server would then hand the connection
+		// over to this socket
+		if (connecting) {
+			closeSocket(webSocketClient);
+		}
+	}
 
-		return mConnectionFuture;
+	private static void closeSocket(WebSocketClient webSocketClient) {
+		Socket socket = webSocketClient.getSocket();
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// already closed
+			}
+		}
 	}
 
 	private String encodeValue(String value) {
@@ -224,39 +377,138 @@ public class WebsocketTransport extends HttpClientTransport {
 
 	private Socket createConnectedSocket(URI uri) throws IOException {
 		String host = uri.getHost();
-		boolean isSecureSocket = uri.toString().startsWith(SECURE_WEBSOCKET_URL_START);
-		int port = isSecureSocket ? 443 : 80;
-
-		boolean useProxy = Platform.useProxy();
-		String proxyHost = Platform.getProxyHost();
-		int proxyPort = Platform.getProxyPort();
-		Proxy proxy = useProxy ? new Proxy(Proxy.Type.SOCKS, new InetSocketAddress(proxyHost, proxyPort))
-				: Proxy.NO_PROXY;
-
-		if (isSecureSocket) {
-			SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
-			if (useProxy) {
-				Socket underlyingSocket = new Socket(proxy);
-				underlyingSocket.connect(new InetSocketAddress(host, port), CONNECTION_TIMEOUT_MS);
-				return factory.createSocket(underlyingSocket, proxyHost, proxyPort, true);
-			} else {
-				Socket socket = factory.createSocket();
-				socket.connect(new InetSocketAddress(host, port), CONNECTION_TIMEOUT_MS);
-				return socket;
-			}
-		} else {
-			Socket socket = new Socket(proxy);
+		boolean isSecureSocket = SECURE_WEBSOCKET_SCHEME.equals(uri.getScheme());
+		int port = uri.getPort();
+		if (port == -1) {
+			port = isSecureSocket ? DEFAULT_HTTPS_PORT : DEFAULT_HTTP_PORT;
+		}
+
+		Proxy proxy = mProxy;
+		if (proxy == null) {
+			proxy = Platform.useProxy()
+					? new Proxy(Proxy.Type.SOCKS, new InetSocketAddress(Platform.getProxyHost(), Platform.getProxyPort()))
+					: Proxy.NO_PROXY;
+		}
+
+		long connectStart = System.currentTimeMillis();
+
+		Socket socket = new Socket(proxy);
+		try {
 			socket.connect(new InetSocketAddress(host, port), CONNECTION_TIMEOUT_MS);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+
+		long handshakeStart = System.currentTimeMillis();
+		mLastConnectTime = handshakeStart - connectStart;
+
+		if (!isSecureSocket) {
 			return socket;
 		}
+
+		SSLContext sslContext = mSslContext;
+		try {
+			if (sslContext == null) {
+				sslContext = getDefaultSslContext();
+			}
+		} catch (NoSuchAlgorithmException e) {
+			socket.close();
+			throw new IOException(e);
+		}
+
+		// layering over the connected socket with the server host and port,
+		// not the proxy ones, keeps SNI and the session cache lookup working
+		SSLSocket sslSocket = (SSLSocket) sslContext.getSocketFactory().createSocket(socket, host, port, true);
+		try {
+			// a layered socket does not check the certificate against the
+			// host name by itself, unlike an HttpsURLConnection
+			SSLParameters sslParameters = sslSocket.getSSLParameters();
+			sslParameters.setEndpointIdentificationAlgorithm("HTTPS");
+			sslSocket.setSSLParameters(sslParameters);
+
+			sslSocket.setSoTimeout(CONNECTION_TIMEOUT_MS);
+			sslSocket.startHandshake();
+			sslSocket.setSoTimeout(0);
+		} catch (IOException e) {
+			sslSocket.close();
+			throw e;
+		}
+
+		SSLSession session = sslSocket.getSession();
+		mLastHandshakeTime = System.currentTimeMillis() - handshakeStart;
+		mLastSessionResumed = session.getCreationTime() < handshakeStart;
+
+		log("TLS handshake with " + host + ":" + port + " took " + mLastHandshakeTime + "ms"
+				+ (mLastSessionResumed ? " (session resumed)" : ""), LogLevel.VERBOSE);
+
+		return sslSocket;
 	}
 
 	@Override
 	public SignalRFuture<Void> send(ConnectionBase connection, String data, DataResultCallback callback) {
-		mWebSocketClient.send(data);
+		// fails like a send on a closed socket when the transport is between
+		// two sockets
+		WebSocketClient webSocketClient = mWebSocketClient;
+		if (webSocketClient == null) {
+			throw new WebsocketNotConnectedException();
+		}
+
+		webSocketClient.send(data);
 		return new UpdateableCancellableFuture<>(null);
 	}
 
+	/**
+	 * Delivers the payload of the unfragmented text frames to the callback as
+	 * UTF-8 bytes, so that they are parsed without being decoded to a String.
+	 * Fragmented messages and the other frames are handled by Draft_6455
+	 */
+	private static class Utf8TextDraft extends Draft_6455 {
+
+		private final DataResultCallback callback;
+
+		private boolean fragmented;
+
+		Utf8TextDraft(DataResultCallback callback) {
+			this.callback = callback;
+		}
+
+		@Override
+		public void processFrame(WebSocketImpl webSocket, Framedata frame) throws InvalidDataException {
+			Framedata.Opcode opcode = frame.getOpcode();
+
+			if (opcode == Framedata.Opcode.TEXT && frame.isFin() && !fragmented) {
+				ByteBuffer payload = frame.getPayloadData();
+				if (!Charsetfunctions.isValidUTF8(payload)) {
+					throw new InvalidDataException(CloseFrame.NO_UTF8);
+				}
+
+				try {
+					callback.onData(payload);
+				} catch (RuntimeException e) {
+					webSocket.getWebSocketListener().onWebsocketError(webSocket, e);
+				}
+
+				return;
+			}
+
+			// the frames of a fragmented message go to Draft_6455, which
+			// reassembles them
+			if (!frame.isFin() && (opcode == Framedata.Opcode.TEXT || opcode == Framedata.Opcode.BINARY)) {
+				fragmented = true;
+			} else if (frame.isFin() && opcode == Framedata.Opcode.CONTINUOUS) {
+				fragmented = false;
+			}
+
+			super.processFrame(webSocket, frame);
+		}
+
+		@Override
+		public Draft copyInstance() {
+			return new Utf8TextDraft(callback);
+		}
+	}
+
 	private boolean isJSONValid(String test) {
 		try {
 			gson.fromJson(test, Object.class);
@@ -0,0 +1,150 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.fault;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import com.github.signalr4j.client.http.HttpConnection;
+import com.github.signalr4j.client.http.HttpConnectionFuture;
+import com.github.signalr4j.client.http.Request;
+import com.github.signalr4j.client.http.Response;
+
+/**
+ * Wraps an HttpConnection and applies the faults of a schedule to its
+ * requests and responses. Requests are delayed or lost, and the response
+ * reads are slowed down to the bandwidth, stalled or cut by an abrupt
+ * close. This covers the negotiate, send and abort requests of every
+ * transport, and the whole stream of the long polling and server-sent
+ * events transports
+ */
+public class FaultInjectingHttpConnection implements HttpConnection {
+
+    private final HttpConnection httpConnection;
+
+    private final FaultSchedule schedule;
+
+    /**
+     * Initializes the connection
+     *
+     * @param httpConnection
+     *            The connection to wrap
+     * @param schedule
+     *            The faults to apply
+     */
+    public FaultInjectingHttpConnection(HttpConnection httpConnection, FaultSchedule schedule) {
+        if (httpConnection == null) {
+            throw new IllegalArgumentException("httpConnection cannot be null");
+        }
+
+        if (schedule == null) {
+            throw new IllegalArgumentException("schedule cannot be null");
+        }
+
+        this.httpConnection = httpConnection;
+        this.schedule = schedule;
+    }
+
+    @Override
+    public HttpConnectionFuture execute(final Request request, final HttpConnectionFuture.ResponseCallback responseCallback) {
+        final HttpConnectionFuture future = new HttpConnectionFuture();
+
+        String content = request.getContent();
+        long delay = schedule.nextDelay(content == null ? 0 : content.getBytes(StandardCharsets.UTF_8).length);
+
+        FaultTimer.schedule(() -> {
+            if (future.isCancelled()) {
+                return;
+            }
+
+            if (schedule.nextDrop()) {
+                future.triggerError(new SocketTimeoutException("Request lost"));
+                return;
+            }
+
+            final HttpConnectionFuture requestFuture = httpConnection.execute(request,
+                    response -> responseCallback.onResponse(new FaultInjectingResponse(response)));
+
+            requestFuture.done(obj -> future.setResult(null));
+            requestFuture.onError(future::triggerError);
+            requestFuture.onTimeout(future::triggerTimeout);
+            future.onCancelled(requestFuture::cancel);
+
+            if (future.isCancelled()) {
+                requestFuture.cancel();
+            }
+        }, delay);
+
+        return future;
+    }
+
+    private class FaultInjectingResponse implements Response {
+
+        private final Response response;
+
+        private FaultInjectingResponse(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public List<String> getHeader(String headerName) {
+            return response.getHeader(headerName);
+        }
+
+        @Override
+        public String readToEnd() throws IOException {
+            beforeRead();
+            String data = response.readToEnd();
+            afterRead(data == null ? 0 : data.length());
+            return data;
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            beforeRead();
+            String line = response.readLine();
+            afterRead(line == null ? 0 : line.length());
+            return line;
+        }
+
+        @Override
+        public int getStatus() {
+            return response.getStatus();
+        }
+
+        @Override
+        public byte[] readAllBytes() throws IOException {
+            beforeRead();
+            byte[] data = response.readAllBytes();
+            afterRead(data == null ? 0 : data.length);
+            return data;
+        }
+
+        private void beforeRead() throws IOException {
+            FaultSchedule.pause(schedule.nextStall());
+
+            if (schedule.nextClose()) {
+                throw new SocketException("Connection reset");
+            }
+        }
+
+        private void afterRead(int size) {
+            if (size > 0) {
+                FaultSchedule.pause(schedule.nextDelay(size));
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.fault;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.signalr4j.client.ConnectionBase;
+import com.github.signalr4j.client.SignalRFuture;
+import com.github.signalr4j.client.UpdateableCancellableFuture;
+import com.github.signalr4j.client.transport.ClientTransport;
+import com.github.signalr4j.client.transport.ConnectionType;
+import com.github.signalr4j.client.transport.DataResultCallback;
+import com.github.signalr4j.client.transport.NegotiationResponse;
+
+/**
+ * Wraps a transport and applies the faults of a schedule to the frames it
+ * receives and sends. Received frames are delayed, stalled or lost on the
+ * thread that reads them, so the delays add up like on a saturated link.
+ * Sent frames keep their order. An abrupt close drops the frames still in
+ * flight and reports a connection error, as a reset socket would
+ */
+public class FaultInjectingTransport implements ClientTransport {
+
+    private final ClientTransport transport;
+
+    private final FaultSchedule schedule;
+
+    private final AtomicInteger session = new AtomicInteger();
+
+    private final Object sendSync = new Object();
+
+    private long lastSendTime = 0;
+
+    /**
+     * Initializes the transport
+     *
+     * @param transport
+     *            The transport to wrap
+     * @param schedule
+     *            The faults to apply
+     */
+    public FaultInjectingTransport(ClientTransport transport, FaultSchedule schedule) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport cannot be null");
+        }
+
+        if (schedule == null) {
+            throw new IllegalArgumentException("schedule cannot be null");
+        }
+
+        this.transport = transport;
+        this.schedule = schedule;
+    }
+
+    @Override
+    public String getName() {
+        return transport.getName();
+    }
+
+    @Override
+    public boolean supportKeepAlive() {
+        return transport.supportKeepAlive();
+    }
+
+    @Override
+    public SignalRFuture<NegotiationResponse> negotiate(final ConnectionBase connection) {
+        final UpdateableCancellableFuture<NegotiationResponse> future = new UpdateableCancellableFuture<>(null);
+
+        afterDelay(() -> {
+            if (schedule.nextDrop()) {
+                future.triggerError(new IOException("Negotiate request lost"));
+                return;
+            }
+
+            forward(transport.negotiate(connection), future);
+        }, schedule.nextDelay(0));
+
+        return future;
+    }
+
+    @Override
+    public SignalRFuture<Void> start(final ConnectionBase connection, final ConnectionType connectionType, final DataResultCallback callback) {
+        final int current = session.incrementAndGet();
+        final UpdateableCancellableFuture<Void> future = new UpdateableCancellableFuture<>(null);
+
+        afterDelay(() -> {
+            if (session.get() != current) {
+                // aborted while connecting
+                return;
+            }
+
+            if (schedule.nextDrop()) {
+                future.triggerError(new IOException("Connect request lost"));
+                return;
+            }
+
+            forward(transport.start(connection, connectionType, data -> receive(connection, current, data, callback)), future);
+        }, schedule.nextDelay(0));
+
+        return future;
+    }
+
+    @Override
+    public SignalRFuture<Void> send(final ConnectionBase connection, final String data, final DataResultCallback callback) {
+        final UpdateableCancellableFuture<Void> future = new UpdateableCancellableFuture<>(null);
+
+        long delay = schedule.nextDelay(data.getBytes(StandardCharsets.UTF_8).length);
+        synchronized (sendSync) {
+            // a frame cannot overtake the previous one
+            long sendTime = Math.max(System.currentTimeMillis() + delay, lastSendTime);
+            lastSendTime = sendTime;
+            delay = sendTime - System.currentTimeMillis();
+        }
+
+        afterDelay(() -> {
+            if (schedule.nextDrop()) {
+                // lost on the way, the sender does not know
+                future.setResult(null);
+                return;
+            }
+
+            forward(transport.send(connection, data, callback), future);
+        }, delay);
+
+        return future;
+    }
+
+    @Override
+    public SignalRFuture<Void> abort(ConnectionBase connection) {
+        session.incrementAndGet();
+        return transport.abort(connection);
+    }
+
+    private void receive(final ConnectionBase connection, int current, String data, DataResultCallback callback) {
+        if (session.get() != current) {
+            // the frame was in flight when the connection was closed
+            return;
+        }
+
+        FaultSchedule.pause(schedule.nextStall());
+
+        if (schedule.nextClose()) {
+            if (session.compareAndSet(current, current + 1)) {
+                // reported from another thread, as the connection restarts
+                // the transport that is calling this method
+                afterDelay(() -> connection.onError(new SocketException("Connection reset"), true), 0);
+            }
+            return;
+        }
+
+        if (schedule.nextDrop()) {
+            return;
+        }
+
+        FaultSchedule.pause(schedule.nextDelay(data == null ? 0 : data.length()));
+
+        if (session.get() == current) {
+            callback.onData(data);
+        }
+    }
+
+    private static void afterDelay(Runnable task, long delay) {
+        FaultTimer.schedule(task, delay);
+    }
+
+    private static <T> void forward(SignalRFuture<T> from, UpdateableCancellableFuture<T> to) {
+        from.done(to::setResult);
+        from.onError(to::triggerError);
+        to.setFuture(from);
+    }
+}
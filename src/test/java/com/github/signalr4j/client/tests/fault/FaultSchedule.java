@@ -0,0 +1,257 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.fault;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which faults the fault-injecting wrappers apply to each frame or
+ * request, from a seeded random generator, so that a bad-network run can be
+ * reproduced. The settings can be changed while the wrappers are in use,
+ * e.g. to cut the network for a while and then restore it
+ */
+public class FaultSchedule {
+
+    private final Random random;
+
+    private volatile long latency = 0;
+
+    private volatile long jitter = 0;
+
+    private volatile long bandwidth = 0;
+
+    private volatile double dropRate = 0;
+
+    private volatile double stallRate = 0;
+
+    private volatile long stallDuration = 0;
+
+    private volatile double closeRate = 0;
+
+    private final AtomicLong delayed = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong stalled = new AtomicLong();
+
+    private final AtomicLong closed = new AtomicLong();
+
+    /**
+     * Initializes the schedule
+     *
+     * @param seed
+     *            The seed of the random generator
+     */
+    public FaultSchedule(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Sets the delay added to every frame and request
+     *
+     * @param latency
+     *            The delay in milliseconds
+     * @param jitter
+     *            The maximum random delay added on top of the latency, in
+     *            milliseconds
+     */
+    public void setLatency(long latency, long jitter) {
+        if (latency < 0 || jitter < 0) {
+            throw new IllegalArgumentException("latency and jitter cannot be negative");
+        }
+
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Limits the throughput of every frame and response
+     *
+     * @param bandwidth
+     *            The throughput in bytes per second, or zero for no limit
+     */
+    public void setBandwidth(long bandwidth) {
+        if (bandwidth < 0) {
+            throw new IllegalArgumentException("bandwidth cannot be negative");
+        }
+
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Sets the probability that a frame or a request is lost
+     *
+     * @param dropRate
+     *            A probability between 0 and 1
+     */
+    public void setDropRate(double dropRate) {
+        this.dropRate = checkRate(dropRate, "dropRate");
+    }
+
+    /**
+     * Sets the probability that a read stalls before a frame or a response
+     * line is delivered
+     *
+     * @param stallRate
+     *            A probability between 0 and 1
+     * @param stallDuration
+     *            How long a stalled read blocks, in milliseconds
+     */
+    public void setStall(double stallRate, long stallDuration) {
+        if (stallDuration < 0) {
+            throw new IllegalArgumentException("stallDuration cannot be negative");
+        }
+
+        this.stallRate = checkRate(stallRate, "stallRate");
+        this.stallDuration = stallDuration;
+    }
+
+    /**
+     * Sets the probability that the connection is closed abruptly when a
+     * frame or a response line arrives
+     *
+     * @param closeRate
+     *            A probability between 0 and 1
+     */
+    public void setCloseRate(double closeRate) {
+        this.closeRate = checkRate(closeRate, "closeRate");
+    }
+
+    /**
+     * Removes all the faults
+     */
+    public void clear() {
+        latency = 0;
+        jitter = 0;
+        bandwidth = 0;
+        dropRate = 0;
+        stallRate = 0;
+        stallDuration = 0;
+        closeRate = 0;
+    }
+
+    /**
+     * Returns the number of frames and requests that were delayed
+     */
+    public long getDelayedCount() {
+        return delayed.get();
+    }
+
+    /**
+     * Returns the number of frames and requests that were lost
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the number of reads that stalled
+     */
+    public long getStalledCount() {
+        return stalled.get();
+    }
+
+    /**
+     * Returns the number of abrupt closes
+     */
+    public long getClosedCount() {
+        return closed.get();
+    }
+
+    /**
+     * Returns the delay to apply to a frame or request, including the time
+     * needed to transfer it at the configured bandwidth
+     *
+     * @param size
+     *            The size of the frame in bytes
+     * @return The delay in milliseconds
+     */
+    public long nextDelay(int size) {
+        long delay = latency;
+        long currentJitter = jitter;
+        if (currentJitter > 0) {
+            delay += (long) (nextDouble() * currentJitter);
+        }
+
+        long currentBandwidth = bandwidth;
+        if (currentBandwidth > 0) {
+            delay += size * 1000L / currentBandwidth;
+        }
+
+        if (delay > 0) {
+            delayed.incrementAndGet();
+        }
+
+        return delay;
+    }
+
+    /**
+     * Returns true if the next frame or request must be lost
+     */
+    public boolean nextDrop() {
+        return next(dropRate, dropped);
+    }
+
+    /**
+     * Returns how long the next read stalls in milliseconds, or zero if it
+     * does not
+     */
+    public long nextStall() {
+        return next(stallRate, stalled) ? stallDuration : 0;
+    }
+
+    /**
+     * Returns true if the connection must be closed now
+     */
+    public boolean nextClose() {
+        return next(closeRate, closed);
+    }
+
+    private boolean next(double rate, AtomicLong counter) {
+        // the generator is only used for the faults that are enabled, so
+        // that a run with the same settings draws the same sequence
+        if (rate <= 0 || nextDouble() >= rate) {
+            return false;
+        }
+
+        counter.incrementAndGet();
+        return true;
+    }
+
+    private double nextDouble() {
+        synchronized (random) {
+            return random.nextDouble();
+        }
+    }
+
+    /**
+     * Blocks the calling thread, as a slow network would
+     *
+     * @param millis
+     *            The time to block in milliseconds
+     */
+    static void pause(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double checkRate(double rate, String name) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1");
+        }
+
+        return rate;
+    }
+}
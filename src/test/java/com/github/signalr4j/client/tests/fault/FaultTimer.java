@@ -0,0 +1,42 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.fault;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the delayed work of the fault-injecting wrappers: the requests, the
+ * frames and the errors they report. It has its own thread rather than the
+ * client SharedTimer, so the injected faults do not hold up the timeouts and
+ * heartbeats under test. The single thread keeps the frames in order
+ */
+class FaultTimer {
+
+    private static final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "signalr4j-fault-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private FaultTimer() {
+    }
+
+    /**
+     * Runs a task after a delay
+     *
+     * @param task
+     *            The task to run
+     * @param delay
+     *            The delay in milliseconds, a negative one runs the task
+     *            right away
+     */
+    static void schedule(Runnable task, long delay) {
+        executor.schedule(task, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,417 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.load;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.signalr4j.client.ConnectionState;
+import com.github.signalr4j.client.Logger;
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubProxy;
+import com.github.signalr4j.client.metrics.DefaultMetrics;
+import com.github.signalr4j.client.metrics.Histogram;
+import com.github.signalr4j.client.metrics.HistogramSnapshot;
+import com.github.signalr4j.client.tests.server.SignalRTestServer;
+import com.github.signalr4j.client.transport.AutomaticTransport;
+import com.github.signalr4j.client.transport.ClientTransport;
+import com.github.signalr4j.client.transport.LongPollingTransport;
+import com.github.signalr4j.client.transport.ServerSentEventsTransport;
+import com.github.signalr4j.client.transport.WebsocketTransport;
+
+/**
+ * Opens many hub connections in one JVM and reports the aggregate message
+ * rate, the invoke latency percentiles, the threads and heap used per
+ * connection and how the connections reconnect. Unless a server URL is
+ * given, the connections go to an embedded SignalRTestServer, whose own
+ * threads are not counted but whose heap is.
+ *
+ * Options, as --name=value: connections, transport (webSockets,
+ * serverSentEvents, longPolling or auto), subscriptions, invokeRate (per
+ * connection per second), broadcastRate (per subscription per second),
+ * duration and reportInterval (seconds), rampConcurrency, dropInterval
+ * (seconds between simulated network failures, 0 for none) and url
+ */
+public class LoadGenerator {
+
+    private static final String HUB = "LoadHub";
+
+    private static final String SERVER_THREAD_NAME = "signalr-test-server";
+
+    private final Options options;
+
+    private final DefaultMetrics metrics = new DefaultMetrics();
+
+    private final Histogram invokeLatency = new Histogram();
+
+    private final AtomicLong invocations = new AtomicLong(0);
+
+    private final AtomicLong invokeErrors = new AtomicLong(0);
+
+    private final AtomicLong eventsReceived = new AtomicLong(0);
+
+    private final AtomicLong reconnecting = new AtomicLong(0);
+
+    private final AtomicLong reconnected = new AtomicLong(0);
+
+    private final AtomicLong closed = new AtomicLong(0);
+
+    private final AtomicInteger connectFailures = new AtomicInteger(0);
+
+    private final List<HubConnection> connections = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "load-generator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private SignalRTestServer server;
+
+    private long lastReportTime;
+
+    private long lastEvents;
+
+    private long lastInvocations;
+
+    public LoadGenerator(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        new LoadGenerator(options).run();
+        System.exit(0);
+    }
+
+    /**
+     * Connects, runs the load for the configured duration and prints the
+     * report
+     */
+    public void run() throws Exception {
+        String url = options.url;
+        if (url == null) {
+            server = new SignalRTestServer();
+            server.addHubMethod(HUB, "Echo", (connectionId, args) -> args[0]);
+            server.start();
+            url = server.getUrl();
+        }
+
+        System.out.println("Load: " + options);
+
+        long heapBefore = usedHeap();
+        int threadsBefore = clientThreadCount();
+
+        long connectStart = System.nanoTime();
+        connect(url);
+        long connectTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart);
+
+        int connected = connectedCount();
+        long heapPerConnection = connected == 0 ? 0 : (usedHeap() - heapBefore) / connected;
+        double threadsPerConnection = connected == 0 ? 0 : (clientThreadCount() - threadsBefore) / (double) connected;
+
+        System.out.println(String.format(Locale.ROOT, "Connected %d of %d in %d ms (%d failed), heap %d KB/connection, %.2f client threads/connection",
+                connected, options.connections, connectTime, connectFailures.get(), heapPerConnection / 1024, threadsPerConnection));
+
+        startLoad();
+
+        lastReportTime = System.nanoTime();
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(options.duration);
+        while (System.currentTimeMillis() < end) {
+            Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(options.reportInterval), Math.max(1, end - System.currentTimeMillis())));
+            report();
+        }
+
+        scheduler.shutdownNow();
+        printSummary(connectTime, heapPerConnection, threadsPerConnection);
+
+        for (HubConnection connection : connections) {
+            connection.stop();
+        }
+
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private void connect(String url) throws InterruptedException {
+        Semaphore pending = new Semaphore(options.rampConcurrency);
+
+        for (int i = 0; i < options.connections; i++) {
+            pending.acquire();
+
+            HubConnection connection = new HubConnection(url, null, false, new NullLogger());
+            connection.setMetrics(metrics);
+            connection.reconnecting(reconnecting::incrementAndGet);
+            connection.reconnected(reconnected::incrementAndGet);
+            connection.stateChanged((oldState, newState) -> {
+                if (newState == ConnectionState.DISCONNECTED && oldState != ConnectionState.CONNECTING) {
+                    closed.incrementAndGet();
+                }
+            });
+
+            HubProxy proxy = connection.createHubProxy(HUB);
+            for (int s = 0; s < options.subscriptions; s++) {
+                proxy.on("event" + s, sequence -> eventsReceived.incrementAndGet(), Long.class);
+            }
+
+            connections.add(connection);
+
+            connection.start(createTransport(new NullLogger())).done(obj -> pending.release()).onError(error -> {
+                connectFailures.incrementAndGet();
+                pending.release();
+            });
+        }
+
+        // waits for the last connections
+        pending.acquire(options.rampConcurrency);
+        pending.release(options.rampConcurrency);
+    }
+
+    private ClientTransport createTransport(Logger logger) {
+        switch (options.transport) {
+        case "webSockets":
+            return new WebsocketTransport(logger);
+        case "serverSentEvents":
+            return new ServerSentEventsTransport(logger);
+        case "longPolling":
+            return new LongPollingTransport(logger);
+        default:
+            return new AutomaticTransport(logger);
+        }
+    }
+
+    private void startLoad() {
+        if (options.invokeRate > 0) {
+            long period = (long) (TimeUnit.SECONDS.toMicros(1) / options.invokeRate);
+            for (HubConnection connection : connections) {
+                HubProxy proxy = connection.createHubProxy(HUB);
+                long delay = ThreadLocalRandom.current().nextLong(period);
+                scheduler.scheduleAtFixedRate(() -> invoke(connection, proxy), delay, period, TimeUnit.MICROSECONDS);
+            }
+        }
+
+        if (server != null && options.broadcastRate > 0 && options.subscriptions > 0) {
+            final AtomicLong sequence = new AtomicLong(0);
+            long period = (long) (TimeUnit.SECONDS.toMicros(1) / options.broadcastRate);
+            scheduler.scheduleAtFixedRate(() -> {
+                long next = sequence.incrementAndGet();
+                for (int s = 0; s < options.subscriptions; s++) {
+                    server.broadcast(HUB, "event" + s, next);
+                }
+            }, period, period, TimeUnit.MICROSECONDS);
+        }
+
+        if (server != null && options.dropInterval > 0) {
+            scheduler.scheduleAtFixedRate(server::dropConnections, options.dropInterval, options.dropInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    private void invoke(HubConnection connection, HubProxy proxy) {
+        if (connection.getState() != ConnectionState.CONNECTED) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        invocations.incrementAndGet();
+        proxy.invoke(Long.class, "Echo", start)
+                .done(result -> invokeLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)))
+                .onError(error -> invokeErrors.incrementAndGet());
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        double seconds = (now - lastReportTime) / 1e9;
+        long events = eventsReceived.get();
+        long invoked = invocations.get();
+
+        HistogramSnapshot latency = invokeLatency.snapshot();
+        System.out.println(String.format(Locale.ROOT,
+                "connected=%d events/s=%.0f invokes/s=%.0f invoke p50=%dus p99=%dus threads=%d reconnecting=%d reconnected=%d closed=%d",
+                connectedCount(), (events - lastEvents) / seconds, (invoked - lastInvocations) / seconds, latency.getPercentile(50),
+                latency.getPercentile(99), clientThreadCount(), reconnecting.get(), reconnected.get(), closed.get()));
+
+        lastReportTime = now;
+        lastEvents = events;
+        lastInvocations = invoked;
+    }
+
+    private void printSummary(long connectTime, long heapPerConnection, double threadsPerConnection) {
+        HistogramSnapshot latency = invokeLatency.snapshot();
+        HistogramSnapshot reconnectDuration = metrics.getReconnectDuration();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        System.out.println();
+        System.out.println("Summary");
+        System.out.println(String.format(Locale.ROOT, "  connections       %d requested, %d connected, %d failed, connect time %d ms", options.connections,
+                connectedCount(), connectFailures.get(), connectTime));
+        System.out.println(String.format(Locale.ROOT, "  received          %d messages, %d bytes, %.0f events/s", metrics.getMessagesReceived(),
+                metrics.getBytesReceived(), eventsReceived.get() / (double) options.duration));
+        System.out.println(String.format(Locale.ROOT, "  invocations       %d sent, %d completed, %d failed, %.0f/s", invocations.get(), latency.getCount(),
+                invokeErrors.get(), latency.getCount() / (double) options.duration));
+        System.out.println(String.format(Locale.ROOT, "  invoke latency    p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus", latency.getPercentile(50),
+                latency.getPercentile(90), latency.getPercentile(99), latency.getPercentile(99.9), latency.getMax()));
+        System.out.println(String.format(Locale.ROOT, "  threads           %d client, %.2f per connection, %d peak in the JVM", clientThreadCount(),
+                threadsPerConnection, threads.getPeakThreadCount()));
+        System.out.println(String.format(Locale.ROOT, "  heap              %d KB per connection%s", heapPerConnection / 1024,
+                server == null ? "" : " (including the embedded server)"));
+        System.out.println(String.format(Locale.ROOT, "  reconnects        %d started, %d completed, %d closed, duration p50=%dms p99=%dms max=%dms",
+                reconnecting.get(), reconnected.get(), closed.get(), reconnectDuration.getPercentile(50), reconnectDuration.getPercentile(99),
+                reconnectDuration.getMax()));
+    }
+
+    private int connectedCount() {
+        int count = 0;
+        for (HubConnection connection : connections) {
+            if (connection.getState() == ConnectionState.CONNECTED) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the number of live threads, leaving out the embedded server
+     */
+    private static int clientThreadCount() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!thread.getName().startsWith(SERVER_THREAD_NAME)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The load settings
+     */
+    public static class Options {
+        int connections = 100;
+        String transport = "webSockets";
+        int subscriptions = 1;
+        double invokeRate = 1;
+        double broadcastRate = 1;
+        int duration = 30;
+        int reportInterval = 5;
+        int rampConcurrency = 50;
+        int dropInterval = 0;
+        String url = null;
+
+        /**
+         * Parses --name=value arguments
+         *
+         * @param args
+         *            The command line arguments
+         * @return The options
+         */
+        public static Options parse(String[] args) {
+            Options options = new Options();
+
+            for (String arg : args) {
+                if (arg.trim().isEmpty()) {
+                    continue;
+                }
+
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals == -1) {
+                    throw new IllegalArgumentException("Invalid argument: " + arg + ", expected --name=value");
+                }
+
+                String name = arg.substring(2, equals);
+                String value = arg.substring(equals + 1);
+
+                try {
+                    switch (name) {
+                    case "connections":
+                        options.connections = Integer.parseInt(value);
+                        break;
+                    case "transport":
+                        options.transport = value;
+                        break;
+                    case "subscriptions":
+                        options.subscriptions = Integer.parseInt(value);
+                        break;
+                    case "invokeRate":
+                        options.invokeRate = Double.parseDouble(value);
+                        break;
+                    case "broadcastRate":
+                        options.broadcastRate = Double.parseDouble(value);
+                        break;
+                    case "duration":
+                        options.duration = Integer.parseInt(value);
+                        break;
+                    case "reportInterval":
+                        options.reportInterval = Integer.parseInt(value);
+                        break;
+                    case "rampConcurrency":
+                        options.rampConcurrency = Integer.parseInt(value);
+                        break;
+                    case "dropInterval":
+                        options.dropInterval = Integer.parseInt(value);
+                        break;
+                    case "url":
+                        options.url = value.endsWith("/") ? value : value + "/";
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + name);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value for " + name + ": " + value);
+                }
+            }
+
+            if (options.connections < 1 || options.duration < 1 || options.reportInterval < 1 || options.rampConcurrency < 1) {
+                throw new IllegalArgumentException("connections, duration, reportInterval and rampConcurrency must be at least 1");
+            }
+
+            if (options.subscriptions < 0 || options.invokeRate < 0 || options.broadcastRate < 0 || options.dropInterval < 0) {
+                throw new IllegalArgumentException("subscriptions, invokeRate, broadcastRate and dropInterval cannot be negative");
+            }
+
+            return options;
+        }
+
+        @Override
+        public String toString() {
+            return "connections=" + connections + " transport=" + transport + " subscriptions=" + subscriptions + " invokeRate=" + invokeRate
+                    + " broadcastRate=" + broadcastRate + " duration=" + duration + "s dropInterval=" + dropInterval + "s url="
+                    + (url == null ? "embedded" : url);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.mocktransport;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubProxy;
+import com.github.signalr4j.client.numeric.PrimitiveArrayAdapters;
+import com.github.signalr4j.client.tests.util.MockClientTransport;
+import com.github.signalr4j.client.tests.util.Utils;
+import com.github.signalr4j.client.transport.DataResultCallback;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures the bytes allocated by the receive, dispatch and invoke paths,
+ * and by the primitive array adapter, with the thread allocation counters, and fails when an operation goes
+ * over its budget. The budgets can be overridden with the
+ * signalr4j.allocationBudget.[name] system properties, in bytes per
+ * operation
+ */
+public class AllocationBudgetTests {
+
+    private static final int WARMUP_ITERATIONS = 20000;
+
+    private static final int MEASURED_ITERATIONS = 20000;
+
+    // on JDK 17 the operations allocate about 3450 (keep-alive), 9050
+    // (dispatch) and 12200 (invoke) bytes. The budgets are the largest
+    // figures measured with compressed oops, compact strings or escape
+    // analysis turned off (3784, 10704 and 14492 bytes), plus 15% for the
+    // other JVM versions, rounded up to 256 bytes
+
+    private static final long KEEP_ALIVE_BUDGET = 4352;
+
+    private static final long EVENT_DISPATCH_BUDGET = 12544;
+
+    private static final long INVOKE_BUDGET = 16896;
+
+    // reading 1000 integers into a double[] allocates about 27000 bytes, the
+    // growing array and the JsonReader, and nothing per number (27160 bytes
+    // without compressed oops)
+
+    private static final long INTEGER_ARRAY_BUDGET = 31488;
+
+    private com.sun.management.ThreadMXBean threadBean;
+
+    private MockClientTransport transport;
+
+    private HubConnection connection;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        transport = new MockClientTransport();
+        connection = new HubConnection("http://myUrl.com/", "", true, new NullLogger());
+    }
+
+    @Test
+    public void testKeepAliveAllocationBudget() throws Exception {
+        startConnection();
+
+        final DataResultCallback callback = transport.startOperation.callback;
+        assertWithinBudget("keepAlive", KEEP_ALIVE_BUDGET, () -> callback.onData("{}"));
+    }
+
+    @Test
+    public void testEventDispatchAllocationBudget() throws Exception {
+        HubProxy proxy = connection.createHubProxy("telemetryHub");
+
+        final AtomicLong received = new AtomicLong();
+        proxy.on("lapCompleted", lap -> received.addAndGet(lap), Integer.class);
+
+        startConnection();
+
+        // the message is parsed once, so only the dispatch is measured
+        final JsonElement message = new JsonParser().parse("{\"H\":\"telemetryHub\",\"M\":\"lapCompleted\",\"A\":[1]}");
+        assertWithinBudget("eventDispatch", EVENT_DISPATCH_BUDGET, () -> connection.onReceived(message));
+
+        assertTrue(received.get() >= MEASURED_ITERATIONS);
+    }
+
+    @Test
+    public void testInvokeAllocationBudget() throws Exception {
+        final HubProxy proxy = connection.createHubProxy("telemetryHub");
+
+        startConnection();
+
+        final JsonParser parser = new JsonParser();
+        final long[] id = { 0 };
+        final JsonElement[] results = new JsonElement[WARMUP_ITERATIONS + MEASURED_ITERATIONS];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = parser.parse("{\"I\":\"" + i + "\",\"R\":" + i + "}");
+        }
+
+        // a full round trip, so that the pending invocations do not pile up
+        assertWithinBudget("invoke", INVOKE_BUDGET, () -> {
+            proxy.invoke(Integer.class, "setLap", 42, "Monza");
+            connection.onReceived(results[(int) id[0]++]);
+        });
+    }
+
+    @Test
+    public void testIntegerArrayAllocationBudget() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i == 0 ? "" : ",").append(280 + i);
+        }
+        final String text = json.append(']').toString();
+
+        final AtomicLong read = new AtomicLong();
+        assertWithinBudget("integerArray", INTEGER_ARRAY_BUDGET, () -> {
+            read.addAndGet(PrimitiveArrayAdapters.DOUBLE_ARRAY.read(new JsonReader(new StringReader(text))).length);
+        });
+
+        assertTrue(read.get() >= 1000L * MEASURED_ITERATIONS);
+    }
+
+    private void startConnection() {
+        Utils.startConnection(connection, transport);
+    }
+
+    private void assertWithinBudget(String name, long defaultBudget, Operation operation) throws Exception {
+        long budget = Long.getLong("signalr4j.allocationBudget." + name, defaultBudget);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            operation.run();
+        }
+
+        long perOperation = (threadBean.getThreadAllocatedBytes(threadId) - start) / MEASURED_ITERATIONS;
+
+        assertTrue(name + " allocates " + perOperation + " bytes per operation, over the budget of " + budget, perOperation <= budget);
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+}
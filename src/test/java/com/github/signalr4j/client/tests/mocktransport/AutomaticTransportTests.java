@@ -0,0 +1,159 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.mocktransport;
+
+import static org.junit.Assert.*;
+
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.SignalRFuture;
+import com.github.signalr4j.client.tests.util.MockClientTransport;
+import com.github.signalr4j.client.tests.util.MockConnection;
+import com.github.signalr4j.client.transport.AutomaticTransport;
+import com.github.signalr4j.client.transport.ClientTransport;
+import com.github.signalr4j.client.transport.ConnectionType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class AutomaticTransportTests {
+
+    @Before
+    public void setUp() {
+        AutomaticTransport.clearPreferredTransports();
+    }
+
+    @Test
+    public void testNextTransportReplacesPendingOneAfterAttemptDelay() throws Exception {
+        NamedTransport first = new NamedTransport("first");
+        NamedTransport second = new NamedTransport("second");
+
+        AutomaticTransport transport = new AutomaticTransport(new NullLogger(), Arrays.<ClientTransport> asList(first, second));
+        transport.setAttemptDelay(100);
+
+        SignalRFuture<Void> start = transport.start(new MockConnection(), ConnectionType.INITIAL_CONNECTION, data -> {
+        });
+
+        assertNotNull(first.startOperation);
+        assertNull(second.startOperation);
+
+        Thread.sleep(500);
+        assertNotNull(second.startOperation);
+
+        // only one attempt is pending at a time
+        assertTrue(first.startOperation.future.isCancelled());
+
+        // the stopped attempt connecting late is ignored
+        first.startOperation.future.setResult(null);
+        assertFalse(start.isDone());
+
+        second.startOperation.future.setResult(null);
+
+        assertTrue(start.isDone());
+        assertEquals("second", transport.getName());
+    }
+
+    @Test
+    public void testFailedTransportStartsNextImmediately() throws Exception {
+        NamedTransport first = new NamedTransport("first");
+        NamedTransport second = new NamedTransport("second");
+
+        AutomaticTransport transport = new AutomaticTransport(new NullLogger(), Arrays.<ClientTransport> asList(first, second));
+        transport.setAttemptDelay(0);
+
+        SignalRFuture<Void> start = transport.start(new MockConnection(), ConnectionType.INITIAL_CONNECTION, data -> {
+        });
+
+        assertNull(second.startOperation);
+        first.startOperation.future.triggerError(new Exception("blocked"));
+        assertNotNull(second.startOperation);
+
+        second.startOperation.future.triggerError(new Exception("blocked"));
+        assertTrue(start.errorWasTriggered());
+    }
+
+    @Test
+    public void testWinnerIsTriedFirstOnNextStart() throws Exception {
+        NamedTransport first = new NamedTransport("first");
+        NamedTransport second = new NamedTransport("second");
+
+        AutomaticTransport transport = new AutomaticTransport(new NullLogger(), Arrays.<ClientTransport> asList(first, second));
+        transport.setAttemptDelay(0);
+
+        transport.start(new MockConnection(), ConnectionType.INITIAL_CONNECTION, data -> {
+        });
+        first.startOperation.future.triggerError(new Exception("blocked"));
+        second.startOperation.future.setResult(null);
+
+        NamedTransport otherFirst = new NamedTransport("first");
+        NamedTransport otherSecond = new NamedTransport("second");
+
+        AutomaticTransport other = new AutomaticTransport(new NullLogger(), Arrays.<ClientTransport> asList(otherFirst, otherSecond));
+        other.setAttemptDelay(0);
+
+        SignalRFuture<Void> start = other.start(new MockConnection(), ConnectionType.INITIAL_CONNECTION, data -> {
+        });
+
+        assertNull(otherFirst.startOperation);
+        otherSecond.startOperation.future.setResult(null);
+
+        assertTrue(start.isDone());
+        assertEquals("second", other.getName());
+    }
+
+    @Test
+    public void testTransportThatWonAfterTimeoutIsNotRemembered() throws Exception {
+        NamedTransport webSockets = new NamedTransport("webSockets");
+        NamedTransport serverSentEvents = new NamedTransport("serverSentEvents");
+
+        AutomaticTransport transport = new AutomaticTransport(new NullLogger(), Arrays.<ClientTransport> asList(webSockets, serverSentEvents));
+        assertEquals(5000, transport.getAttemptDelay());
+        transport.setAttemptDelay(100);
+
+        SignalRFuture<Void> start = transport.start(new MockConnection(), ConnectionType.INITIAL_CONNECTION, data -> {
+        });
+
+        // the WebSocket connect completes after the attempt delay
+        Thread.sleep(500);
+        assertNotNull(serverSentEvents.startOperation);
+        webSockets.startOperation.future.setResult(null);
+        serverSentEvents.startOperation.future.setResult(null);
+
+        assertTrue(start.isDone());
+        assertEquals("serverSentEvents", transport.getName());
+
+        // the next start tries the WebSocket first again
+        NamedTransport otherWebSockets = new NamedTransport("webSockets");
+        NamedTransport otherServerSentEvents = new NamedTransport("serverSentEvents");
+
+        AutomaticTransport other = new AutomaticTransport(new NullLogger(), Arrays.<ClientTransport> asList(otherWebSockets, otherServerSentEvents));
+        other.setAttemptDelay(0);
+
+        start = other.start(new MockConnection(), ConnectionType.INITIAL_CONNECTION, data -> {
+        });
+
+        assertNull(otherServerSentEvents.startOperation);
+        otherWebSockets.startOperation.future.setResult(null);
+
+        assertTrue(start.isDone());
+        assertEquals("webSockets", other.getName());
+    }
+
+    private static class NamedTransport extends MockClientTransport {
+        private final String name;
+
+        NamedTransport(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -7,6 +7,8 @@ See License.txt in the project root for license information.
 package com.github.signalr4j.client.tests.mocktransport;
 
 import com.github.signalr4j.client.*;
+import com.github.signalr4j.client.metrics.DefaultMetrics;
+import com.github.signalr4j.client.metrics.NullMetrics;
 import com.github.signalr4j.client.tests.util.MockClientTransport;
 import com.github.signalr4j.client.tests.util.MultiResult;
 import com.github.signalr4j.client.tests.util.Utils;
@@ -16,9 +18,14 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class ConnectionTests {
@@ -269,6 +276,7 @@ public class ConnectionTests {
             @Override
             public void run() {
                 result.intResult++;
+                result.stringResult = Thread.currentThread().getName();
             }
         });
 
@@ -276,6 +284,353 @@ public class ConnectionTests {
 
         assertEquals(1, result.intResult);
         assertEquals(ConnectionState.RECONNECTING, connection.getState());
+
+        // the handler does not hold up the timer thread
+        assertNotEquals("signalr4j-timer", result.stringResult);
+    }
+
+    @Test
+    public void testReconnectingHandlerRunsOutsideLock() throws Exception {
+
+        final Connection connection = new Connection(SERVER_URL, CONNECTION_QUERYSTRING, new NullLogger());
+
+        final MultiResult result = new MultiResult();
+
+        // the handler waits for another thread that closes the connection
+        connection.reconnecting(() -> {
+            Thread closer = new Thread(connection::disconnect);
+            closer.start();
+            try {
+                closer.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            result.booleanResult = !closer.isAlive();
+        });
+
+        MockClientTransport transport = startConnection(connection);
+        MockClientTransport.TransportOperation lostTransport = transport.startOperation;
+
+        transport.startOperation.callback.onData("{\"T\":1}");
+
+        assertTrue(result.booleanResult);
+        assertEquals(ConnectionState.DISCONNECTED, connection.getState());
+
+        // no attempt is made once the handler closed the connection
+        assertSame(lostTransport, transport.startOperation);
+        assertEquals(0, connection.getReconnectAttempts());
+    }
+
+    @Test
+    public void testReconnectBacksOff() throws Exception {
+
+        Connection connection = new Connection(SERVER_URL, CONNECTION_QUERYSTRING, new NullLogger());
+
+        ReconnectPolicy policy = new ReconnectPolicy();
+        policy.setInitialDelay(100);
+        policy.setJitter(0);
+        connection.setReconnectPolicy(policy);
+
+        MockClientTransport transport = startConnection(connection);
+
+        // the server asks the client to reconnect, the first attempt is
+        // immediate
+        transport.startOperation.callback.onData("{\"T\":1}");
+        transport.abortFuture.setResult(null);
+        assertEquals(ConnectionState.RECONNECTING, connection.getState());
+        assertEquals(1, connection.getReconnectAttempts());
+
+        MockClientTransport.TransportOperation failedAttempt = transport.startOperation;
+        failedAttempt.future.triggerError(new Exception("connection refused"));
+
+        // the second one waits for the initial delay
+        assertEquals(2, connection.getReconnectAttempts());
+        assertSame(failedAttempt, transport.startOperation);
+
+        Thread.sleep(500);
+        transport.abortFuture.setResult(null);
+        assertNotSame(failedAttempt, transport.startOperation);
+
+        transport.startOperation.future.setResult(null);
+
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+        assertEquals(0, connection.getReconnectAttempts());
+        assertEquals(1, connection.getReconnectCount());
+        assertTrue(connection.getLastReconnectDuration() >= 100);
+    }
+
+    @Test
+    public void testReconnectWaitsForTheAbort() throws Exception {
+
+        Connection connection = new Connection(SERVER_URL, CONNECTION_QUERYSTRING, new NullLogger());
+
+        MockClientTransport transport = startConnection(connection);
+        MockClientTransport.TransportOperation lostTransport = transport.startOperation;
+
+        // the abort could close the new transport if it reached the server
+        // after it
+        transport.startOperation.callback.onData("{\"T\":1}");
+        assertEquals(1, transport.getAbortInvocations());
+        assertSame(lostTransport, transport.startOperation);
+
+        transport.abortFuture.setResult(null);
+        assertNotSame(lostTransport, transport.startOperation);
+
+        transport.startOperation.future.setResult(null);
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+
+        // a stop while the abort is pending leaves the transport stopped
+        lostTransport = transport.startOperation;
+        transport.startOperation.callback.onData("{\"T\":1}");
+        connection.stop();
+        transport.abortFuture.setResult(null);
+
+        assertEquals(ConnectionState.DISCONNECTED, connection.getState());
+        assertSame(lostTransport, transport.startOperation);
+    }
+
+    @Test
+    public void testReconnectGivesUpAfterMaxAttempts() throws Exception {
+
+        Connection connection = new Connection(SERVER_URL, CONNECTION_QUERYSTRING, new NullLogger());
+
+        ReconnectPolicy policy = new ReconnectPolicy();
+        policy.setMaxAttempts(1);
+        connection.setReconnectPolicy(policy);
+
+        final MultiResult result = new MultiResult();
+        connection.error(error -> result.listResult.add(error));
+
+        MockClientTransport transport = startConnection(connection);
+
+        transport.startOperation.callback.onData("{\"T\":1}");
+        transport.abortFuture.setResult(null);
+        transport.startOperation.future.triggerError(new Exception("connection refused"));
+
+        assertEquals(ConnectionState.DISCONNECTED, connection.getState());
+        assertTrue(result.listResult.get(result.listResult.size() - 1) instanceof ReconnectFailedException);
+    }
+
+    @Test
+    public void testReconnectGapDependsOnCursor() throws Exception {
+
+        Connection connection = new Connection(SERVER_URL, CONNECTION_QUERYSTRING, new NullLogger());
+
+        MockClientTransport transport = startConnection(connection);
+        assertNull(connection.getLastReconnectGap());
+
+        // nothing was received, so there is no cursor to resume from
+        transport.startOperation.callback.onData("{\"T\":1}");
+        transport.abortFuture.setResult(null);
+        transport.startOperation.future.setResult(null);
+        assertEquals(MessageGap.POSSIBLE, connection.getLastReconnectGap());
+
+        transport.startOperation.callback.onData("{\"C\":\"d-1\",\"M\":[]}");
+        transport.startOperation.callback.onData("{\"T\":1}");
+        transport.abortFuture.setResult(null);
+        transport.startOperation.future.setResult(null);
+        assertEquals(MessageGap.NONE, connection.getLastReconnectGap());
+        assertEquals("d-1", connection.getMessageId());
+    }
+
+    @Test
+    public void testNegotiationFailsOverToNextEndpoint() throws Exception {
+
+        Connection connection = new Connection(SERVER_URL, CONNECTION_QUERYSTRING, new NullLogger());
+
+        EndpointSelector selector = new EndpointSelector(Arrays.asList("http://node1/signalr", "http://node2/signalr"));
+        connection.setEndpointSelector(selector);
+
+        MockClientTransport transport = new MockClientTransport();
+        SignalRFuture<Void> startFuture = connection.start(transport);
+
+        assertEquals("http://node1/signalr/", connection.getUrl());
+        transport.negotiationFuture.triggerError(new Exception("node down"));
+
+        assertEquals("http://node2/signalr/", connection.getUrl());
+
+        transport.negotiationFuture.setResult(Utils.getDefaultNegotiationResponse());
+        transport.startOperation.future.setResult(null);
+
+        assertTrue(startFuture.isDone());
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+        assertTrue(selector.getErrorRate("http://node1/signalr") > 0);
+        assertTrue(selector.getLatency("http://node2/signalr") >= 0);
+
+        // the failed endpoint is avoided on the next start
+        assertEquals("http://node2/signalr/", selector.select());
+    }
+
+    @Test
+    public void testFailoverStaysReconnecting() throws Exception {
+
+        final MultiResult result = new MultiResult();
+        Connection connection = createFailoverConnection(result);
+        MockClientTransport transport = startConnection(connection);
+        connection.addHeader("Authorization", "Bearer 1");
+
+        failover(transport);
+
+        assertEquals(ConnectionState.RECONNECTING, connection.getState());
+        assertEquals("http://node2/signalr/", connection.getUrl());
+        assertEquals(0, result.intResult);
+
+        MockClientTransport.TransportOperation failedAttempt = transport.startOperation;
+        transport.negotiationFuture.setResult(Utils.getDefaultNegotiationResponse());
+        assertNotSame(failedAttempt, transport.startOperation);
+        transport.startOperation.future.setResult(null);
+
+        // the new server connection cannot resume the former stream
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+        assertEquals(MessageGap.POSSIBLE, connection.getLastReconnectGap());
+        assertEquals("Bearer 1", connection.getHeaders().get("Authorization"));
+        assertEquals(0, result.intResult);
+    }
+
+    @Test
+    public void testStopDuringFailoverIsNotOverridden() throws Exception {
+
+        final MultiResult result = new MultiResult();
+        Connection connection = createFailoverConnection(result);
+        MockClientTransport transport = startConnection(connection);
+
+        failover(transport);
+
+        MockClientTransport.TransportOperation failedAttempt = transport.startOperation;
+        connection.stop();
+        transport.abortFuture.setResult(null);
+        assertEquals(ConnectionState.DISCONNECTED, connection.getState());
+        assertEquals(1, result.intResult);
+
+        // the negotiation with the next endpoint completes after the stop
+        transport.negotiationFuture.setResult(Utils.getDefaultNegotiationResponse());
+
+        assertEquals(ConnectionState.DISCONNECTED, connection.getState());
+        assertSame(failedAttempt, transport.startOperation);
+        assertEquals(1, result.intResult);
+    }
+
+    private static Connection createFailoverConnection(final MultiResult result) {
+        Connection connection = new Connection(SERVER_URL, CONNECTION_QUERYSTRING, new NullLogger());
+        connection.setEndpointSelector(new EndpointSelector(Arrays.asList("http://node1/signalr", "http://node2/signalr")));
+        connection.closed(() -> result.intResult++);
+
+        ReconnectPolicy policy = new ReconnectPolicy();
+        policy.setMaxAttempts(1);
+        connection.setReconnectPolicy(policy);
+
+        return connection;
+    }
+
+    private static void failover(MockClientTransport transport) {
+        // the only reconnect attempt fails, so the connection gives up on
+        // the endpoint
+        transport.startOperation.callback.onData("{\"T\":1}");
+        transport.abortFuture.setResult(null);
+        transport.startOperation.future.triggerError(new Exception("connection refused"));
+    }
+
+    @Test
+    public void testEndpointSelectorPrefersFastHealthyEndpoints() throws Exception {
+
+        EndpointSelector selector = new EndpointSelector(Arrays.asList("http://node1/", "http://node2/", "http://node3/"));
+        selector.setFailureCooldown(0);
+
+        // endpoints that were never measured are tried first
+        selector.recordSuccess("http://node1/", 50);
+        selector.recordSuccess("http://node2/", 20);
+        assertEquals("http://node3/", selector.select());
+
+        selector.recordSuccess("http://node3/", 30);
+        assertEquals("http://node2/", selector.select());
+
+        selector.recordFailure("http://node2/");
+        assertEquals("http://node3/", selector.select());
+    }
+
+    @Test
+    public void testEndpointThatAlwaysFailsComesLast() throws Exception {
+
+        EndpointSelector selector = new EndpointSelector(Arrays.asList("http://node1/", "http://node2/"));
+        selector.setFailureCooldown(50);
+
+        selector.recordFailure("http://node1/");
+        selector.recordSuccess("http://node2/", 200);
+        assertEquals("http://node2/", selector.select());
+
+        // once the cooldown is over, the endpoint that never succeeded is
+        // still not preferred to a measured one
+        Thread.sleep(100);
+        assertEquals("http://node2/", selector.select());
+
+        selector.recordFailure("http://node1/");
+        Thread.sleep(100);
+        assertEquals("http://node2/", selector.select());
+
+        // unless the healthy one is excluded
+        assertEquals("http://node1/", selector.select(Arrays.asList("http://node2/")));
+    }
+
+    @Test
+    public void testMetricsRecordTraffic() throws Exception {
+
+        Connection connection = new Connection(SERVER_URL, CONNECTION_QUERYSTRING, new NullLogger());
+        DefaultMetrics metrics = new DefaultMetrics();
+        connection.setMetrics(metrics);
+        connection.received(json -> {
+        });
+
+        MockClientTransport transport = startConnection(connection);
+        assertEquals(transport.getName(), metrics.getTransport());
+
+        transport.startOperation.callback.onData("{\"C\":\"d-1\",\"M\":[\"caf\u00e9\",2]}");
+        connection.send("hello");
+
+        assertEquals(2, metrics.getMessagesReceived());
+        assertEquals(27, metrics.getBytesReceived());
+        assertEquals(1, metrics.getMessagesSent());
+        assertEquals(5, metrics.getBytesSent());
+        assertEquals(1, metrics.getParseTime().getCount());
+        assertEquals(1, metrics.getDispatchTime().getCount());
+        assertEquals(2, metrics.getHandlerTime().getCount());
+
+        transport.startOperation.callback.onData("{\"T\":1}");
+        transport.abortFuture.setResult(null);
+        transport.startOperation.future.setResult(null);
+        assertEquals(1, metrics.getReconnects());
+        assertEquals(1, metrics.getReconnectDuration().getCount());
+    }
+
+    @Test
+    public void testMetricsAdaptersReceiveEvents() throws Exception {
+
+        Connection connection = new Connection(SERVER_URL, CONNECTION_QUERYSTRING, new NullLogger());
+        final MultiResult result = new MultiResult();
+
+        // only the shared instance is skipped, not the classes extending it
+        connection.setMetrics(new NullMetrics() {
+            @Override
+            public void received(int messages, int bytes) {
+                result.intResult += bytes;
+            }
+
+            @Override
+            public void sent(int bytes) {
+                result.intResult += bytes;
+            }
+        });
+
+        MockClientTransport transport = startConnection(connection);
+        transport.startOperation.callback.onData("{\"C\":\"d-1\",\"M\":[\"caf\u00e9\"]}");
+        connection.send("hello");
+
+        assertEquals(25 + 5, result.intResult);
     }
 
-}
\ No newline at end of file
+    private static MockClientTransport startConnection(Connection connection) {
+        MockClientTransport transport = new MockClientTransport();
+        Utils.startConnection(connection, transport);
+
+        return transport;
+    }
+}
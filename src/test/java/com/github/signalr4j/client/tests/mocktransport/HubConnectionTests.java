@@ -8,22 +8,39 @@ package com.github.signalr4j.client.tests.mocktransport;
 
 import static org.junit.Assert.*;
 import com.github.signalr4j.client.Action;
+import com.github.signalr4j.client.ConnectionState;
 import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.SignalRFuture;
 import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubInvocation;
 import com.github.signalr4j.client.hubs.HubProxy;
+import com.github.signalr4j.client.hubs.InvocationAdmissionPolicy;
+import com.github.signalr4j.client.hubs.InvocationOptions;
+import com.github.signalr4j.client.hubs.InvocationRejectedException;
+import com.github.signalr4j.client.hubs.InvocationTimeoutException;
 import com.github.signalr4j.client.hubs.Subscription;
 import com.github.signalr4j.client.hubs.SubscriptionHandler2;
+import com.github.signalr4j.client.metrics.HistogramSnapshot;
 import com.github.signalr4j.client.tests.util.MockClientTransport;
 import com.github.signalr4j.client.tests.util.MultiResult;
 import com.github.signalr4j.client.tests.util.Utils;
 
 import org.junit.Test;
 
+import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
 public class HubConnectionTests {
 
     private static final String SERVER_URL = "http://myUrl.com/";
@@ -376,6 +393,408 @@ public class HubConnectionTests {
         assertEquals(2, multiResult.listResult.size());
     }
 
+    @Test
+    public void testInvokeTimeout() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+
+        Utils.startConnection(connection, transport);
+
+        InvocationOptions options = new InvocationOptions();
+        options.setTimeout(100);
+
+        SignalRFuture<String> future = proxy.invoke(options, String.class, "myMethod");
+        transport.sendOperation.future.setResult(null);
+
+        assertEquals(1, connection.getPendingInvocationCount());
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("The invocation should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvocationTimeoutException);
+        }
+
+        assertEquals(0, connection.getPendingInvocationCount());
+        assertEquals(1, connection.getTimedOutInvocationCount());
+
+        // a late result must be ignored
+        transport.startOperation.callback.onData("{\"I\":\"0\",\"R\":\"late\"}");
+        assertEquals(0, connection.getPendingInvocationCount());
+    }
+
+    @Test
+    public void testInvokeResultCancelsTimeout() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+        connection.setInvocationTimeout(100);
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+
+        Utils.startConnection(connection, transport);
+
+        SignalRFuture<String> future = proxy.invoke(String.class, "myMethod");
+        transport.sendOperation.future.setResult(null);
+
+        transport.startOperation.callback.onData("{\"I\":\"0\",\"R\":\"done\"}");
+
+        assertEquals("done", future.get(5, TimeUnit.SECONDS));
+        assertEquals(0, connection.getPendingInvocationCount());
+
+        Thread.sleep(200);
+        assertEquals(0, connection.getTimedOutInvocationCount());
+    }
+
+    @Test
+    public void testInFlightLimitQueuesInvocations() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+        connection.setMaxInFlightInvocations(1, InvocationAdmissionPolicy.QUEUE);
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+
+        Utils.startConnection(connection, transport);
+
+        SignalRFuture<String> first = proxy.invoke(String.class, "myMethod", 1);
+        SignalRFuture<String> second = proxy.invoke(String.class, "myMethod", 2);
+
+        assertTrue(transport.sendOperation.data.toString().contains("\"A\":[1]"));
+        assertEquals(1, connection.getPendingInvocationCount());
+        assertEquals(1, connection.getQueuedInvocationCount());
+
+        transport.startOperation.callback.onData("{\"I\":\"0\",\"R\":\"first\"}");
+
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        assertTrue(transport.sendOperation.data.toString().contains("\"A\":[2]"));
+        assertEquals(1, connection.getPendingInvocationCount());
+        assertEquals(0, connection.getQueuedInvocationCount());
+
+        transport.startOperation.callback.onData("{\"I\":\"1\",\"R\":\"second\"}");
+
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, connection.getPendingInvocationCount());
+    }
+
+    @Test
+    public void testQueuedInvocationsAreBoundedAndTimeOut() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+        connection.setMaxInFlightInvocations(1, InvocationAdmissionPolicy.QUEUE, 1);
+        connection.setInvocationTimeout(300);
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+
+        Utils.startConnection(connection, transport);
+
+        // the in flight invocation keeps its slot for the whole test
+        InvocationOptions options = new InvocationOptions();
+        options.setTimeout(InvocationOptions.NO_TIMEOUT);
+        proxy.invoke(options, String.class, "myMethod", 1);
+        SignalRFuture<String> queued = proxy.invoke(String.class, "myMethod", 2);
+        SignalRFuture<String> overflow = proxy.invoke(String.class, "myMethod", 3);
+
+        assertEquals(1, connection.getQueuedInvocationCount());
+        try {
+            overflow.get(5, TimeUnit.SECONDS);
+            fail("The invocation should have been rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvocationRejectedException);
+        }
+
+        // the timeout runs from the invoke call, not from the admission
+        try {
+            queued.get(5, TimeUnit.SECONDS);
+            fail("The queued invocation should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvocationTimeoutException);
+        }
+
+        assertEquals(0, connection.getQueuedInvocationCount());
+        assertTrue(transport.sendOperation.data.toString().contains("\"A\":[1]"));
+    }
+
+    @Test
+    public void testMethodInFlightLimitRejectsInvocations() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+        proxy.setMaxInFlightInvocations("myMethod", 1, InvocationAdmissionPolicy.REJECT);
+
+        Utils.startConnection(connection, transport);
+
+        proxy.invoke(String.class, "myMethod");
+        SignalRFuture<String> rejected = proxy.invoke(String.class, "myMethod");
+        SignalRFuture<String> otherMethod = proxy.invoke(String.class, "otherMethod");
+
+        try {
+            rejected.get(5, TimeUnit.SECONDS);
+            fail("The invocation should have been rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvocationRejectedException);
+        }
+
+        assertFalse(otherMethod.errorWasTriggered());
+        assertEquals(2, connection.getPendingInvocationCount());
+    }
+
+    @Test
+    public void testRetryableInvocationsAreReplayedAfterReconnect() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+        connection.setReplayBufferSize(10);
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+        proxy.setRetryable("retryableMethod", true);
+
+        Utils.startConnection(connection, transport);
+
+        SignalRFuture<String> retryable = proxy.invoke(String.class, "retryableMethod");
+        SignalRFuture<String> notRetryable = proxy.invoke(String.class, "otherMethod");
+
+        // the server asks the client to reconnect
+        transport.startOperation.callback.onData("{\"T\":1}");
+        assertEquals(ConnectionState.RECONNECTING, connection.getState());
+
+        assertTrue(notRetryable.errorWasTriggered());
+        assertFalse(retryable.errorWasTriggered());
+
+        MockClientTransport.TransportOperation lastSend = transport.sendOperation;
+        SignalRFuture<String> issuedWhileReconnecting = proxy.invoke(String.class, "otherMethod");
+
+        assertSame(lastSend, transport.sendOperation);
+        assertEquals(2, connection.getPendingInvocationCount());
+
+        transport.abortFuture.setResult(null);
+        transport.startOperation.future.setResult(null);
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+        assertTrue(transport.sendOperation.data.toString().contains("\"I\":\"2\""));
+
+        transport.startOperation.callback.onData("{\"I\":\"0\",\"R\":\"replayed\"}");
+        transport.startOperation.callback.onData("{\"I\":\"2\",\"R\":\"held\"}");
+
+        assertEquals("replayed", retryable.get(5, TimeUnit.SECONDS));
+        assertEquals("held", issuedWhileReconnecting.get(5, TimeUnit.SECONDS));
+        assertEquals(0, connection.getPendingInvocationCount());
+    }
+
+    @Test
+    public void testStateDeltaOnlySendsChangedKeys() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+        proxy.setStateDeltaEnabled(true);
+        proxy.setState("a", new JsonPrimitive(1));
+        proxy.setState("b", new JsonPrimitive(2));
+
+        Utils.startConnection(connection, transport);
+
+        proxy.invoke("myMethod");
+        assertTrue(transport.sendOperation.data.toString().contains("\"S\":{\"a\":1,\"b\":2}"));
+        transport.startOperation.callback.onData("{\"I\":\"0\"}");
+
+        proxy.invoke("myMethod");
+        assertFalse(transport.sendOperation.data.toString().contains("\"S\""));
+        transport.startOperation.callback.onData("{\"I\":\"1\"}");
+
+        proxy.setState("b", new JsonPrimitive(3));
+        proxy.invoke("myMethod");
+        assertTrue(transport.sendOperation.data.toString().contains("\"S\":{\"b\":3}"));
+    }
+
+    @Test
+    public void testReplayedInvocationsSendTheWholeState() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+        connection.setReplayBufferSize(10);
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+        proxy.setStateDeltaEnabled(true);
+        proxy.setRetryable("myMethod", true);
+        proxy.setState("a", new JsonPrimitive(1));
+        proxy.setState("b", new JsonPrimitive(2));
+
+        Utils.startConnection(connection, transport);
+
+        proxy.invoke("myMethod");
+        transport.startOperation.callback.onData("{\"I\":\"0\"}");
+
+        proxy.setState("b", new JsonPrimitive(3));
+        proxy.invoke("myMethod");
+        assertTrue(transport.sendOperation.data.toString().contains("\"S\":{\"b\":3}"));
+
+        // the server forgets the acknowledged state when reconnecting
+        transport.startOperation.callback.onData("{\"T\":1}");
+        transport.abortFuture.setResult(null);
+        transport.startOperation.future.setResult(null);
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+
+        String replayed = transport.sendOperation.data.toString();
+        assertTrue(replayed.contains("\"I\":\"1\""));
+        assertTrue(replayed.contains("\"S\":{\"a\":1,\"b\":3}"));
+    }
+
+    @Test
+    public void testInvocationEncodingMatchesGsonSerialization() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+
+        HubProxy proxy = connection.createHubProxy("my<Proxy>");
+        proxy.setState("key", new JsonPrimitive("a&b"));
+
+        Utils.startConnection(connection, transport);
+
+        InvocationResult arg = new InvocationResult();
+        arg.prop1 = "quote\"'";
+        arg.prop2 = 3;
+
+        Object[] args = new Object[] { arg, null, "\u00e9\n", 1.5, new int[] { 1, 2 } };
+        proxy.invoke("my=Method", args);
+
+        JsonElement[] jsonArguments = new JsonElement[args.length];
+        for (int i = 0; i < args.length; i++) {
+            jsonArguments[i] = connection.getGson().toJsonTree(args[i]);
+        }
+
+        HubInvocation expected = new HubInvocation();
+        expected.setCallbackId("0");
+        expected.setHub("my<Proxy>");
+        expected.setMethod("my=Method");
+        expected.setArgs(jsonArguments);
+        expected.setState(Collections.singletonMap("key", new JsonPrimitive("a&b")));
+
+        assertEquals(connection.getGson().toJson(expected), transport.sendOperation.data.toString());
+    }
+
+    @Test
+    public void testInvocationEncodingKeepsSerializedNulls() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+        connection.setGson(new GsonBuilder().serializeNulls().create());
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+
+        Utils.startConnection(connection, transport);
+
+        proxy.invoke("myMethod", (Object) null);
+
+        HubInvocation expected = new HubInvocation();
+        expected.setCallbackId("0");
+        expected.setHub("myProxy1");
+        expected.setMethod("myMethod");
+        expected.setArgs(new JsonElement[] { JsonNull.INSTANCE });
+
+        assertEquals(connection.getGson().toJson(expected), transport.sendOperation.data.toString());
+        assertTrue(transport.sendOperation.data.toString().endsWith(",\"S\":null}"));
+    }
+
+    @Test
+    public void testInvokeProgress() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+
+        Utils.startConnection(connection, transport);
+
+        final List<Integer> progress = new ArrayList<>();
+        SignalRFuture<String> future = proxy.invoke(String.class, Integer.class, progress::add, "myMethod");
+
+        transport.startOperation.callback.onData("{\"I\":\"P|0\",\"P\":{\"I\":\"0\",\"D\":1}}");
+        transport.startOperation.callback.onData("{\"I\":\"P|0\",\"P\":{\"I\":\"0\",\"D\":2}}");
+
+        assertEquals(Arrays.asList(1, 2), progress);
+        assertFalse(future.isDone());
+        assertEquals(1, connection.getPendingInvocationCount());
+
+        transport.startOperation.callback.onData("{\"I\":\"0\",\"R\":\"done\"}");
+        transport.startOperation.callback.onData("{\"I\":\"P|0\",\"P\":{\"I\":\"0\",\"D\":3}}");
+
+        assertEquals("done", future.get(1, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(1, 2), progress);
+        assertEquals(0, connection.getPendingInvocationCount());
+    }
+
+    @Test
+    public void testInvokeProgressRestartsTimeout() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+        connection.setInvocationTimeout(400);
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+
+        Utils.startConnection(connection, transport);
+
+        final List<Integer> progress = new ArrayList<>();
+        SignalRFuture<String> future = proxy.invoke(String.class, Integer.class, progress::add, "myMethod");
+
+        // the updates span twice the timeout
+        for (int i = 1; i <= 4; i++) {
+            Thread.sleep(200);
+            transport.startOperation.callback.onData("{\"I\":\"P|0\",\"P\":{\"I\":\"0\",\"D\":" + i + "}}");
+        }
+
+        assertFalse(future.errorWasTriggered());
+        assertEquals(Arrays.asList(1, 2, 3, 4), progress);
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("The invocation should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvocationTimeoutException);
+        }
+
+        assertEquals(0, connection.getPendingInvocationCount());
+    }
+
+    @Test
+    public void testInvocationLatencyRecordedPerMethod() throws Exception {
+
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+
+        HubProxy proxy = connection.createHubProxy("myProxy1");
+
+        Utils.startConnection(connection, transport);
+
+        assertNull(connection.getInvocationLatency("myProxy1", "myMethod"));
+
+        proxy.invoke("myMethod");
+        proxy.invoke("myMethod");
+        proxy.invoke("otherMethod");
+
+        Thread.sleep(5);
+        transport.startOperation.callback.onData("{\"I\":\"0\"}");
+        transport.startOperation.callback.onData("{\"I\":\"1\",\"E\":\"failed\"}");
+
+        HistogramSnapshot latency = connection.getInvocationLatency("myProxy1", "myMethod");
+        assertEquals(2, latency.getCount());
+        assertTrue(latency.getMin() >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(latency.getPercentile(99) >= latency.getPercentile(50));
+
+        // unanswered invocations are not round trips
+        assertEquals(0, connection.getInvocationLatency("myProxy1", "otherMethod").getCount());
+        assertEquals(2, connection.getInvocationLatencies().get("myProxy1.myMethod").getCount());
+
+        connection.resetInvocationLatencies();
+        assertEquals(0, connection.getInvocationLatency("myProxy1", "myMethod").getCount());
+    }
+
     public class InvocationResult {
         public String prop1;
         public int prop2;
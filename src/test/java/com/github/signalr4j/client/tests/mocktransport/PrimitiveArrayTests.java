@@ -0,0 +1,192 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.mocktransport;
+
+import static org.junit.Assert.*;
+
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.numeric.ColumnarDecoder;
+import com.github.signalr4j.client.numeric.DoubleColumn;
+import com.github.signalr4j.client.numeric.FloatColumn;
+import com.github.signalr4j.client.numeric.LongColumn;
+import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubProxy;
+import com.github.signalr4j.client.tests.util.MockClientTransport;
+import com.github.signalr4j.client.tests.util.Utils;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PrimitiveArrayTests {
+
+    private static final String SERVER_URL = "http://myUrl.com/signalr/";
+
+    @Test
+    public void testArraysRoundTrip() {
+        Gson gson = new HubConnection(SERVER_URL, "", true, new NullLogger()).getGson();
+
+        double[] doubles = gson.fromJson("[1, 2.5, -3e2, 0.1]", double[].class);
+        assertArrayEquals(new double[] { 1, 2.5, -300, 0.1 }, doubles, 0);
+
+        long[] longs = gson.fromJson(new JsonParser().parse("[1, 9007199254740993, -4]"), long[].class);
+        assertArrayEquals(new long[] { 1, 9007199254740993L, -4 }, longs);
+
+        float[] floats = gson.fromJson("[0.1, 2]", float[].class);
+        assertArrayEquals(new float[] { 0.1f, 2f }, floats, 0);
+
+        assertEquals("[0.1,2.0]", gson.toJson(floats));
+        assertEquals("[1,9007199254740993,-4]", gson.toJson(longs));
+        assertNull(gson.fromJson("null", double[].class));
+
+        // more values than the initial capacity
+        StringBuilder json = new StringBuilder("[0");
+        for (int i = 1; i < 100; i++) {
+            json.append(',').append(i);
+        }
+        double[] large = gson.fromJson(json.append(']').toString(), double[].class);
+        assertEquals(100, large.length);
+        assertEquals(99, large[99], 0);
+    }
+
+    @Test
+    public void testHubEventsBindPrimitiveArraysAndColumns() throws Exception {
+        MockClientTransport transport = new MockClientTransport();
+        HubConnection connection = new HubConnection(SERVER_URL, "", true, new NullLogger());
+        HubProxy proxy = connection.createHubProxy("TelemetryHub");
+
+        AtomicReference<double[]> speeds = new AtomicReference<>();
+        proxy.on("speeds", speeds::set, double[].class);
+
+        ColumnarDecoder decoder = new ColumnarDecoder();
+        LongColumn time = decoder.addLongColumn("t");
+        proxy.subscribe("samples").addReceivedHandler(args -> decoder.decode(args[0]));
+
+        Utils.startConnection(connection, transport);
+
+        transport.startOperation.callback.onData("{\"C\":\"d-1\",\"M\":[{\"H\":\"TelemetryHub\",\"M\":\"speeds\",\"A\":[[301.5,298.25,0]]},"
+                + "{\"H\":\"TelemetryHub\",\"M\":\"samples\",\"A\":[[{\"t\":7},{\"t\":8}]]}]}");
+
+        assertArrayEquals(new double[] { 301.5, 298.25, 0 }, speeds.get(), 0);
+        assertArrayEquals(new long[] { 7, 8 }, time.toArray());
+
+        connection.stop();
+    }
+
+    @Test
+    public void testColumnReusesItsArray() {
+        DoubleColumn column = new DoubleColumn("speed", 4);
+        JsonParser parser = new JsonParser();
+
+        column.read(parser.parse("[1, 2, null]"));
+        double[] values = column.getValues();
+        assertEquals(3, column.size());
+        assertTrue(Double.isNaN(column.get(2)));
+
+        column.read(parser.parse("[4, 5]"));
+        assertSame(values, column.getValues());
+        assertArrayEquals(new double[] { 4, 5 }, column.toArray(), 0);
+    }
+
+    @Test
+    public void testNumbersAreParsedExactly() {
+        Random random = new Random(7);
+        JsonArray array = new JsonArray();
+        List<String> texts = new ArrayList<>();
+
+        for (int i = 0; i < 20000; i++) {
+            String text;
+            switch (i % 4) {
+            case 0:
+                // sensor readings with a few decimals
+                text = BigDecimal.valueOf(random.nextInt(2000000) - 1000000, random.nextInt(6)).toPlainString();
+                break;
+            case 1:
+                text = Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+                break;
+            case 2:
+                text = (random.nextInt(99999) + 1) + "e" + (random.nextInt(60) - 30);
+                break;
+            default:
+                text = Double.toString(Double.longBitsToDouble(random.nextLong()));
+                break;
+            }
+
+            if (text.contains("NaN") || text.contains("Infinity")) {
+                continue;
+            }
+
+            texts.add(text);
+            array.add(new JsonParser().parse(text));
+        }
+
+        DoubleColumn doubles = new DoubleColumn("value");
+        doubles.read(array);
+        FloatColumn floats = new FloatColumn("value");
+        floats.read(array);
+
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(texts.get(i), Double.doubleToLongBits(Double.parseDouble(texts.get(i))), Double.doubleToLongBits(doubles.get(i)));
+            assertEquals(texts.get(i), Float.floatToIntBits(Float.parseFloat(texts.get(i))), Float.floatToIntBits(floats.get(i)));
+        }
+    }
+
+    @Test
+    public void testRecordsAreDecodedIntoColumns() {
+        ColumnarDecoder decoder = new ColumnarDecoder();
+        LongColumn time = decoder.addLongColumn("t");
+        DoubleColumn speed = decoder.addDoubleColumn("speed");
+        FloatColumn throttle = decoder.addFloatColumn("throttle");
+        JsonParser parser = new JsonParser();
+
+        int rows = decoder.decode(parser.parse("[{\"t\":1000,\"speed\":301.5,\"throttle\":0.75},{\"t\":1001,\"speed\":302,\"gear\":7}]"));
+        assertEquals(2, rows);
+        assertArrayEquals(new long[] { 1000, 1001 }, time.toArray());
+        assertArrayEquals(new double[] { 301.5, 302 }, speed.toArray(), 0);
+        assertEquals(0.75f, throttle.get(0), 0);
+        assertTrue(Float.isNaN(throttle.get(1)));
+
+        // positional records, in the order of the columns
+        rows = decoder.decode(parser.parse("[[2000,150,1],[2001,151]]"));
+        assertEquals(2, rows);
+        assertArrayEquals(new long[] { 2000, 2001 }, time.toArray());
+        assertArrayEquals(new double[] { 150, 151 }, speed.toArray(), 0);
+        assertTrue(Float.isNaN(throttle.get(1)));
+    }
+
+    @Test
+    public void testMissingLongValueIsRejected() {
+        ColumnarDecoder decoder = new ColumnarDecoder();
+        LongColumn time = decoder.addLongColumn("t");
+        DoubleColumn speed = decoder.addDoubleColumn("speed");
+
+        try {
+            decoder.decode(new JsonParser().parse("[{\"t\":1,\"speed\":2},{\"speed\":3}]"));
+            fail("Expected a JsonParseException");
+        } catch (JsonParseException e) {
+        }
+
+        assertEquals(0, decoder.getRowCount());
+        assertEquals(0, time.size());
+        assertEquals(0, speed.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateFieldIsRejected() {
+        ColumnarDecoder decoder = new ColumnarDecoder();
+        decoder.addLongColumn("t");
+        decoder.addDoubleColumn("t");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.mocktransport;
+
+import static org.junit.Assert.*;
+
+import com.github.signalr4j.client.Connection;
+import com.github.signalr4j.client.ConnectionState;
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.SignalRFuture;
+import com.github.signalr4j.client.recording.WireRecorder;
+import com.github.signalr4j.client.transport.ReplayTransport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class ReplayTransportTests {
+
+    private static final String SERVER_URL = "http://myUrl.com/signalr/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReceivedPayloadsAreReplayed() throws Exception {
+        File directory = record(0);
+        List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+        ReplayTransport transport = new ReplayTransport(directory, new NullLogger());
+        transport.setSpeed(ReplayTransport.AS_FAST_AS_POSSIBLE);
+
+        Connection connection = new Connection(SERVER_URL, "", new NullLogger());
+        connection.received(json -> received.add(json.getAsString()));
+        connection.start(transport).get(1, TimeUnit.SECONDS);
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+
+        transport.replay().get(5, TimeUnit.SECONDS);
+
+        // the sent payload is not played
+        assertEquals(Arrays.asList("a", "b", "c"), received);
+        assertEquals(3, transport.getReplayedCount());
+
+        connection.stop();
+    }
+
+    @Test
+    public void testReplayIsPaced() throws Exception {
+        File directory = record(100);
+
+        ReplayTransport transport = new ReplayTransport(directory, new NullLogger());
+        Connection connection = new Connection(SERVER_URL, "", new NullLogger());
+        connection.start(transport).get(1, TimeUnit.SECONDS);
+
+        long start = System.nanoTime();
+        transport.replay().get(5, TimeUnit.SECONDS);
+        long realTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Real time replay took " + realTime + " ms", realTime >= 300);
+
+        transport.setSpeed(10);
+        start = System.nanoTime();
+        transport.replay().get(5, TimeUnit.SECONDS);
+        long scaled = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Scaled replay took " + scaled + " ms", scaled < realTime);
+
+        connection.stop();
+    }
+
+    @Test
+    public void testStopCancelsReplay() throws Exception {
+        File directory = record(1000);
+
+        ReplayTransport transport = new ReplayTransport(directory, new NullLogger());
+        Connection connection = new Connection(SERVER_URL, "", new NullLogger());
+        connection.start(transport).get(1, TimeUnit.SECONDS);
+
+        SignalRFuture<Void> replay = transport.replay();
+        connection.stop();
+
+        assertTrue(replay.isCancelled());
+        Thread.sleep(200);
+        assertTrue(transport.getReplayedCount() <= 1);
+    }
+
+    private File record(long interval) throws Exception {
+        File directory = folder.newFolder();
+        WireRecorder recorder = new WireRecorder(directory, 4096);
+
+        recorder.recordReceived("{\"C\":\"d-1\",\"M\":[\"a\"]}");
+        Thread.sleep(interval);
+        recorder.recordSent("pit");
+        recorder.recordReceived("{\"C\":\"d-2\",\"M\":[\"b\"]}");
+        Thread.sleep(interval * 2);
+        recorder.recordReceived("{\"C\":\"d-3\",\"M\":[\"c\"]}");
+        recorder.close();
+
+        return directory;
+    }
+}
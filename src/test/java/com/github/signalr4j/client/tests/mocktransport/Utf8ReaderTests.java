@@ -0,0 +1,112 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.mocktransport;
+
+import static org.junit.Assert.*;
+
+import com.github.signalr4j.client.Connection;
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.recording.WireLogReader;
+import com.github.signalr4j.client.recording.WireRecorder;
+import com.github.signalr4j.client.tests.util.MockClientTransport;
+import com.github.signalr4j.client.tests.util.Utils;
+import com.github.signalr4j.client.transport.Utf8Reader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class Utf8ReaderTests {
+
+    private static final String SERVER_URL = "http://myUrl.com/signalr/";
+
+    private static final String MULTI_BYTE_TEXT = "{\"M\":[\"R\u00e4ikk\u00f6nen \u2014 \ud83c\udfc1 \u20ac\"]}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTextIsDecoded() throws Exception {
+        for (String text : Arrays.asList("", "{\"C\":\"d-1\",\"M\":[]}", MULTI_BYTE_TEXT)) {
+            ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+
+            // a small buffer splits the surrogate pairs between two reads
+            for (int size : new int[] { 1, 2, 3, 1024 }) {
+                assertEquals(text, readAll(new Utf8Reader(buffer), size));
+            }
+
+            assertEquals(text, Utf8Reader.decode(buffer));
+            assertEquals(0, buffer.position());
+
+            // an offset direct buffer
+            ByteBuffer direct = ByteBuffer.allocateDirect(buffer.remaining() + 2);
+            direct.put((byte) 'x').put(buffer.duplicate()).put((byte) 'x');
+            direct.position(1);
+            direct.limit(direct.capacity() - 1);
+            assertEquals(text, readAll(new Utf8Reader(direct), 7));
+            assertEquals(text, Utf8Reader.decode(direct));
+            assertEquals(1, direct.position());
+        }
+    }
+
+    @Test
+    public void testMalformedBytesAreReplaced() throws Exception {
+        byte[] bytes = { 'a', (byte) 0x80, 'b', (byte) 0xE2, (byte) 0x82, 'c', (byte) 0xC0, (byte) 0x80, (byte) 0xF0, (byte) 0x9F };
+        assertEquals("a\ufffdb\ufffdc\ufffd\ufffd", readAll(new Utf8Reader(ByteBuffer.wrap(bytes)), 16));
+    }
+
+    @Test
+    public void testConnectionParsesReceivedBytes() throws Exception {
+        File directory = folder.newFolder();
+        WireRecorder recorder = new WireRecorder(directory);
+
+        MockClientTransport transport = new MockClientTransport();
+        Connection connection = new Connection(SERVER_URL, "", new NullLogger());
+        connection.setWireRecorder(recorder);
+
+        final List<String> received = new ArrayList<>();
+        connection.received(json -> received.add(json.getAsString()));
+        Utils.startConnection(connection, transport);
+
+        ByteBuffer data = ByteBuffer.wrap(MULTI_BYTE_TEXT.getBytes(StandardCharsets.UTF_8));
+        transport.startOperation.callback.onData(data);
+        transport.startOperation.callback.onData(ByteBuffer.wrap(" \r\n".getBytes(StandardCharsets.US_ASCII)));
+        transport.startOperation.callback.onData(ByteBuffer.wrap("{\"C\":\"d-2\",\"M\":[\"Lap 13\"]}".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals("d-2", connection.getMessageId());
+        connection.stop();
+        recorder.close();
+
+        assertEquals(Arrays.asList("R\u00e4ikk\u00f6nen \u2014 \ud83c\udfc1 \u20ac", "Lap 13"), received);
+        assertEquals(0, data.position());
+
+        // the bytes are recorded as they were received
+        try (WireLogReader reader = new WireLogReader(directory)) {
+            assertEquals(MULTI_BYTE_TEXT, reader.next().getData());
+            assertEquals(" \r\n", reader.next().getData());
+            assertEquals("{\"C\":\"d-2\",\"M\":[\"Lap 13\"]}", reader.next().getData());
+            assertNull(reader.next());
+        }
+    }
+
+    private static String readAll(Utf8Reader reader, int size) throws Exception {
+        StringBuilder text = new StringBuilder();
+        char[] chars = new char[size];
+        int count;
+        while ((count = reader.read(chars, 0, size)) != -1) {
+            text.append(chars, 0, count);
+        }
+
+        return text.toString();
+    }
+}
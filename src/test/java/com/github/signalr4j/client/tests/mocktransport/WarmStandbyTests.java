@@ -0,0 +1,207 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.mocktransport;
+
+import static org.junit.Assert.*;
+
+import com.github.signalr4j.client.Connection;
+import com.github.signalr4j.client.ConnectionState;
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.WarmStandby;
+import com.github.signalr4j.client.tests.util.MockClientTransport;
+import com.github.signalr4j.client.tests.util.Utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+public class WarmStandbyTests {
+
+    private static final String SERVER_URL = "http://myUrl.com/signalr/";
+
+    @Test
+    public void testStandbyIsPromotedWithoutGapsOrDuplicates() throws Exception {
+        final List<MockClientTransport> transports = Collections.synchronizedList(new ArrayList<MockClientTransport>());
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        WarmStandby<Connection> standby = startStandby(transports, delivered);
+
+        MockClientTransport primaryTransport = transports.get(0);
+        MockClientTransport standbyTransport = transports.get(1);
+
+        standbyTransport.startOperation.callback.onData("{\"C\":\"d-1\",\"M\":[\"a\",\"b\"]}");
+        standbyTransport.startOperation.callback.onData("{\"C\":\"d-2\",\"M\":[\"c\"]}");
+        primaryTransport.startOperation.callback.onData("{\"C\":\"d-1\",\"M\":[\"a\",\"b\"]}");
+
+        assertEquals(Arrays.asList("a", "b"), delivered);
+
+        Connection formerStandby = standby.getStandby();
+
+        // the primary is lost
+        primaryTransport.startOperation.callback.onData("{\"D\":1}");
+
+        waitFor(() -> standby.getFailoverCount() == 1);
+        assertSame(formerStandby, standby.getPrimary());
+
+        // the message the primary missed was dispatched, and a new message
+        // with the same content is not taken for a duplicate
+        standbyTransport.startOperation.callback.onData("{\"C\":\"d-3\",\"M\":[\"a\"]}");
+
+        waitFor(() -> delivered.size() == 4);
+        assertEquals(Arrays.asList("a", "b", "c", "a"), delivered);
+
+        // a new standby is started
+        waitFor(() -> transports.size() == 3);
+
+        standby.stop();
+    }
+
+    @Test
+    public void testPromotedStandbySkipsWhatThePrimaryDelivered() throws Exception {
+        final List<MockClientTransport> transports = Collections.synchronizedList(new ArrayList<MockClientTransport>());
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        WarmStandby<Connection> standby = startStandby(transports, delivered);
+
+        MockClientTransport primaryTransport = transports.get(0);
+        MockClientTransport standbyTransport = transports.get(1);
+
+        // the standby subscribed after the first batch and never receives it
+        primaryTransport.startOperation.callback.onData("{\"C\":\"d-1\",\"M\":[\"a1\"]}");
+        primaryTransport.startOperation.callback.onData("{\"C\":\"d-2\",\"M\":[\"b\",\"a2\"]}");
+
+        // the primary is lost before the standby receives the last batch
+        primaryTransport.startOperation.callback.onData("{\"D\":1}");
+        waitFor(() -> standby.getFailoverCount() == 1);
+
+        standbyTransport.startOperation.callback.onData("{\"C\":\"d-2\",\"M\":[\"b\",\"a2\"]}");
+        standbyTransport.startOperation.callback.onData("{\"C\":\"d-3\",\"M\":[\"a3\"]}");
+
+        assertEquals(Arrays.asList("a1", "b", "a2", "a3"), delivered);
+
+        standby.stop();
+    }
+
+    @Test
+    public void testMessagesAreMatchedAcrossCursorsAndBatches() throws Exception {
+        final List<MockClientTransport> transports = Collections.synchronizedList(new ArrayList<MockClientTransport>());
+        final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        WarmStandby<Connection> standby = startStandby(transports, delivered);
+
+        MockClientTransport primaryTransport = transports.get(0);
+        MockClientTransport standbyTransport = transports.get(1);
+
+        // each connection has its own cursors, and its polls cut the batches
+        // differently
+        primaryTransport.startOperation.callback.onData("{\"C\":\"d-A1,2|B,5\",\"M\":[\"lap 1\",\"lap 2\"]}");
+        standbyTransport.startOperation.callback.onData("{\"C\":\"d-C1,1|D,3\",\"M\":[\"lap 1\"]}");
+        primaryTransport.startOperation.callback.onData("{\"C\":\"d-A1,3|B,5\",\"M\":[\"lap 3\"]}");
+        standbyTransport.startOperation.callback.onData("{\"C\":\"d-C1,4|D,3\",\"M\":[\"lap 2\",\"lap 3\",\"lap 4\"]}");
+        primaryTransport.startOperation.callback.onData("{\"C\":\"d-A1,5|B,5\",\"M\":[\"lap 4\",\"lap 5\"]}");
+
+        assertEquals(Arrays.asList("lap 1", "lap 2", "lap 3", "lap 4", "lap 5"), delivered);
+
+        // the primary is lost ahead of the standby
+        primaryTransport.startOperation.callback.onData("{\"D\":1}");
+        waitFor(() -> standby.getFailoverCount() == 1);
+
+        standbyTransport.startOperation.callback.onData("{\"C\":\"d-C1,6|D,3\",\"M\":[\"lap 5\",\"lap 6\"]}");
+
+        assertEquals(Arrays.asList("lap 1", "lap 2", "lap 3", "lap 4", "lap 5", "lap 6"), delivered);
+
+        // and the standby was ahead of the primary when it was lost
+        MockClientTransport newStandbyTransport = waitForStandby(standby, transports, 3);
+        newStandbyTransport.startOperation.callback.onData("{\"C\":\"d-E1,1\",\"M\":[\"lap 7\",\"lap 8\"]}");
+        standbyTransport.startOperation.callback.onData("{\"C\":\"d-C1,7|D,3\",\"M\":[\"lap 7\"]}");
+
+        standbyTransport.startOperation.callback.onData("{\"D\":1}");
+        waitFor(() -> standby.getFailoverCount() == 2);
+        waitFor(() -> delivered.size() == 8);
+
+        assertEquals(Arrays.asList("lap 1", "lap 2", "lap 3", "lap 4", "lap 5", "lap 6", "lap 7", "lap 8"), delivered);
+
+        standby.stop();
+    }
+
+    @Test
+    public void testStartHandlersRunWithoutTheLock() throws Exception {
+        final List<MockClientTransport> transports = Collections.synchronizedList(new ArrayList<MockClientTransport>());
+        final WarmStandby<Connection> standby = new WarmStandby<>(() -> new Connection(SERVER_URL, "", new NullLogger()), () -> {
+            MockClientTransport transport = new MockClientTransport();
+            transports.add(transport);
+            return transport;
+        });
+
+        // another thread reads the primary while the handler runs
+        final AtomicReference<Connection> primary = new AtomicReference<>();
+        final AtomicBoolean readInHandler = new AtomicBoolean(false);
+        standby.start().done(obj -> {
+            Thread reader = new Thread(() -> primary.set(standby.getPrimary()));
+            reader.start();
+            reader.join(1000);
+            readInHandler.set(!reader.isAlive());
+        });
+
+        connect(transports.get(0));
+        standby.start().get(1, TimeUnit.SECONDS);
+
+        waitFor(readInHandler::get);
+        assertNotNull(primary.get());
+
+        standby.stop();
+    }
+
+    private static MockClientTransport waitForStandby(WarmStandby<Connection> standby, List<MockClientTransport> transports, int count) throws Exception {
+        waitFor(() -> transports.size() == count);
+
+        MockClientTransport transport = transports.get(count - 1);
+        connect(transport);
+        waitFor(() -> standby.getStandby() != null && standby.getStandby().getState() == ConnectionState.CONNECTED);
+
+        return transport;
+    }
+
+    private static WarmStandby<Connection> startStandby(final List<MockClientTransport> transports, final List<String> delivered) throws Exception {
+        WarmStandby<Connection> standby = new WarmStandby<>(() -> {
+            Connection connection = new Connection(SERVER_URL, "", new NullLogger());
+            connection.received(json -> delivered.add(json.getAsString()));
+            return connection;
+        }, () -> {
+            MockClientTransport transport = new MockClientTransport();
+            transports.add(transport);
+            return transport;
+        });
+
+        standby.start();
+
+        connect(transports.get(0));
+        connect(transports.get(1));
+
+        standby.start().get(1, TimeUnit.SECONDS);
+        waitFor(() -> standby.getStandby().getState() == ConnectionState.CONNECTED);
+
+        return standby;
+    }
+
+    private static void connect(MockClientTransport transport) {
+        transport.negotiationFuture.setResult(Utils.getDefaultNegotiationResponse());
+        transport.startOperation.future.setResult(null);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(20);
+        }
+
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,200 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.mocktransport;
+
+import static org.junit.Assert.*;
+
+import com.github.signalr4j.client.Connection;
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.recording.WireLogReader;
+import com.github.signalr4j.client.recording.WireRecord;
+import com.github.signalr4j.client.recording.WireRecorder;
+import com.github.signalr4j.client.tests.util.MockClientTransport;
+import com.github.signalr4j.client.tests.util.Utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class WireRecorderTests {
+
+    private static final String SERVER_URL = "http://myUrl.com/signalr/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConnectionPayloadsAreRecorded() throws Exception {
+        File directory = folder.newFolder();
+        WireRecorder recorder = new WireRecorder(directory);
+
+        MockClientTransport transport = new MockClientTransport();
+        Connection connection = new Connection(SERVER_URL, "", new NullLogger());
+        connection.setWireRecorder(recorder);
+        Utils.startConnection(connection, transport);
+
+        transport.startOperation.callback.onData("{\"C\":\"d-1\",\"M\":[\"Lap 12 \u00e9\"]}");
+        connection.send("pit");
+        transport.startOperation.callback.onData("{\"C\":\"d-2\",\"M\":[\"Lap 13\"]}");
+        connection.stop();
+        recorder.close();
+
+        List<WireRecord> records = readAll(directory);
+        assertEquals(3, records.size());
+
+        assertEquals(WireRecord.Direction.RECEIVED, records.get(0).getDirection());
+        assertEquals("{\"C\":\"d-1\",\"M\":[\"Lap 12 \u00e9\"]}", records.get(0).getData());
+        assertEquals(WireRecord.Direction.SENT, records.get(1).getDirection());
+        assertEquals("pit", records.get(1).getData());
+        assertEquals(WireRecord.Direction.RECEIVED, records.get(2).getDirection());
+
+        assertTrue(records.get(0).getTimestamp() <= records.get(1).getTimestamp());
+        assertTrue(records.get(1).getTimestamp() <= records.get(2).getTimestamp());
+
+        long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        assertTrue(Math.abs(now - records.get(0).getTimestamp()) < TimeUnit.MINUTES.toNanos(1));
+    }
+
+    @Test
+    public void testSegmentsAreRolled() throws Exception {
+        File directory = folder.newFolder();
+        WireRecorder recorder = new WireRecorder(directory, 256);
+
+        List<String> payloads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String payload = "{\"C\":\"d-" + i + "\",\"M\":[" + i + "]}";
+            payloads.add(payload);
+            recorder.recordReceived(payload);
+        }
+
+        // larger than a segment
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            large.append("\u20ac");
+        }
+        recorder.recordSent(large.toString());
+        payloads.add(large.toString());
+        recorder.close();
+
+        assertNull(recorder.getError());
+        assertEquals(101, recorder.getRecordCount());
+        assertTrue(directory.listFiles().length > 1);
+
+        List<WireRecord> records = readAll(directory);
+        assertEquals(payloads.size(), records.size());
+        for (int i = 0; i < payloads.size(); i++) {
+            assertEquals(payloads.get(i), records.get(i).getData());
+        }
+    }
+
+    @Test
+    public void testConcurrentPayloadsAreRecorded() throws Exception {
+        File directory = folder.newFolder();
+        final WireRecorder recorder = new WireRecorder(directory, 4096);
+
+        // the received and sent payloads are copied at the same time, across
+        // segment rollovers
+        Thread receiving = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                recorder.recordReceived("{\"C\":\"d-" + i + "\",\"M\":[" + i + "]}");
+            }
+        });
+        Thread sending = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                recorder.recordSent("{\"I\":\"" + i + "\",\"H\":\"raceHub\",\"M\":\"lap\",\"A\":[]}");
+            }
+        });
+
+        // flushing waits for the copies in progress
+        Thread flushing = new Thread(() -> {
+            for (int i = 0; i < 50; i++) {
+                recorder.flush();
+            }
+        });
+        receiving.start();
+        sending.start();
+        flushing.start();
+        receiving.join();
+        sending.join();
+        flushing.join();
+        recorder.close();
+
+        assertNull(recorder.getError());
+        assertEquals(4000, recorder.getRecordCount());
+
+        List<String> received = new ArrayList<>();
+        List<String> sent = new ArrayList<>();
+        for (WireRecord record : readAll(directory)) {
+            (record.getDirection() == WireRecord.Direction.RECEIVED ? received : sent).add(record.getData());
+        }
+
+        assertEquals(2000, received.size());
+        assertEquals(2000, sent.size());
+        for (int i = 0; i < 2000; i++) {
+            assertEquals("{\"C\":\"d-" + i + "\",\"M\":[" + i + "]}", received.get(i));
+            assertEquals("{\"I\":\"" + i + "\",\"H\":\"raceHub\",\"M\":\"lap\",\"A\":[]}", sent.get(i));
+        }
+    }
+
+    @Test
+    public void testIncompleteRecordIsSkipped() throws Exception {
+        File directory = folder.newFolder();
+        WireRecorder recorder = new WireRecorder(directory, 1024);
+        recorder.recordReceived("first");
+        recorder.recordReceived("second");
+        recorder.recordSent("third");
+        recorder.close();
+
+        // clears the commit marker of the second record, as if the process
+        // died while copying it: the segment header is 8 bytes and the first
+        // record is 19 bytes, and the marker follows the record length
+        try (RandomAccessFile file = new RandomAccessFile(directory.listFiles()[0], "rw")) {
+            file.seek(8 + 19 + 4);
+            file.write(0);
+        }
+
+        List<WireRecord> records = readAll(directory);
+        assertEquals(2, records.size());
+        assertEquals("first", records.get(0).getData());
+        assertEquals("third", records.get(1).getData());
+    }
+
+    @Test
+    public void testRecorderContinuesExistingLog() throws Exception {
+        File directory = folder.newFolder();
+
+        WireRecorder first = new WireRecorder(directory, 1024);
+        first.recordReceived("first");
+        first.close();
+
+        WireRecorder second = new WireRecorder(directory, 1024);
+        second.recordReceived("second");
+        second.close();
+
+        List<WireRecord> records = readAll(directory);
+        assertEquals(2, records.size());
+        assertEquals("first", records.get(0).getData());
+        assertEquals("second", records.get(1).getData());
+    }
+
+    private static List<WireRecord> readAll(File directory) throws Exception {
+        List<WireRecord> records = new ArrayList<>();
+        try (WireLogReader reader = new WireLogReader(directory)) {
+            for (WireRecord record = reader.next(); record != null; record = reader.next()) {
+                records.add(record);
+            }
+        }
+
+        return records;
+    }
+}
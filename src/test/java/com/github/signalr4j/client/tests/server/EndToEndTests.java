@@ -0,0 +1,218 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.signalr4j.client.ConnectionState;
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.SignalRFuture;
+import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubProxy;
+import com.github.signalr4j.client.transport.AutomaticTransport;
+import com.github.signalr4j.client.transport.ClientTransport;
+import com.github.signalr4j.client.transport.LongPollingTransport;
+import com.github.signalr4j.client.transport.ServerSentEventsTransport;
+import com.github.signalr4j.client.transport.WebsocketTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EndToEndTests {
+
+    private static final String HUB = "TelemetryHub";
+
+    private static final int INVOCATIONS = 200;
+
+    private SignalRTestServer server;
+
+    private HubConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SignalRTestServer();
+        server.setPollTimeout(1000);
+        server.addHubMethod(HUB, "Add", (connectionId, args) -> args[0].getAsInt() + args[1].getAsInt());
+        server.addHubMethod(HUB, "Fail", (connectionId, args) -> {
+            throw new IllegalStateException("Lap not found");
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (connection != null) {
+            connection.stop();
+        }
+        server.stop();
+    }
+
+    @Test
+    public void testWebSocketsEndToEnd() throws Exception {
+        runEndToEnd(new WebsocketTransport(new NullLogger()));
+    }
+
+    @Test
+    public void testServerSentEventsEndToEnd() throws Exception {
+        runEndToEnd(new ServerSentEventsTransport(new NullLogger()));
+    }
+
+    @Test
+    public void testLongPollingEndToEnd() throws Exception {
+        runEndToEnd(new LongPollingTransport(new NullLogger()));
+    }
+
+    @Test
+    public void testWebSocketsDeliverMultiByteText() throws Exception {
+        HubProxy proxy = createConnection();
+
+        final CountDownLatch received = new CountDownLatch(1);
+        final List<String> drivers = new ArrayList<>();
+        proxy.on("driverChanged", driver -> {
+            drivers.add(driver);
+            received.countDown();
+        }, String.class);
+
+        connection.start(new WebsocketTransport(new NullLogger())).get(10, TimeUnit.SECONDS);
+
+        // the text frames are parsed from their UTF-8 bytes
+        String driver = "Kimi R\u00e4ikk\u00f6nen \u2014 \ud83c\udfc1";
+        server.broadcast(HUB, "driverChanged", driver);
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        assertEquals(driver, drivers.get(0));
+    }
+
+    @Test
+    public void testMissedMessagesDeliveredAfterReconnect() throws Exception {
+        HubProxy proxy = createConnection();
+
+        final List<Integer> laps = new ArrayList<>();
+        final CountDownLatch received = new CountDownLatch(3);
+        proxy.on("lapCompleted", lap -> {
+            synchronized (laps) {
+                laps.add(lap);
+            }
+            received.countDown();
+        }, Integer.class);
+
+        connection.start(new WebsocketTransport(new NullLogger())).get(10, TimeUnit.SECONDS);
+
+        server.broadcast(HUB, "lapCompleted", 1);
+        waitForSize(laps, 1);
+
+        // the messages sent while the transport is down are kept by the
+        // server and delivered from the client cursor on reconnect
+        server.dropConnections();
+        server.broadcast(HUB, "lapCompleted", 2);
+        server.broadcast(HUB, "lapCompleted", 3);
+
+        assertTrue(received.await(15, TimeUnit.SECONDS));
+        synchronized (laps) {
+            assertEquals(3, laps.size());
+            assertEquals(Integer.valueOf(1), laps.get(0));
+            assertEquals(Integer.valueOf(2), laps.get(1));
+            assertEquals(Integer.valueOf(3), laps.get(2));
+        }
+    }
+
+    @Test
+    public void testAutomaticTransportSurvivesLateAttempt() throws Exception {
+        // the WebSocket connect completes long after the attempt delay
+        server.setConnectDelay("webSockets", 1000);
+        AutomaticTransport.clearPreferredTransports();
+
+        HubProxy proxy = createConnection();
+
+        final CountDownLatch received = new CountDownLatch(1);
+        proxy.on("driverChanged", driver -> received.countDown(), String.class);
+
+        final AtomicInteger reconnecting = new AtomicInteger(0);
+        connection.reconnecting(reconnecting::incrementAndGet);
+
+        AutomaticTransport transport = new AutomaticTransport(new NullLogger(),
+                Arrays.<ClientTransport> asList(new WebsocketTransport(new NullLogger()), new ServerSentEventsTransport(new NullLogger())));
+        transport.setAttemptDelay(200);
+
+        connection.start(transport).get(10, TimeUnit.SECONDS);
+        assertEquals("serverSentEvents", transport.getName());
+
+        // the stopped WebSocket attempt does not take the connection over
+        // once its connect is served
+        Thread.sleep(1500);
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+        assertEquals(0, reconnecting.get());
+
+        assertEquals(Integer.valueOf(3), proxy.invoke(Integer.class, "Add", 1, 2).get(10, TimeUnit.SECONDS));
+        server.broadcast(HUB, "driverChanged", "Ayrton");
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+    }
+
+    private void runEndToEnd(ClientTransport transport) throws Exception {
+        HubProxy proxy = createConnection();
+
+        final CountDownLatch received = new CountDownLatch(1);
+        final List<String> drivers = new ArrayList<>();
+        proxy.on("driverChanged", driver -> {
+            drivers.add(driver);
+            received.countDown();
+        }, String.class);
+
+        connection.start(transport).get(10, TimeUnit.SECONDS);
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+        assertEquals(1, server.getConnectionCount());
+
+        List<SignalRFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < INVOCATIONS; i++) {
+            results.add(proxy.invoke(Integer.class, "Add", i, 1));
+        }
+
+        for (int i = 0; i < INVOCATIONS; i++) {
+            assertEquals(Integer.valueOf(i + 1), results.get(i).get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(INVOCATIONS, server.getInvocationCount());
+
+        try {
+            proxy.invoke("Fail").get(10, TimeUnit.SECONDS);
+            fail("The invocation should fail");
+        } catch (ExecutionException e) {
+            assertEquals("Lap not found", e.getCause().getMessage());
+        }
+
+        server.broadcast(HUB, "driverChanged", "Ayrton");
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        assertEquals("Ayrton", drivers.get(0));
+    }
+
+    private HubProxy createConnection() {
+        connection = new HubConnection(server.getUrl(), null, false, new NullLogger());
+        return connection.createHubProxy(HUB);
+    }
+
+    private static void waitForSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            synchronized (list) {
+                if (list.size() >= size) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+    }
+}
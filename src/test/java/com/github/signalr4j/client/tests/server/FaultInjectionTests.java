@@ -0,0 +1,141 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.github.signalr4j.client.ConnectionState;
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.Platform;
+import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubProxy;
+import com.github.signalr4j.client.tests.fault.FaultInjectingHttpConnection;
+import com.github.signalr4j.client.tests.fault.FaultInjectingTransport;
+import com.github.signalr4j.client.tests.fault.FaultSchedule;
+import com.github.signalr4j.client.transport.LongPollingTransport;
+import com.github.signalr4j.client.transport.WebsocketTransport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FaultInjectionTests {
+
+    private static final String HUB = "TelemetryHub";
+
+    private SignalRTestServer server;
+
+    private HubConnection connection;
+
+    private HubProxy proxy;
+
+    private final Semaphore reconnecting = new Semaphore(0);
+
+    private final Semaphore reconnected = new Semaphore(0);
+
+    @Before
+    public void setUp() throws Exception {
+        server = new SignalRTestServer();
+        server.setPollTimeout(1000);
+        server.setKeepAliveTimeout(1500);
+        server.addHubMethod(HUB, "Add", (connectionId, args) -> args[0].getAsInt() + args[1].getAsInt());
+        server.start();
+
+        connection = new HubConnection(server.getUrl(), "", true, new NullLogger());
+        connection.reconnecting(reconnecting::release);
+        connection.reconnected(reconnected::release);
+        proxy = connection.createHubProxy(HUB);
+    }
+
+    @After
+    public void tearDown() {
+        connection.stop();
+        server.stop();
+    }
+
+    @Test
+    public void testSameSeedGivesSameSchedule() {
+        FaultSchedule first = createSchedule(42);
+        FaultSchedule second = createSchedule(42);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(first.nextDelay(100), second.nextDelay(100));
+            assertEquals(first.nextDrop(), second.nextDrop());
+            assertEquals(first.nextStall(), second.nextStall());
+            assertEquals(first.nextClose(), second.nextClose());
+        }
+
+        assertEquals(first.getDroppedCount(), second.getDroppedCount());
+        assertTrue(first.getDroppedCount() > 0);
+    }
+
+    @Test
+    public void testLatencyDelaysInvocations() throws Exception {
+        FaultSchedule schedule = new FaultSchedule(1);
+        connection.start(new FaultInjectingTransport(new WebsocketTransport(new NullLogger()), schedule)).get(10, TimeUnit.SECONDS);
+
+        schedule.setLatency(100, 0);
+
+        // the invocation and its result both cross the link
+        long start = System.nanoTime();
+        assertEquals(Integer.valueOf(3), proxy.invoke(Integer.class, "Add", 1, 2).get(10, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("Invocation took " + elapsed + " ms", elapsed >= 200);
+        assertTrue(schedule.getDelayedCount() >= 2);
+    }
+
+    @Test
+    public void testHeartbeatDetectsLostFrames() throws Exception {
+        FaultSchedule schedule = new FaultSchedule(2);
+        connection.start(new FaultInjectingTransport(new WebsocketTransport(new NullLogger()), schedule)).get(10, TimeUnit.SECONDS);
+
+        // the keep alives are lost too, so only the heartbeat monitor can
+        // notice the connection is gone
+        long start = System.nanoTime();
+        schedule.setDropRate(1);
+
+        assertTrue(reconnecting.tryAcquire(10, TimeUnit.SECONDS));
+        long detection = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Detection took " + detection + " ms", detection >= 1000);
+
+        schedule.clear();
+        assertTrue(reconnected.tryAcquire(10, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(5), proxy.invoke(Integer.class, "Add", 2, 3).get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAbruptCloseReconnects() throws Exception {
+        FaultSchedule schedule = new FaultSchedule(3);
+        FaultInjectingHttpConnection httpConnection = new FaultInjectingHttpConnection(Platform.createHttpConnection(new NullLogger()), schedule);
+        connection.start(new LongPollingTransport(new NullLogger(), httpConnection)).get(10, TimeUnit.SECONDS);
+
+        schedule.setCloseRate(1);
+
+        assertTrue(reconnecting.tryAcquire(10, TimeUnit.SECONDS));
+        assertTrue(schedule.getClosedCount() > 0);
+
+        schedule.clear();
+        assertTrue(reconnected.tryAcquire(10, TimeUnit.SECONDS));
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+        assertEquals(Integer.valueOf(5), proxy.invoke(Integer.class, "Add", 2, 3).get(10, TimeUnit.SECONDS));
+    }
+
+    private static FaultSchedule createSchedule(long seed) {
+        FaultSchedule schedule = new FaultSchedule(seed);
+        schedule.setLatency(20, 30);
+        schedule.setBandwidth(64 * 1024);
+        schedule.setDropRate(0.1);
+        schedule.setStall(0.05, 500);
+        schedule.setCloseRate(0.01);
+        return schedule;
+    }
+}
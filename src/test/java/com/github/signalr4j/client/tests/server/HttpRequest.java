@@ -0,0 +1,185 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal HTTP/1.1 request parser and response writer, enough for the
+ * SignalR client transports
+ */
+class HttpRequest {
+
+    private static final int MAX_HEAD_SIZE = 64 * 1024;
+
+    private final String method;
+
+    private final String action;
+
+    private final Map<String, String> query;
+
+    private final Map<String, String> headers;
+
+    private final String body;
+
+    private HttpRequest(String method, String action, Map<String, String> query, Map<String, String> headers, String body) {
+        this.method = method;
+        this.action = action;
+        this.query = query;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * Returns the verb
+     */
+    String getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the last segment of the path, e.g. "negotiate"
+     */
+    String getAction() {
+        return action;
+    }
+
+    String getQueryParameter(String name) {
+        return query.get(name);
+    }
+
+    String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns a field of the url-encoded form body
+     */
+    String getFormField(String name) {
+        return body == null ? null : parseParameters(body).get(name);
+    }
+
+    boolean isWebSocketUpgrade() {
+        String upgrade = getHeader("Upgrade");
+        return upgrade != null && "websocket".equalsIgnoreCase(upgrade);
+    }
+
+    /**
+     * Reads a request
+     *
+     * @return The request, or null if the stream ended before a request
+     */
+    static HttpRequest read(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream(512);
+
+        // the head ends with \r\n\r\n
+        int last = 0;
+        while (last != 0x0D0A0D0A) {
+            int b = in.read();
+            if (b == -1) {
+                return null;
+            }
+
+            head.write(b);
+            if (head.size() > MAX_HEAD_SIZE) {
+                throw new IOException("Request head too large");
+            }
+
+            last = (last << 8) | b;
+        }
+
+        String[] lines = new String(head.toByteArray(), StandardCharsets.ISO_8859_1).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length < 2) {
+            throw new IOException("Invalid request line: " + lines[0]);
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+            }
+        }
+
+        String target = requestLine[1];
+        int questionMark = target.indexOf('?');
+        String path = questionMark == -1 ? target : target.substring(0, questionMark);
+        Map<String, String> query = questionMark == -1 ? new HashMap<>() : parseParameters(target.substring(questionMark + 1));
+
+        String action = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        action = action.substring(action.lastIndexOf('/') + 1);
+
+        String body = null;
+        String contentLength = headers.get("content-length");
+        if (contentLength != null) {
+            int length = Integer.parseInt(contentLength);
+            byte[] content = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int count = in.read(content, read, length - read);
+                if (count == -1) {
+                    throw new IOException("Unexpected end of body");
+                }
+                read += count;
+            }
+
+            body = new String(content, StandardCharsets.UTF_8);
+        }
+
+        return new HttpRequest(requestLine[0], action, query, headers, body);
+    }
+
+    /**
+     * Writes a complete response. The connection is closed afterwards, like
+     * the client HttpURLConnection does after each request
+     */
+    static void writeResponse(OutputStream out, int status, String reason, String contentType, String content) throws IOException {
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+
+    private static Map<String, String> parseParameters(String encoded) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : encoded.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+
+            int equals = pair.indexOf('=');
+            String name = equals == -1 ? pair : pair.substring(0, equals);
+            String value = equals == -1 ? "" : pair.substring(equals + 1);
+            parameters.put(decode(name), decode(value));
+        }
+
+        return parameters;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
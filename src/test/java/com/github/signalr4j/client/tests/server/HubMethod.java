@@ -0,0 +1,28 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.server;
+
+import com.google.gson.JsonElement;
+
+/**
+ * A hub method exposed by the test server
+ */
+public interface HubMethod {
+
+    /**
+     * Invokes the method
+     *
+     * @param connectionId
+     *            The id of the calling connection
+     * @param args
+     *            The invocation arguments
+     * @return The result, serialized with Gson, or null
+     * @throws Exception
+     *             The error message is returned to the caller
+     */
+    Object invoke(String connectionId, JsonElement[] args) throws Exception;
+}
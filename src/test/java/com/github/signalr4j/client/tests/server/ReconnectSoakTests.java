@@ -0,0 +1,232 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.github.signalr4j.client.ConnectionState;
+import com.github.signalr4j.client.NullLogger;
+import com.github.signalr4j.client.hubs.HubConnection;
+import com.github.signalr4j.client.hubs.HubProxy;
+import com.github.signalr4j.client.tests.util.MockClientTransport;
+import com.github.signalr4j.client.tests.util.Utils;
+import com.github.signalr4j.client.transport.ClientTransport;
+import com.github.signalr4j.client.transport.LongPollingTransport;
+import com.github.signalr4j.client.transport.WebsocketTransport;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Runs many connect, reconnect and stop cycles on the same connection and
+ * checks that the threads, the pending invocations and the retained heap
+ * go back to their baseline. The number of cycles can be raised with the
+ * signalr4j.soakCycles system property for longer runs
+ */
+public class ReconnectSoakTests {
+
+    private static final String HUB = "TelemetryHub";
+
+    private static final int MOCK_CYCLES = Integer.getInteger("signalr4j.soakCycles", 2000);
+
+    private static final int SERVER_CYCLES = Integer.getInteger("signalr4j.soakCycles", 100);
+
+    private static final int WARMUP_CYCLES = 5;
+
+    // a few threads may come and go on their own (e.g. pooled HTTP threads
+    // waiting to expire), a leak grows with the number of cycles
+
+    private static final int THREAD_TOLERANCE = 4;
+
+    private static final long HEAP_TOLERANCE = 8 * 1024 * 1024;
+
+    private SignalRTestServer server;
+
+    private HubConnection connection;
+
+    private final AtomicInteger closedCount = new AtomicInteger();
+
+    private final Semaphore reconnected = new Semaphore(0);
+
+    private final Semaphore closed = new Semaphore(0);
+
+    @After
+    public void tearDown() {
+        if (connection != null) {
+            connection.stop();
+        }
+
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testMockTransportCycles() throws Exception {
+        MockClientTransport transport = new MockClientTransport();
+        connection = createConnection("http://myUrl.com/");
+        HubProxy proxy = connection.createHubProxy(HUB);
+
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            runMockCycle(transport, proxy);
+        }
+
+        Baseline baseline = new Baseline();
+
+        for (int i = 0; i < MOCK_CYCLES; i++) {
+            runMockCycle(transport, proxy);
+        }
+
+        baseline.assertReached(MOCK_CYCLES + WARMUP_CYCLES);
+    }
+
+    @Test
+    public void testWebSocketsCycles() throws Exception {
+        startServer();
+        runServerCycles(() -> new WebsocketTransport(new NullLogger()), () -> server.dropConnections());
+    }
+
+    @Test
+    public void testLongPollingCycles() throws Exception {
+        // a dropped poll looks like an empty response to the client, so the
+        // failure is raised on the client side
+        startServer();
+        runServerCycles(() -> new LongPollingTransport(new NullLogger()), () -> connection.onError(new IOException("Poll failed"), true));
+    }
+
+    private void runMockCycle(MockClientTransport transport, HubProxy proxy) throws Exception {
+        Utils.startConnection(connection, transport);
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+
+        proxy.invoke(Integer.class, "Add", 1, 2);
+
+        // the server asks the client to reconnect, the first attempt is
+        // immediate
+        transport.startOperation.callback.onData("{\"T\":1}");
+        transport.abortFuture.setResult(null);
+        transport.startOperation.future.setResult(null);
+        assertEquals(ConnectionState.CONNECTED, connection.getState());
+
+        connection.stop();
+        transport.abortFuture.setResult(null);
+        assertEquals(ConnectionState.DISCONNECTED, connection.getState());
+        assertEquals(0, connection.getPendingInvocationCount());
+    }
+
+    private void runServerCycles(Supplier<ClientTransport> transportFactory, Runnable failure) throws Exception {
+        connection = createConnection(server.getUrl());
+        HubProxy proxy = connection.createHubProxy(HUB);
+
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            runServerCycle(transportFactory.get(), proxy, failure);
+        }
+
+        Baseline baseline = new Baseline();
+
+        for (int i = 0; i < SERVER_CYCLES; i++) {
+            runServerCycle(transportFactory.get(), proxy, failure);
+        }
+
+        baseline.assertReached(SERVER_CYCLES + WARMUP_CYCLES);
+    }
+
+    private void runServerCycle(ClientTransport transport, HubProxy proxy, Runnable failure) throws Exception {
+        reconnected.drainPermits();
+
+        connection.start(transport).get(10, TimeUnit.SECONDS);
+        assertEquals(3, add(proxy, 1, 2));
+
+        failure.run();
+        assertTrue(reconnected.tryAcquire(10, TimeUnit.SECONDS));
+        assertEquals(5, add(proxy, 2, 3));
+
+        connection.stop();
+        assertTrue(closed.tryAcquire(10, TimeUnit.SECONDS));
+        assertEquals(0, connection.getPendingInvocationCount());
+    }
+
+    private int add(HubProxy proxy, int a, int b) throws Exception {
+        return proxy.invoke(Integer.class, "Add", a, b).get(10, TimeUnit.SECONDS);
+    }
+
+    private void startServer() throws IOException {
+        server = new SignalRTestServer();
+        server.setPollTimeout(1000);
+        server.addHubMethod(HUB, "Add", (connectionId, args) -> args[0].getAsInt() + args[1].getAsInt());
+        server.start();
+    }
+
+    private HubConnection createConnection(String url) {
+        HubConnection hubConnection = new HubConnection(url, "", true, new NullLogger());
+        hubConnection.reconnected(reconnected::release);
+        hubConnection.closed(() -> {
+            closedCount.incrementAndGet();
+            closed.release();
+        });
+
+        return hubConnection;
+    }
+
+    private static int countClientThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && !thread.getName().startsWith("signalr-test-server")) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private class Baseline {
+        private final int threads;
+        private final long heap;
+
+        private Baseline() throws InterruptedException {
+            threads = countClientThreads();
+            heap = usedHeapAfterGc();
+        }
+
+        private void assertReached(int cycles) throws InterruptedException {
+            // the user handler must not be replaced by the transports
+            assertEquals(cycles, closedCount.get());
+            assertEquals(0, connection.getPendingInvocationCount());
+
+            // the threads of the last cycle may take a moment to exit
+            long deadline = System.currentTimeMillis() + 10000;
+            int current = countClientThreads();
+            while (current > threads + THREAD_TOLERANCE && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+                current = countClientThreads();
+            }
+
+            assertTrue("Threads went from " + threads + " to " + current, current <= threads + THREAD_TOLERANCE);
+
+            long used = usedHeapAfterGc();
+            assertTrue("Retained heap went from " + heap + " to " + used + " bytes", used <= heap + HEAP_TOLERANCE);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.server;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Server side state of a client connection: the messages waiting to be
+ * delivered, identified by a sequence number that is used as the message
+ * cursor, and the transport currently attached
+ */
+class ServerConnection {
+
+    private final String connectionId;
+
+    private final String connectionToken;
+
+    private final int maxBuffered;
+
+    private final Deque<Entry> messages = new ArrayDeque<>();
+
+    private long lastSequence = 0;
+
+    private int generation = 0;
+
+    private boolean closed = false;
+
+    private long closedTime = 0;
+
+    private Runnable detach;
+
+    ServerConnection(String connectionId, String connectionToken, int maxBuffered) {
+        this.connectionId = connectionId;
+        this.connectionToken = connectionToken;
+        this.maxBuffered = maxBuffered;
+    }
+
+    String getConnectionId() {
+        return connectionId;
+    }
+
+    String getConnectionToken() {
+        return connectionToken;
+    }
+
+    /**
+     * Queues a message for the client
+     *
+     * @param json
+     *            The serialized message
+     */
+    synchronized void enqueue(String json) {
+        messages.addLast(new Entry(++lastSequence, json));
+        if (messages.size() > maxBuffered) {
+            messages.removeFirst();
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Returns the sequence of the last queued message
+     */
+    synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Attaches a new transport. The previous one, if any, stops delivering
+     *
+     * @param detach
+     *            Closes the transport when it is replaced or dropped
+     * @return The generation of the transport
+     */
+    synchronized int attach(Runnable detach) {
+        Runnable previous = this.detach;
+        this.detach = detach;
+        generation++;
+        notifyAll();
+
+        if (previous != null) {
+            previous.run();
+        }
+
+        return generation;
+    }
+
+    /**
+     * Closes the attached transport without closing the connection, as a
+     * network failure would
+     */
+    synchronized void drop() {
+        generation++;
+        notifyAll();
+
+        if (detach != null) {
+            detach.run();
+            detach = null;
+        }
+    }
+
+    /**
+     * Closes the attached transport, as an abort does. The state is kept,
+     * as the client may still reconnect with the same token
+     */
+    synchronized void close() {
+        closed = true;
+        closedTime = System.currentTimeMillis();
+        drop();
+    }
+
+    /**
+     * Opens the connection again when the client reconnects after an abort
+     */
+    synchronized void reopen() {
+        closed = false;
+    }
+
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns whether the connection was closed for longer than a timeout
+     *
+     * @param timeout
+     *            The timeout in milliseconds
+     */
+    synchronized boolean isExpired(long timeout) {
+        return closed && System.currentTimeMillis() - closedTime > timeout;
+    }
+
+    synchronized boolean isActive(int transportGeneration) {
+        return !closed && generation == transportGeneration;
+    }
+
+    /**
+     * Waits for messages after a cursor
+     *
+     * @param after
+     *            The sequence of the last message the client has
+     * @param timeout
+     *            The maximum time to wait in milliseconds
+     * @param transportGeneration
+     *            The generation of the waiting transport
+     * @return The messages, or null if there was none before the timeout or
+     *         the transport was replaced
+     */
+    synchronized Batch awaitMessages(long after, long timeout, int transportGeneration) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        while (lastSequence <= after && isActive(transportGeneration)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return null;
+            }
+
+            wait(remaining);
+        }
+
+        if (lastSequence <= after || !isActive(transportGeneration)) {
+            return null;
+        }
+
+        // the client acknowledged everything up to the cursor
+        while (!messages.isEmpty() && messages.peekFirst().sequence <= after) {
+            messages.removeFirst();
+        }
+
+        StringBuilder response = new StringBuilder();
+        response.append("{\"C\":\"").append(lastSequence).append("\",\"M\":[");
+
+        boolean first = true;
+        for (Entry entry : messages) {
+            if (!first) {
+                response.append(',');
+            }
+
+            response.append(entry.json);
+            first = false;
+        }
+
+        response.append("]}");
+        return new Batch(lastSequence, response.toString());
+    }
+
+    /**
+     * Messages serialized as a SignalR persistent response
+     */
+    static class Batch {
+        final long last;
+        final String json;
+
+        Batch(long last, String json) {
+            this.last = last;
+            this.json = json;
+        }
+    }
+
+    private static class Entry {
+        private final long sequence;
+        private final String json;
+
+        Entry(long sequence, String json) {
+            this.sequence = sequence;
+            this.json = json;
+        }
+    }
+}
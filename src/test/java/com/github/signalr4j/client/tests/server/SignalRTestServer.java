@@ -0,0 +1,713 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.server;
+
+import com.github.signalr4j.client.Connection;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for a SignalR 2 server, so the transports can be
+ * tested end to end without an external server. It implements negotiate,
+ * connect, reconnect, poll, send, abort, ping and start for the
+ * webSockets, serverSentEvents and longPolling transports, and the hub
+ * invocation protocol. Hub methods are registered with addHubMethod and hub
+ * events are sent with broadcast.
+ *
+ * Each HTTP request is served by its own thread on a loopback socket, and
+ * the connection is closed after the response, as the client does not reuse
+ * HTTP connections
+ */
+public class SignalRTestServer {
+
+    private static final String TRANSPORT_WEBSOCKETS = "webSockets";
+    private static final String TRANSPORT_SERVER_SENT_EVENTS = "serverSentEvents";
+    private static final String TRANSPORT_LONG_POLLING = "longPolling";
+
+    private static final String KEEP_ALIVE = "{}";
+
+    private final Gson gson = new Gson();
+
+    private final JsonParser parser = new JsonParser();
+
+    private final Map<String, HubMethod> hubMethods = new ConcurrentHashMap<>();
+
+    private final Map<String, ServerConnection> connections = new ConcurrentHashMap<>();
+
+    private final Map<Socket, Boolean> sockets = new ConcurrentHashMap<>();
+
+    private final AtomicInteger connectionCounter = new AtomicInteger(0);
+
+    private final AtomicLong invocationCount = new AtomicLong(0);
+
+    private final AtomicLong receivedCount = new AtomicLong(0);
+
+    private final AtomicLong enqueuedCount = new AtomicLong(0);
+
+    private ServerSocket serverSocket;
+
+    private ExecutorService executor;
+
+    private long keepAliveTimeout = 10000;
+
+    private long disconnectTimeout = 30000;
+
+    private long pollTimeout = 5000;
+
+    private boolean tryWebSockets = true;
+
+    private int maxBufferedMessages = 5000;
+
+    private final Map<String, Long> connectDelays = new ConcurrentHashMap<>();
+
+    /**
+     * Sets the keep-alive timeout sent on negotiate. Keep-alives are sent
+     * every third of it
+     *
+     * @param keepAliveTimeout
+     *            The timeout in milliseconds
+     */
+    public void setKeepAliveTimeout(long keepAliveTimeout) {
+        if (keepAliveTimeout < 3) {
+            throw new IllegalArgumentException("keepAliveTimeout must be at least 3");
+        }
+
+        this.keepAliveTimeout = keepAliveTimeout;
+    }
+
+    /**
+     * Sets the disconnect timeout sent on negotiate
+     *
+     * @param disconnectTimeout
+     *            The timeout in milliseconds
+     */
+    public void setDisconnectTimeout(long disconnectTimeout) {
+        if (disconnectTimeout < 0) {
+            throw new IllegalArgumentException("disconnectTimeout cannot be negative");
+        }
+
+        this.disconnectTimeout = disconnectTimeout;
+    }
+
+    /**
+     * Sets how long a poll request is held when there is no message
+     *
+     * @param pollTimeout
+     *            The timeout in milliseconds
+     */
+    public void setPollTimeout(long pollTimeout) {
+        if (pollTimeout < 0) {
+            throw new IllegalArgumentException("pollTimeout cannot be negative");
+        }
+
+        this.pollTimeout = pollTimeout;
+    }
+
+    /**
+     * Sets whether the negotiate response allows WebSockets
+     */
+    public void setTryWebSockets(boolean tryWebSockets) {
+        this.tryWebSockets = tryWebSockets;
+    }
+
+    /**
+     * Sets how many undelivered messages are kept for each connection. Older
+     * ones are dropped
+     *
+     * @param maxBufferedMessages
+     *            The number of messages
+     */
+    public void setMaxBufferedMessages(int maxBufferedMessages) {
+        if (maxBufferedMessages < 1) {
+            throw new IllegalArgumentException("maxBufferedMessages must be at least 1");
+        }
+
+        this.maxBufferedMessages = maxBufferedMessages;
+    }
+
+    /**
+     * Delays the connect requests of a transport, as a slow network or proxy
+     * would. A request whose client went away in the meantime is dropped
+     * without taking over the connection, as the upgrade or the first write
+     * of a real server would fail
+     *
+     * @param transport
+     *            The transport name, as sent in the query string
+     * @param delay
+     *            The delay in milliseconds, or 0 to serve them at once
+     */
+    public void setConnectDelay(String transport, long delay) {
+        if (transport == null) {
+            throw new IllegalArgumentException("transport cannot be null");
+        }
+
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay cannot be negative");
+        }
+
+        if (delay == 0) {
+            connectDelays.remove(transport);
+        } else {
+            connectDelays.put(transport, delay);
+        }
+    }
+
+    /**
+     * Registers a hub method
+     *
+     * @param hub
+     *            The hub name
+     * @param method
+     *            The method name
+     * @param implementation
+     *            The method implementation
+     */
+    public void addHubMethod(String hub, String method, HubMethod implementation) {
+        if (hub == null || method == null || implementation == null) {
+            throw new IllegalArgumentException("hub, method and implementation cannot be null");
+        }
+
+        hubMethods.put(methodKey(hub, method), implementation);
+    }
+
+    /**
+     * Starts listening on a free loopback port
+     */
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            return;
+        }
+
+        serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "signalr-test-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final ServerSocket listener = serverSocket;
+        executor.execute(() -> {
+            while (!listener.isClosed()) {
+                try {
+                    Socket socket = listener.accept();
+                    socket.setTcpNoDelay(true);
+                    sockets.put(socket, Boolean.TRUE);
+                    execute(() -> serve(socket));
+                } catch (IOException e) {
+                    // stopped
+                }
+            }
+        });
+    }
+
+    /**
+     * Closes the listener and every open connection
+     */
+    public synchronized void stop() {
+        if (serverSocket == null) {
+            return;
+        }
+
+        closeQuietly(serverSocket);
+        serverSocket = null;
+
+        for (ServerConnection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+
+        for (Socket socket : sockets.keySet()) {
+            closeQuietly(socket);
+        }
+
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns the URL to give to the client connections
+     */
+    public synchronized String getUrl() {
+        if (serverSocket == null) {
+            throw new IllegalStateException("The server is not started");
+        }
+
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + "/signalr/";
+    }
+
+    /**
+     * Returns the number of connections that were negotiated and not
+     * aborted
+     */
+    public int getConnectionCount() {
+        return getConnectionIds().size();
+    }
+
+    /**
+     * Returns the ids of the connections that were negotiated and not
+     * aborted
+     */
+    public List<String> getConnectionIds() {
+        List<String> ids = new ArrayList<>();
+        for (ServerConnection connection : connections.values()) {
+            if (!connection.isClosed()) {
+                ids.add(connection.getConnectionId());
+            }
+        }
+
+        return ids;
+    }
+
+    /**
+     * Returns the number of hub invocations received
+     */
+    public long getInvocationCount() {
+        return invocationCount.get();
+    }
+
+    /**
+     * Returns the number of messages received, including hub invocations
+     */
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    /**
+     * Returns the number of messages queued for the clients
+     */
+    public long getEnqueuedCount() {
+        return enqueuedCount.get();
+    }
+
+    /**
+     * Invokes a client hub method on every connection
+     *
+     * @param hub
+     *            The hub name
+     * @param method
+     *            The client method name
+     * @param args
+     *            The arguments
+     */
+    public void broadcast(String hub, String method, Object... args) {
+        String message = hubMessage(hub, method, args);
+        for (ServerConnection connection : connections.values()) {
+            connection.enqueue(message);
+            enqueuedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Invokes a client hub method on a connection
+     *
+     * @param connectionId
+     *            The connection id
+     * @param hub
+     *            The hub name
+     * @param method
+     *            The client method name
+     * @param args
+     *            The arguments
+     */
+    public void send(String connectionId, String hub, String method, Object... args) {
+        for (ServerConnection connection : connections.values()) {
+            if (connection.getConnectionId().equals(connectionId)) {
+                connection.enqueue(hubMessage(hub, method, args));
+                enqueuedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Closes the transport of every connection, as a network failure would.
+     * The connections themselves are kept, so the clients can reconnect and
+     * receive the messages they missed
+     */
+    public void dropConnections() {
+        for (ServerConnection connection : connections.values()) {
+            connection.drop();
+        }
+    }
+
+    private String hubMessage(String hub, String method, Object[] args) {
+        JsonObject message = new JsonObject();
+        message.addProperty("H", hub);
+        message.addProperty("M", method);
+        message.add("A", gson.toJsonTree(args == null ? new Object[0] : args));
+        return message.toString();
+    }
+
+    private void serve(Socket socket) {
+        try {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            HttpRequest request = HttpRequest.read(in);
+            if (request != null) {
+                route(request, socket, in, out);
+            }
+        } catch (IOException | InterruptedException e) {
+            // the client or the server closed the socket
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    private void route(HttpRequest request, Socket socket, InputStream in, OutputStream out) throws IOException, InterruptedException {
+        String action = request.getAction();
+
+        if ("negotiate".equals(action)) {
+            negotiate(out);
+            return;
+        }
+
+        ServerConnection connection = null;
+        String token = request.getQueryParameter("connectionToken");
+        if (token != null) {
+            connection = connections.get(token);
+        }
+
+        if (connection == null) {
+            HttpRequest.writeResponse(out, 403, "Forbidden", "text/plain", "Unrecognized user identity");
+            return;
+        }
+
+        String transport = request.getQueryParameter("transport");
+
+        switch (action) {
+        case "connect":
+        case "reconnect":
+            boolean reconnect = "reconnect".equals(action);
+            Long delay = connectDelays.get(transport);
+            if (!reconnect && delay != null) {
+                Thread.sleep(delay);
+                if (isClosedByClient(socket, in)) {
+                    return;
+                }
+            }
+
+            connection.reopen();
+            if (TRANSPORT_WEBSOCKETS.equals(transport) && request.isWebSocketUpgrade()) {
+                serveWebSocket(connection, request, reconnect, socket, in, out);
+            } else if (TRANSPORT_SERVER_SENT_EVENTS.equals(transport)) {
+                serveServerSentEvents(connection, request, reconnect, socket, out);
+            } else if (TRANSPORT_LONG_POLLING.equals(transport)) {
+                servePoll(connection, request, reconnect ? "reconnect" : "connect", socket, out);
+            } else {
+                HttpRequest.writeResponse(out, 400, "Bad Request", "text/plain", "Unsupported transport: " + transport);
+            }
+            break;
+        case "poll":
+            servePoll(connection, request, action, socket, out);
+            break;
+        case "send":
+            String result = receive(connection, request.getFormField("data"));
+            HttpRequest.writeResponse(out, 200, "OK", "application/json; charset=UTF-8", result == null ? "" : result);
+            break;
+        case "abort":
+            connection.close();
+            HttpRequest.writeResponse(out, 200, "OK", "text/plain", "");
+            break;
+        case "ping":
+            HttpRequest.writeResponse(out, 200, "OK", "application/json; charset=UTF-8", "{\"Response\":\"pong\"}");
+            break;
+        case "start":
+            HttpRequest.writeResponse(out, 200, "OK", "application/json; charset=UTF-8", "{\"Response\":\"started\"}");
+            break;
+        default:
+            HttpRequest.writeResponse(out, 404, "Not Found", "text/plain", "");
+            break;
+        }
+    }
+
+    private void negotiate(OutputStream out) throws IOException {
+        // aborted connections that did not reconnect in time are forgotten
+        connections.values().removeIf(connection -> connection.isExpired(disconnectTimeout));
+
+        String connectionId = UUID.randomUUID().toString();
+        String connectionToken = connectionId + ":" + connectionCounter.incrementAndGet();
+
+        connections.put(connectionToken, new ServerConnection(connectionId, connectionToken, maxBufferedMessages));
+
+        JsonObject response = new JsonObject();
+        response.addProperty("Url", "/signalr");
+        response.addProperty("ConnectionToken", connectionToken);
+        response.addProperty("ConnectionId", connectionId);
+        response.addProperty("KeepAliveTimeout", keepAliveTimeout / 1000.0);
+        response.addProperty("DisconnectTimeout", disconnectTimeout / 1000.0);
+        response.addProperty("ConnectionTimeout", 110.0);
+        response.addProperty("TryWebSockets", tryWebSockets);
+        response.addProperty("ProtocolVersion", Connection.PROTOCOL_VERSION.toString());
+        response.addProperty("TransportConnectTimeout", 5.0);
+        response.addProperty("LongPollDelay", 0.0);
+
+        HttpRequest.writeResponse(out, 200, "OK", "application/json; charset=UTF-8", response.toString());
+    }
+
+    /**
+     * Returns the cursor a transport starts from: the client message id when
+     * reconnecting, or the last message when connecting
+     */
+    private static long getCursor(ServerConnection connection, HttpRequest request, boolean reconnect) {
+        String messageId = request.getQueryParameter("messageId");
+        if (reconnect && messageId != null) {
+            try {
+                return Long.parseLong(messageId);
+            } catch (NumberFormatException e) {
+                // not one of ours, start over
+            }
+        }
+
+        return connection.getLastSequence();
+    }
+
+    private static String initMessage(long cursor) {
+        return "{\"C\":\"" + cursor + "\",\"S\":1,\"M\":[]}";
+    }
+
+    private void servePoll(ServerConnection connection, HttpRequest request, String action, Socket socket, OutputStream out)
+            throws IOException, InterruptedException {
+        int generation = connection.attach(() -> closeQuietly(socket));
+
+        String response;
+        if ("connect".equals(action)) {
+            response = initMessage(connection.getLastSequence());
+        } else {
+            long cursor = getCursor(connection, request, true);
+            // a reconnect returns at once, so the client knows it is back
+            ServerConnection.Batch batch = connection.awaitMessages(cursor, "reconnect".equals(action) ? 0 : pollTimeout, generation);
+            if (batch != null) {
+                response = batch.json;
+            } else if (connection.isActive(generation)) {
+                response = KEEP_ALIVE;
+            } else {
+                return;
+            }
+        }
+
+        HttpRequest.writeResponse(out, 200, "OK", "application/json; charset=UTF-8", response);
+    }
+
+    private void serveServerSentEvents(ServerConnection connection, HttpRequest request, boolean reconnect, Socket socket, OutputStream out)
+            throws IOException, InterruptedException {
+        int generation = connection.attach(() -> closeQuietly(socket));
+        long cursor = getCursor(connection, request, reconnect);
+
+        String head = "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/event-stream\r\n"
+                + "Cache-Control: no-cache\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        writeEvent(out, "initialized");
+
+        if (!reconnect) {
+            writeEvent(out, initMessage(cursor));
+        }
+
+        while (connection.isActive(generation)) {
+            ServerConnection.Batch batch = connection.awaitMessages(cursor, keepAliveTimeout / 3, generation);
+            if (batch != null) {
+                cursor = batch.last;
+                writeEvent(out, batch.json);
+            } else if (connection.isActive(generation)) {
+                writeEvent(out, KEEP_ALIVE);
+            }
+        }
+    }
+
+    private static void writeEvent(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void serveWebSocket(final ServerConnection connection, HttpRequest request, boolean reconnect, Socket socket, InputStream in,
+            final OutputStream out) throws IOException {
+        // the client is connected as soon as it reads the handshake, so
+        // messages sent from then on must be after the cursor
+        final int generation = connection.attach(() -> closeQuietly(socket));
+        final long initialCursor = getCursor(connection, request, reconnect);
+
+        WebSocketFrames.writeHandshake(out, request);
+
+        if (!reconnect) {
+            writeFrame(out, initMessage(initialCursor));
+        }
+
+        // messages are pushed by a second thread while this one reads
+        execute(() -> {
+            long cursor = initialCursor;
+            try {
+                while (connection.isActive(generation)) {
+                    ServerConnection.Batch batch = connection.awaitMessages(cursor, keepAliveTimeout / 3, generation);
+                    if (batch != null) {
+                        cursor = batch.last;
+                        writeFrame(out, batch.json);
+                    } else if (connection.isActive(generation)) {
+                        writeFrame(out, KEEP_ALIVE);
+                    }
+                }
+            } catch (IOException | InterruptedException e) {
+                // the socket was closed
+            } finally {
+                closeQuietly(socket);
+            }
+        });
+
+        while (connection.isActive(generation)) {
+            WebSocketFrames.Frame frame = WebSocketFrames.readMessage(in);
+
+            if (frame.opcode == WebSocketFrames.OPCODE_TEXT) {
+                String result = receive(connection, frame.text());
+                if (result != null) {
+                    writeFrame(out, result);
+                }
+            } else if (frame.opcode == WebSocketFrames.OPCODE_PING) {
+                synchronized (out) {
+                    WebSocketFrames.writeFrame(out, WebSocketFrames.OPCODE_PONG, frame.payload);
+                }
+            } else if (frame.opcode == WebSocketFrames.OPCODE_CLOSE) {
+                synchronized (out) {
+                    WebSocketFrames.writeFrame(out, WebSocketFrames.OPCODE_CLOSE, frame.payload);
+                }
+                return;
+            }
+        }
+    }
+
+    private static void writeFrame(OutputStream out, String text) throws IOException {
+        synchronized (out) {
+            WebSocketFrames.writeText(out, text);
+        }
+    }
+
+    /**
+     * Handles data sent by a client
+     *
+     * @return The response to send back to the client, or null
+     */
+    private String receive(ServerConnection connection, String data) {
+        if (data == null) {
+            return null;
+        }
+
+        receivedCount.incrementAndGet();
+
+        JsonElement json;
+        try {
+            json = parser.parse(data);
+        } catch (RuntimeException e) {
+            json = new JsonPrimitive(data);
+        }
+
+        if (json.isJsonObject() && json.getAsJsonObject().has("H") && json.getAsJsonObject().has("I")) {
+            return invoke(connection, json.getAsJsonObject());
+        }
+
+        // anything else is echoed back, as a persistent connection would
+        connection.enqueue(json.toString());
+        enqueuedCount.incrementAndGet();
+        return null;
+    }
+
+    private String invoke(ServerConnection connection, JsonObject invocation) {
+        invocationCount.incrementAndGet();
+
+        String id = invocation.get("I").getAsString();
+        String hub = invocation.get("H").getAsString();
+        String method = invocation.has("M") ? invocation.get("M").getAsString() : "";
+
+        JsonElement[] args = new JsonElement[0];
+        if (invocation.has("A") && invocation.get("A").isJsonArray()) {
+            JsonArray array = invocation.get("A").getAsJsonArray();
+            args = new JsonElement[array.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = array.get(i);
+            }
+        }
+
+        JsonObject result = new JsonObject();
+        result.addProperty("I", id);
+
+        HubMethod implementation = hubMethods.get(methodKey(hub, method));
+        if (implementation == null) {
+            result.addProperty("E", "'" + method + "' method could not be resolved on '" + hub + "' hub.");
+            return result.toString();
+        }
+
+        try {
+            result.add("R", gson.toJsonTree(implementation.invoke(connection.getConnectionId(), args)));
+        } catch (Exception e) {
+            result.addProperty("E", e.getMessage() == null ? e.toString() : e.getMessage());
+        }
+
+        return result.toString();
+    }
+
+    private void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // stopped
+        }
+    }
+
+    private static String methodKey(String hub, String method) {
+        return hub.toLowerCase(Locale.ROOT) + "." + method.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Checks whether the client closed a socket that has nothing more to
+     * read
+     */
+    private static boolean isClosedByClient(Socket socket, InputStream in) throws IOException {
+        socket.setSoTimeout(1);
+        try {
+            return in.read() == -1;
+        } catch (SocketTimeoutException e) {
+            return false;
+        } finally {
+            socket.setSoTimeout(0);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+}
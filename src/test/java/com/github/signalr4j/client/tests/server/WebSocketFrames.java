@@ -0,0 +1,199 @@
+/*
+Copyright (c) Microsoft Open Technologies, Inc.
+All Rights Reserved
+See License.txt in the project root for license information.
+*/
+
+package com.github.signalr4j.client.tests.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Server side of the RFC 6455 handshake and framing. Only what the client
+ * uses is supported: text messages, ping and close
+ */
+class WebSocketFrames {
+
+    static final int OPCODE_CONTINUATION = 0x0;
+    static final int OPCODE_TEXT = 0x1;
+    static final int OPCODE_CLOSE = 0x8;
+    static final int OPCODE_PING = 0x9;
+    static final int OPCODE_PONG = 0xA;
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+
+    private WebSocketFrames() {
+    }
+
+    /**
+     * Completes the opening handshake of an upgrade request
+     */
+    static void writeHandshake(OutputStream out, HttpRequest request) throws IOException {
+        String key = request.getHeader("Sec-WebSocket-Key");
+        if (key == null) {
+            throw new IOException("Missing Sec-WebSocket-Key");
+        }
+
+        String accept;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest((key.trim() + ACCEPT_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            accept = Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        String head = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n";
+
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    /**
+     * Writes an unmasked frame. The caller must serialize the writes
+     */
+    static void writeFrame(OutputStream out, int opcode, byte[] payload) throws IOException {
+        out.write(0x80 | opcode);
+
+        if (payload.length < 126) {
+            out.write(payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            out.write(126);
+            out.write(payload.length >>> 8);
+            out.write(payload.length);
+        } else {
+            out.write(127);
+            long length = payload.length;
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (length >>> shift));
+            }
+        }
+
+        out.write(payload);
+        out.flush();
+    }
+
+    static void writeText(OutputStream out, String text) throws IOException {
+        writeFrame(out, OPCODE_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * A frame read from the client
+     */
+    static class Frame {
+        final int opcode;
+        final byte[] payload;
+
+        Frame(int opcode, byte[] payload) {
+            this.opcode = opcode;
+            this.payload = payload;
+        }
+
+        String text() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads a message, joining the fragments of fragmented messages.
+     * Control frames are returned as they come
+     */
+    static Frame readMessage(InputStream in) throws IOException {
+        ByteArrayOutputStream fragments = null;
+        int messageOpcode = -1;
+
+        while (true) {
+            int b0 = readByte(in);
+            int b1 = readByte(in);
+
+            boolean fin = (b0 & 0x80) != 0;
+            int opcode = b0 & 0x0F;
+            boolean masked = (b1 & 0x80) != 0;
+            long length = b1 & 0x7F;
+
+            if (length == 126) {
+                length = (readByte(in) << 8) | readByte(in);
+            } else if (length == 127) {
+                length = 0;
+                for (int i = 0; i < 8; i++) {
+                    length = (length << 8) | readByte(in);
+                }
+            }
+
+            if (length > MAX_MESSAGE_SIZE) {
+                throw new IOException("Frame too large: " + length);
+            }
+
+            byte[] mask = new byte[4];
+            if (masked) {
+                readFully(in, mask);
+            }
+
+            byte[] payload = new byte[(int) length];
+            readFully(in, payload);
+
+            if (masked) {
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+            }
+
+            if (opcode >= OPCODE_CLOSE) {
+                return new Frame(opcode, payload);
+            }
+
+            if (opcode != OPCODE_CONTINUATION) {
+                messageOpcode = opcode;
+            }
+
+            if (fin && fragments == null) {
+                return new Frame(messageOpcode, payload);
+            }
+
+            if (fragments == null) {
+                fragments = new ByteArrayOutputStream();
+            }
+
+            fragments.write(payload);
+            if (fragments.size() > MAX_MESSAGE_SIZE) {
+                throw new IOException("Message too large");
+            }
+
+            if (fin) {
+                return new Frame(messageOpcode, fragments.toByteArray());
+            }
+        }
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b == -1) {
+            throw new EOFException();
+        }
+
+        return b;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            int count = in.read(buffer, read, buffer.length - read);
+            if (count == -1) {
+                throw new EOFException();
+            }
+            read += count;
+        }
+    }
+}
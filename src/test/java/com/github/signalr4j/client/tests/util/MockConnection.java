@@ -8,6 +8,8 @@ package com.github.signalr4j.client.tests.util;
 
 import com.github.signalr4j.client.*;
 import com.github.signalr4j.client.http.Request;
+import com.github.signalr4j.client.metrics.Metrics;
+import com.github.signalr4j.client.metrics.NullMetrics;
 import com.github.signalr4j.client.transport.ClientTransport;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
@@ -174,6 +176,11 @@ public class MockConnection implements ConnectionBase {
         return null;
     }
 
+    @Override
+    public Metrics getMetrics() {
+        return NullMetrics.INSTANCE;
+    }
+
     @Override
     public void stateChanged(StateChangedCallback handler) {
         // TODO Auto-generated method stub
@@ -24,7 +24,7 @@ public class MockResponse implements Response {
     Queue<String> mLines = new ConcurrentLinkedQueue<String>();
     Map<String, List<String>> mHeaders = new HashMap<String, List<String>>();
     int mStatus;
-    boolean mFinished = false;
+    volatile boolean mFinished = false;
 
     public MockResponse(int status) {
         mStatus = status;
@@ -45,6 +45,9 @@ public class MockResponse implements Response {
 
     public void finishWriting() {
         mFinished = true;
+
+        // wakes up a reader waiting for a line that will never come
+        mSemaphore.release();
     }
 
     public void setHeaders(Map<String, List<String>> headers) {
@@ -67,6 +70,10 @@ public class MockResponse implements Response {
 
         while (!mFinished || !mLines.isEmpty()) {
             String line = readLine();
+            if (line == null) {
+                break;
+            }
+
             sb.append(line);
             sb.append("\n");
         }
@@ -51,7 +51,7 @@ public class Utils {
 
         negotiation.setConnectionToken(UUID.randomUUID().toString());
         negotiation.setConnectionId(UUID.randomUUID().toString());
-        negotiation.setProtocolVersion("1.3");
+        negotiation.setProtocolVersion(Connection.PROTOCOL_VERSION.toString());
         negotiation.setDisconnectTimeout(6);
         negotiation.setKeepAliveTimeout(3);
         negotiation.setTryWebSockets(false);
@@ -60,6 +60,16 @@ public class Utils {
         return negotiation;
     }
 
+    /**
+     * Starts the connection on the mock transport and completes the
+     * negotiation and the transport start
+     */
+    public static void startConnection(Connection connection, MockClientTransport transport) {
+        connection.start(transport);
+        transport.negotiationFuture.setResult(getDefaultNegotiationResponse());
+        transport.startOperation.future.setResult(null);
+    }
+
     public static void addResultHandlersToConnection(Connection connection, final MultiResult result, final boolean throwOnError) {
         connection.connected(new Runnable() {
 